@@ -0,0 +1,97 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decides how a thread waits before retrying a step that lost a race.
+ * Every spin and retry loop in the skip lists asks its policy what to do,
+ * so contention management can be swapped without touching the algorithms.
+ */
+@FunctionalInterface
+public interface BackoffPolicy {
+    /**
+     * Waits before the next retry.
+     * @param attempt How many times the caller has already retried, starting at 0
+     */
+    void backoff(int attempt);
+
+    /**
+     * Busy-waits with a spin-wait hint on every attempt.
+     * Only appropriate when there are fewer threads than cores.
+     * @return a spinning policy
+     */
+    static BackoffPolicy spin() {
+        return attempt -> SpinHint.onSpinWait();
+    }
+
+    /**
+     * Yields the processor on every attempt.
+     * @return a yielding policy
+     */
+    static BackoffPolicy yielding() {
+        return attempt -> Thread.yield();
+    }
+
+    /**
+     * Parks for an exponentially growing, randomly jittered delay.
+     * The delay doubles each attempt from minNanos up to maxNanos, and the
+     * thread parks for a uniformly random time up to that delay.
+     * @param minNanos The delay bound for the first attempt
+     * @param maxNanos The largest delay bound
+     * @return a parking policy
+     */
+    static BackoffPolicy exponential(long minNanos, long maxNanos) {
+        if (minNanos <= 0 || maxNanos < minNanos) {
+            throw new IllegalArgumentException(
+                    "Delays must satisfy 0 < minNanos <= maxNanos: " + minNanos + ", " + maxNanos);
+        }
+        return attempt -> {
+            long bound = maxNanos;
+            if (attempt < Long.numberOfLeadingZeros(minNanos) - 1) {
+                bound = Math.min(maxNanos, minNanos << attempt);
+            }
+            LockSupport.parkNanos(1 + ThreadLocalRandom.current().nextLong(bound));
+        };
+    }
+
+    /**
+     * Spins for the first spins attempts, yields for the next yields attempts,
+     * then falls back to the given parking policy.
+     * @param spins Number of attempts to spin for
+     * @param yields Number of attempts to yield for after spinning
+     * @param then Policy used once spinning and yielding are exhausted
+     * @return a tiered policy
+     */
+    static BackoffPolicy tiered(int spins, int yields, BackoffPolicy then) {
+        return attempt -> {
+            if (attempt < spins) {
+                SpinHint.onSpinWait();
+            }
+            else if (attempt < spins + yields) {
+                Thread.yield();
+            }
+            else {
+                then.backoff(attempt - spins - yields);
+            }
+        };
+    }
+
+    /**
+     * The default policy: spin briefly, then yield, then park with
+     * exponential backoff from 1 microsecond up to 1 millisecond.
+     * Safe when threads outnumber cores.
+     */
+    BackoffPolicy DEFAULT = tiered(16, 16, exponential(1_000L, 1_000_000L));
+
+    /**
+     * A policy that never spins or yields: every wait parks, from 1 microsecond
+     * up to 1 millisecond. Use this when callers run on virtual threads, where a
+     * parked thread unmounts and frees its carrier but a spinning one does not.
+     * Parks are timed and nothing unparks a waiter early: releasing a node lock does
+     * not wake the threads waiting for it. A waiter therefore notices a free lock only
+     * when its park expires, adding up to the current delay, 1 millisecond once it has
+     * failed about ten times, to each contended acquisition.
+     */
+    BackoffPolicy PARKING = exponential(1_000L, 1_000_000L);
+}
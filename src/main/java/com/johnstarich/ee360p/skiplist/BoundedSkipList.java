@@ -0,0 +1,201 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A concurrent set that keeps at most capacity keys, such as the top K scores.
+ * An add that overflows the set evicts the smallest key, or the largest when
+ * configured to keep the bottom K instead.
+ * Once the set is full, the key that would be evicted next is cached, so an add
+ * that could not survive is rejected with one volatile read and no search.
+ *
+ * <p>Adds that get past that check and removes take a writer lock, since whether to
+ * evict depends on the size of the whole set, which no node lock covers. An add to a
+ * full set inserts its key and evicts the end key as one
+ * {@link FineGrainedSkipList#applyBatch batch}, so the set never holds more than
+ * capacity keys, and a concurrent remove cannot make it evict a key it should keep.
+ * Reads do not take the lock.
+ */
+public class BoundedSkipList extends AbstractSet<Integer> {
+    /**
+     * Which end of the set an overflowing add evicts.
+     */
+    public enum Eviction {
+        SMALLEST,
+        LARGEST
+    }
+
+    /**
+     * Boundary while the set has room, which no key is ranked at or below.
+     */
+    private static final long NOT_FULL = Long.MIN_VALUE;
+
+    final FineGrainedSkipList list;
+    final int capacity;
+    final Eviction eviction;
+    private final ReentrantLock writers = new ReentrantLock();
+    /**
+     * The rank of the next key to evict while the set is full, or NOT_FULL.
+     * Keys ranked at or below it would be evicted at once, so they are rejected.
+     */
+    volatile long boundary = NOT_FULL;
+
+    /**
+     * Create a set keeping the capacity largest keys.
+     * @param maxLevel The maximum level for the backing list
+     * @param capacity The most keys to keep
+     */
+    public BoundedSkipList(int maxLevel, int capacity) {
+        this(maxLevel, capacity, Eviction.SMALLEST);
+    }
+
+    /**
+     * Create a bounded set.
+     * @param maxLevel The maximum level for the backing list
+     * @param capacity The most keys to keep
+     * @param eviction Which end to evict on overflow
+     */
+    public BoundedSkipList(int maxLevel, int capacity, Eviction eviction) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        this.list = new FineGrainedSkipList(maxLevel);
+        this.capacity = capacity;
+        this.eviction = eviction;
+    }
+
+    /**
+     * Orders keys so the next one to evict has the lowest rank.
+     */
+    private long rank(int key) {
+        return eviction == Eviction.SMALLEST ? key : -(long) key;
+    }
+
+    /**
+     * Finds the key that would be evicted next.
+     */
+    private Integer end() {
+        return eviction == Eviction.SMALLEST ? first() : last();
+    }
+
+    /**
+     * Adds key, evicting the key at the configured end in the same step if the set is
+     * full.
+     * @param key The key to add
+     * @return true if key was added, false if it was present or would be evicted at once
+     */
+    @Override
+    public boolean add(Integer key) {
+        if (rank(key) <= boundary) {
+            return false;
+        }
+        writers.lock();
+        try {
+            if (list.size() < capacity) {
+                if (!list.add(key)) {
+                    return false;
+                }
+                if (list.size() == capacity) {
+                    boundary = rank(end());
+                }
+                return true;
+            }
+
+            Integer evicted = end();
+            if (rank(key) <= rank(evicted)
+                    || !list.applyBatch(new int[] {key}, new int[] {evicted})) {
+                return false;
+            }
+            boundary = rank(end());
+            return true;
+        }
+        finally {
+            writers.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object key) {
+        writers.lock();
+        try {
+            if (!list.remove(key)) {
+                return false;
+            }
+            boundary = NOT_FULL;
+            return true;
+        }
+        finally {
+            writers.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return list.contains(key);
+    }
+
+    /**
+     * Finds the smallest live key.
+     */
+    private Integer first() {
+        list.enter();
+        try {
+            for (FineGrainedSkipList.Node node = list.header.forward[0]; node != list.header;
+                    node = node.forward[0]) {
+                if (node.fullyLinked && !node.markedForRemoval) {
+                    return node.key;
+                }
+            }
+            return null;
+        }
+        finally {
+            list.exit();
+        }
+    }
+
+    /**
+     * Finds the largest live key, searching again if it is being added or removed.
+     */
+    private Integer last() {
+        FineGrainedSkipList.Node[] predecessors = new FineGrainedSkipList.Node[list.maxLevel];
+        FineGrainedSkipList.Node[] successors = new FineGrainedSkipList.Node[list.maxLevel];
+
+        for (int attempt = 0; true; attempt += 1) {
+            list.enter();
+            try {
+                list.find(list.header.key, predecessors, successors);
+                FineGrainedSkipList.Node node = predecessors[0];
+                if (node == list.header) {
+                    return null;
+                }
+                if (node.fullyLinked && !node.markedForRemoval) {
+                    return node.key;
+                }
+            }
+            finally {
+                list.exit();
+            }
+            list.backoff.backoff(attempt);
+        }
+    }
+
+    /**
+     * Returns the most keys this set keeps.
+     * @return the capacity
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return list.iterator();
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+}
@@ -0,0 +1,296 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An ordered stream of the inserts and removals a skip list commits, for subscribers
+ * that mirror the list, such as caches. Each change gets the next sequence number and
+ * lands in a fixed ring of slots that subscribers read at their own pace without locks.
+ * The list publishes while it still holds the locks that order changes to a key,
+ * so sequence order agrees with the order changes to any one key took effect.
+ * Writers never wait for subscribers: a subscriber that falls a whole ring behind
+ * gets an {@link OverrunException} and must resynchronise.
+ * While no subscriber is attached the list publishes nothing, so the stream costs
+ * one volatile read per change.
+ * A stream belongs to the one list it was passed to.
+ *
+ * <p>To mirror the list, subscribe first, then copy the list, then apply the changes
+ * from the subscription in order. A change the copy already reflects is replayed, so
+ * apply inserts and removals idempotently. A subscriber that saves its
+ * {@link Subscription#position} can resume from it later, as long as the ring still
+ * holds that change and the stream was never left without subscribers in between,
+ * since changes made then were not published.
+ */
+public class ChangeStream {
+    /**
+     * Receives changes in sequence order.
+     */
+    public interface Listener {
+        /**
+         * Called for each change.
+         * @param sequence The change's sequence number
+         * @param key The key inserted or removed
+         * @param inserted true for an insert, false for a removal
+         */
+        void onChange(long sequence, int key, boolean inserted);
+    }
+
+    /**
+     * Thrown when a subscriber asks for a change the ring has already overwritten.
+     */
+    public static class OverrunException extends IllegalStateException {
+        private static final long serialVersionUID = 1L;
+
+        private final long sequence;
+
+        OverrunException(long sequence, long oldest) {
+            super("Change " + sequence + " was overwritten, oldest retained is " + oldest);
+            this.sequence = sequence;
+        }
+
+        /**
+         * Returns the first change that was lost.
+         * @return the sequence number the subscriber needed next
+         */
+        public long sequence() {
+            return sequence;
+        }
+    }
+
+    /**
+     * A subscriber's place in the stream. Used by one thread at a time.
+     */
+    public final class Subscription implements AutoCloseable {
+        private long position;
+        private boolean closed;
+
+        Subscription(long position) {
+            this.position = position;
+        }
+
+        /**
+         * Returns the sequence number of the next change this subscription delivers.
+         * @return the position to resume from
+         */
+        public long position() {
+            return position;
+        }
+
+        /**
+         * Delivers up to limit changes that have been published, in order.
+         * @param listener Receives each change
+         * @param limit The most changes to deliver
+         * @return how many changes were delivered, 0 if none are ready yet
+         * @throws OverrunException if the next change was overwritten before it was read;
+         *     the position is left at the lost change
+         */
+        public int poll(Listener listener, int limit) {
+            if (closed) {
+                throw new IllegalStateException("Subscription closed");
+            }
+            int delivered = 0;
+            while (delivered < limit) {
+                long sequence = position;
+                int slot = (int) sequence & mask;
+                long ready = committed(sequence);
+                long stamp = stamps.get(slot);
+                if (stamp < ready) {
+                    break;
+                }
+                long payload = payloads.get(slot);
+                if (stamp > ready || stamps.get(slot) != ready) {
+                    throw new OverrunException(sequence, oldestSequence());
+                }
+                position = sequence + 1;
+                if (payload != GAP) {
+                    listener.onChange(sequence, (int) (payload >> 2), (payload & INSERT) != 0);
+                    delivered++;
+                }
+            }
+            return delivered;
+        }
+
+        /**
+         * Detaches this subscriber. Once the last subscriber closes, the list stops
+         * publishing.
+         */
+        @Override
+        public void close() {
+            synchronized (ChangeStream.this) {
+                if (!closed) {
+                    closed = true;
+                    subscribers.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private final int mask;
+    /**
+     * Per slot, an even 2 * (sequence + 1) once that sequence's payload is written,
+     * or one less while its writer fills it in. Each slot starts stamped as if it held
+     * the sequence one lap before its first.
+     */
+    private final AtomicLongArray stamps;
+    /**
+     * Per slot, the key shifted left by two, with {@link #INSERT} set for an insert,
+     * or {@link #GAP}.
+     */
+    private final AtomicLongArray payloads;
+    private final AtomicLong next = new AtomicLong();
+    private final AtomicInteger subscribers = new AtomicInteger();
+    private final BackoffPolicy backoff;
+    private boolean bound;
+    /**
+     * The lowest position a subscriber may resume from. Raised past a gap each time
+     * a subscriber attaches to an idle stream.
+     */
+    private long floor;
+
+    /**
+     * Create a change stream to pass to a new skip list.
+     * @param capacity The most changes the ring holds, rounded up to a power of two
+     */
+    public ChangeStream(int capacity) {
+        this(capacity, BackoffPolicy.DEFAULT);
+    }
+
+    /**
+     * Create a change stream to pass to a new skip list.
+     * @param capacity The most changes the ring holds, rounded up to a power of two
+     * @param backoff How a writer waits for the writer a whole lap ahead of it to finish
+     */
+    public ChangeStream(int capacity, BackoffPolicy backoff) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Capacity out of range: " + capacity);
+        }
+        int slots = Integer.highestOneBit(capacity);
+        if (slots < capacity) {
+            slots <<= 1;
+        }
+        this.mask = slots - 1;
+        this.backoff = backoff;
+        this.stamps = new AtomicLongArray(slots);
+        this.payloads = new AtomicLongArray(slots);
+        for (int slot = 0; slot < slots; slot++) {
+            stamps.set(slot, committed(slot - slots));
+        }
+    }
+
+    /**
+     * Ties this stream to the list that publishes to it.
+     */
+    synchronized void bind() {
+        if (bound) {
+            throw new IllegalStateException("Change stream already belongs to a list");
+        }
+        bound = true;
+    }
+
+    private static final long INSERT = 1;
+    /**
+     * Marks the sequence claimed when a subscriber attaches to an idle stream.
+     * Subscribers skip it.
+     */
+    private static final long GAP = 2;
+
+    private static long committed(long sequence) {
+        return 2 * (sequence + 1);
+    }
+
+    /**
+     * Checks whether changes must be published. Call after the change is visible:
+     * a subscriber that attached too late to be published to then sees it in its copy.
+     */
+    boolean active() {
+        return subscribers.get() > 0;
+    }
+
+    /**
+     * Publishes a committed change. Call while holding the locks that order changes to key.
+     */
+    void publish(int key, boolean inserted) {
+        publish(((long) key << 2) | (inserted ? INSERT : 0));
+    }
+
+    private long publish(long payload) {
+        long sequence = next.getAndIncrement();
+        int slot = (int) sequence & mask;
+        long previous = committed(sequence - (mask + 1));
+        long writing = committed(sequence) - 1;
+        for (int attempt = 0; !stamps.compareAndSet(slot, previous, writing); attempt++) {
+            backoff.backoff(attempt);
+        }
+        payloads.set(slot, payload);
+        stamps.set(slot, committed(sequence));
+        return sequence;
+    }
+
+    /**
+     * Counts a new subscriber. The first one after an idle spell claims a gap, so no
+     * saved position from before the spell, when changes went unpublished, is resumable.
+     */
+    private void attach() {
+        if (subscribers.getAndIncrement() == 0) {
+            floor = publish(GAP) + 1;
+        }
+    }
+
+    /**
+     * Subscribes from the next change to be published.
+     * @return a new subscription
+     */
+    public synchronized Subscription subscribe() {
+        attach();
+        return new Subscription(next.get());
+    }
+
+    /**
+     * Subscribes from a saved position, for example one a subscriber recorded before
+     * it restarted.
+     * @param sequence The sequence number of the first change to deliver
+     * @return a new subscription
+     * @throws OverrunException if the ring no longer holds that change, or changes after
+     *     it went unpublished while nobody was subscribed
+     * @throws IllegalArgumentException if the sequence has not been assigned yet
+     */
+    public synchronized Subscription subscribe(long sequence) {
+        if (sequence > next.get()) {
+            throw new IllegalArgumentException("Sequence not yet published: " + sequence);
+        }
+        attach();
+        long oldest = Math.max(oldestSequence(), floor);
+        if (sequence < oldest) {
+            subscribers.decrementAndGet();
+            throw new OverrunException(sequence, oldest);
+        }
+        return new Subscription(sequence);
+    }
+
+    /**
+     * Returns the sequence number the next change will get.
+     * @return the next sequence number
+     */
+    public long nextSequence() {
+        return next.get();
+    }
+
+    /**
+     * Returns the oldest change the ring may still hold. The writer a lap ahead may
+     * overwrite it at any moment, which the subscriber's poll detects.
+     * @return the oldest retained sequence number
+     */
+    public long oldestSequence() {
+        return Math.max(0, next.get() - (mask + 1));
+    }
+
+    /**
+     * Counts the attached subscribers.
+     * @return the number of open subscriptions
+     */
+    public int subscribers() {
+        return subscribers.get();
+    }
+}
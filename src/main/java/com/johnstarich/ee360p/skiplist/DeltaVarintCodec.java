@@ -0,0 +1,148 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.IOException;
+
+/**
+ * The compact binary format the skip lists write and read.
+ * A set of ascending keys is encoded as a marker varint, 0 for an empty set or 1 otherwise,
+ * then the first key zigzag-encoded, then each gap to the next key, then a 0 terminator.
+ * Gaps between distinct keys are at least 1, so 0 never appears as a gap, and a gap is
+ * taken as an unsigned 64-bit value, so long keys at both extremes still fit.
+ * Varints store 7 bits per byte, low bits first, with the high bit set on every byte but
+ * the last, so a dense run of keys costs one byte each.
+ * Ints and longs share the format, so a set written by either list can be read by the other
+ * as long as its keys fit.
+ */
+final class DeltaVarintCodec {
+    /**
+     * The most bytes a 64-bit varint takes.
+     */
+    private static final int MAX_VARINT_BYTES = 10;
+
+    private DeltaVarintCodec() {
+    }
+
+    /**
+     * Receives one encoded byte at a time.
+     */
+    interface ByteSink<E extends Exception> {
+        void write(int b) throws E;
+    }
+
+    /**
+     * Supplies the next encoded byte, from 0 to 255.
+     */
+    interface ByteSource<E extends Exception> {
+        int read() throws E;
+    }
+
+    /**
+     * Streams ascending keys into a sink. Call {@link #finish} after the last key.
+     */
+    static final class Encoder<E extends Exception> {
+        private final ByteSink<E> sink;
+        private long previous;
+        private boolean started;
+
+        Encoder(ByteSink<E> sink) {
+            this.sink = sink;
+        }
+
+        /**
+         * Encodes key, which must be greater than the last key added.
+         * A weakly consistent walk of a concurrent list never repeats or reorders keys,
+         * but the format cannot represent either, so such a key is dropped.
+         */
+        void add(long key) throws E {
+            if (!started) {
+                writeVarint(1);
+                writeVarint((key << 1) ^ (key >> 63));
+                started = true;
+            }
+            else if (key > previous) {
+                writeVarint(key - previous);
+            }
+            else {
+                return;
+            }
+            previous = key;
+        }
+
+        void finish() throws E {
+            writeVarint(0);
+        }
+
+        private void writeVarint(long value) throws E {
+            while ((value & ~0x7FL) != 0) {
+                sink.write((int) (value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            sink.write((int) value);
+        }
+    }
+
+    /**
+     * Reads keys back in ascending order, validating the stream as it goes.
+     */
+    static final class Decoder<E extends Exception> {
+        private final ByteSource<E> source;
+        private long key;
+        private boolean started;
+        private boolean finished;
+
+        Decoder(ByteSource<E> source) {
+            this.source = source;
+        }
+
+        /**
+         * Decodes the next key.
+         * @return false once the terminator has been read
+         */
+        boolean advance() throws IOException, E {
+            if (finished) {
+                return false;
+            }
+            if (!started) {
+                long marker = readVarint();
+                if (marker == 0) {
+                    finished = true;
+                    return false;
+                }
+                if (marker != 1) {
+                    throw new IOException("Unknown set marker: " + marker);
+                }
+                long zigzag = readVarint();
+                key = (zigzag >>> 1) ^ -(zigzag & 1);
+                started = true;
+                return true;
+            }
+            long gap = readVarint();
+            if (gap == 0) {
+                finished = true;
+                return false;
+            }
+            long next = key + gap;
+            if (next <= key) {
+                throw new IOException("Key gap overflows: " + Long.toUnsignedString(gap));
+            }
+            key = next;
+            return true;
+        }
+
+        long key() {
+            return key;
+        }
+
+        private long readVarint() throws IOException, E {
+            long value = 0;
+            for (int i = 0; i < MAX_VARINT_BYTES; i++) {
+                int b = source.read();
+                value |= (long) (b & 0x7F) << (7 * i);
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Varint longer than " + MAX_VARINT_BYTES + " bytes");
+        }
+    }
+}
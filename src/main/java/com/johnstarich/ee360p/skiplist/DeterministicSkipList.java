@@ -0,0 +1,369 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A deterministic 1-2-3 skip list: between two neighbouring towers on any level there
+ * are one, two or three towers exactly one level shorter.
+ * An add that leaves four towers in a gap promotes the middle one, and a remove that
+ * empties a gap demotes a neighbour, each repair touching O(1) nodes per level.
+ * A search therefore takes at most four steps per level whatever order keys arrive in,
+ * unlike the randomised lists whose long runs are only unlikely.
+ * Writers hold a {@link StampedLock} exclusively; readers search optimistically and only
+ * take the read lock if a writer interfered.
+ */
+public class DeterministicSkipList extends AbstractSet<Integer> {
+    static final class Node {
+        final int key;
+        Node[] forward;
+        int level;
+
+        Node(int key, int level) {
+            this.key = key;
+            this.level = level;
+            this.forward = new Node[level + 1];
+        }
+
+        /**
+         * Links this node on level before next, growing its tower if needed.
+         */
+        void raise(int level, Node next) {
+            if (forward.length <= level) {
+                forward = Arrays.copyOf(forward, level + 1);
+            }
+            forward[level] = next;
+            this.level = level;
+        }
+    }
+
+    /**
+     * Most nodes a gap holds before its middle tower is promoted.
+     */
+    static final int MAX_GAP = 3;
+
+    final Node head;
+    final Node tail;
+    final int maxLevel;
+    final StampedLock lock = new StampedLock();
+    /**
+     * Levels in use; level height and above hold only the head.
+     */
+    int height = 1;
+    int size;
+    int modCount;
+
+    /**
+     * Create a deterministic skip list.
+     * @param maxLevel The maximum level, which bounds the list to about 2^maxLevel keys
+     *                 before the top level's gap grows past three
+     */
+    public DeterministicSkipList(int maxLevel) {
+        this.maxLevel = maxLevel;
+        this.tail = new Node(Integer.MAX_VALUE, maxLevel - 1);
+        this.head = new Node(Integer.MIN_VALUE, maxLevel - 1);
+        Arrays.fill(head.forward, tail);
+    }
+
+    private boolean before(Node node, int key) {
+        return node != tail && node.key < key;
+    }
+
+    /**
+     * Fills predecessors with the last node before key on each level and returns the
+     * first node at or after key, or null if a concurrent writer made the search take
+     * more than budget steps or see a half-built node. An optimistic reader may see a
+     * node before its forward array, so a missing array or link counts as interference.
+     */
+    private Node descend(int key, Node[] predecessors, int budget) {
+        Node predecessor = head;
+        for (int level = maxLevel - 1; level >= height; level -= 1) {
+            predecessors[level] = head;
+        }
+        Node next = null;
+        for (int level = height - 1; level >= 0; level -= 1) {
+            next = linkOn(predecessor, level);
+            while (next != null && before(next, key)) {
+                if (--budget < 0) {
+                    return null;
+                }
+                predecessor = next;
+                next = linkOn(predecessor, level);
+            }
+            if (next == null) {
+                return null;
+            }
+            predecessors[level] = predecessor;
+        }
+        return next;
+    }
+
+    /**
+     * Reads node's link on level, or null if this thread sees no such link yet.
+     */
+    private static Node linkOn(Node node, int level) {
+        Node[] forward = node.forward;
+        return forward != null && level < forward.length ? forward[level] : null;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        if (!(value instanceof Integer)) {
+            return false;
+        }
+        int key = (Integer) value;
+        Node[] predecessors = new Node[maxLevel];
+
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            Node node = descend(key, predecessors, (MAX_GAP + 1) * (maxLevel + 1));
+            boolean found = node != null && node != tail && node.key == key;
+            if (node != null && lock.validate(stamp)) {
+                return found;
+            }
+        }
+
+        stamp = lock.readLock();
+        try {
+            Node node = descend(key, predecessors, Integer.MAX_VALUE);
+            return node != tail && node.key == key;
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        int key = value;
+        Node[] predecessors = new Node[maxLevel];
+        long stamp = lock.writeLock();
+        try {
+            Node next = descend(key, predecessors, Integer.MAX_VALUE);
+            if (next != tail && next.key == key) {
+                return false;
+            }
+            Node node = new Node(key, 0);
+            node.forward[0] = next;
+            predecessors[0].forward[0] = node;
+            size += 1;
+            modCount += 1;
+            repair(key, predecessors);
+            return true;
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        if (!(value instanceof Integer)) {
+            return false;
+        }
+        int key = (Integer) value;
+        Node[] predecessors = new Node[maxLevel];
+        long stamp = lock.writeLock();
+        try {
+            Node node = descend(key, predecessors, Integer.MAX_VALUE);
+            if (node == tail || node.key != key) {
+                return false;
+            }
+            for (int level = node.level; level >= 0; level -= 1) {
+                predecessors[level].forward[level] = node.forward[level];
+            }
+            size -= 1;
+            modCount += 1;
+            repair(key, predecessors);
+            return true;
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Restores the gap invariant bottom-up after a change at key's position.
+     * Only the gap containing key can be wrong on each level, and fixing it only
+     * changes the gap containing key on the level above.
+     */
+    private void repair(int key, Node[] predecessors) {
+        for (int level = 1; level <= height && level < maxLevel; level += 1) {
+            Node start = level + 1 < maxLevel ? predecessors[level + 1] : head;
+            for (int fixes = 0; fixes < MAX_GAP && repairGap(level, start, key); fixes++) {
+                continue;
+            }
+            if (level == height && height < maxLevel && head.forward[height] != tail) {
+                height += 1;
+            }
+        }
+        while (height > 1 && head.forward[height - 1] == tail) {
+            height -= 1;
+        }
+    }
+
+    /**
+     * Fixes the gap holding key on level, if it has more than three towers or none.
+     * start is a node on level + 1 before key, from which key's gap is at most a few steps.
+     * @return true if a tower moved and the gap must be checked again
+     */
+    private boolean repairGap(int level, Node start, int key) {
+        Node previous = null;
+        Node owner = start;
+        while (before(owner.forward[level], key)) {
+            previous = owner;
+            owner = owner.forward[level];
+        }
+        Node next = owner.forward[level];
+
+        int gap = 0;
+        for (Node node = owner.forward[level - 1]; node != next; node = node.forward[level - 1]) {
+            gap += 1;
+        }
+
+        if (gap > MAX_GAP) {
+            Node middle = owner.forward[level - 1];
+            for (int i = 0; i < gap / 2; i++) {
+                middle = middle.forward[level - 1];
+            }
+            middle.raise(level, next);
+            owner.forward[level] = middle;
+            return true;
+        }
+        if (gap == 0 && next != tail && next.level == level) {
+            owner.forward[level] = next.forward[level];
+            next.level = level - 1;
+            return true;
+        }
+        if (gap == 0 && owner != head && owner.level == level) {
+            if (previous == null) {
+                previous = start;
+                while (previous.forward[level] != owner) {
+                    previous = previous.forward[level];
+                }
+            }
+            previous.forward[level] = owner.forward[level];
+            owner.level = level - 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns the number of levels in use.
+     * @return the height of the tallest tower plus one
+     */
+    public int height() {
+        long stamp = lock.readLock();
+        try {
+            return height;
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Counts the nodes a search for key visits, for measuring worst-case paths.
+     */
+    int searchCost(int key) {
+        long stamp = lock.readLock();
+        try {
+            int cost = 0;
+            Node predecessor = head;
+            for (int level = height - 1; level >= 0; level -= 1) {
+                cost += 1;
+                while (before(predecessor.forward[level], key)) {
+                    predecessor = predecessor.forward[level];
+                    cost += 1;
+                }
+            }
+            return cost;
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    @Override
+    public int size() {
+        long stamp = lock.tryOptimisticRead();
+        int currentSize = size;
+        if (lock.validate(stamp)) {
+            return currentSize;
+        }
+        stamp = lock.readLock();
+        try {
+            return size;
+        }
+        finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    /**
+     * Iterates in ascending order. Resumes by key if the list changed since the last step,
+     * so it never fails on concurrent modification.
+     */
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private Node next;
+            private long lastKey = Long.MIN_VALUE;
+            private int expectedModCount;
+
+            /**
+             * Finds the first node after lastKey again if a writer ran since the last step.
+             * Must hold the read lock.
+             */
+            private void advance() {
+                if (next != null && expectedModCount == modCount) {
+                    return;
+                }
+                expectedModCount = modCount;
+                if (lastKey < Integer.MIN_VALUE) {
+                    next = head.forward[0];
+                }
+                else if (lastKey == Integer.MAX_VALUE) {
+                    next = tail;
+                }
+                else {
+                    next = descend((int) lastKey + 1, new Node[maxLevel], Integer.MAX_VALUE);
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                long stamp = lock.readLock();
+                try {
+                    advance();
+                    return next != tail;
+                }
+                finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+
+            @Override
+            public Integer next() {
+                long stamp = lock.readLock();
+                try {
+                    advance();
+                    if (next == tail) {
+                        throw new NoSuchElementException();
+                    }
+                    int key = next.key;
+                    lastKey = key;
+                    next = next.forward[0];
+                    return key;
+                }
+                finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,158 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Epoch-based reclamation for objects that readers may still hold after they are removed.
+ * Threads bracket every traversal with {@link #enter()} and {@link #exit()}. A retired
+ * object is handed back by {@link #reuse()} only once the global epoch has advanced twice,
+ * and the epoch only advances when every thread inside a traversal has seen the current
+ * one, so no thread can still hold a reference from before the object was retired.
+ * Each thread keeps its own retired and free lists, so the fast paths touch no shared state
+ * beyond the global epoch.
+ * @param <T> The type of object recycled
+ */
+final class EpochReclaimer<T> {
+    /**
+     * Epoch of a participant outside any traversal.
+     */
+    private static final long QUIESCENT = -1L;
+    /**
+     * Retired objects a thread gathers before it tries to advance the epoch.
+     */
+    private static final int BATCH = 64;
+
+    /**
+     * One thread's view of the reclaimer.
+     */
+    private static final class Participant {
+        final WeakReference<Thread> thread = new WeakReference<>(Thread.currentThread());
+        volatile long epoch = QUIESCENT;
+        int depth;
+        Object[] retired = new Object[BATCH * 2];
+        long[] retiredEpochs = new long[BATCH * 2];
+        int retiredCount;
+        final ArrayDeque<Object> free = new ArrayDeque<>();
+    }
+
+    private final AtomicLong globalEpoch = new AtomicLong(0);
+    private final ConcurrentLinkedQueue<Participant> participants = new ConcurrentLinkedQueue<>();
+    private final ThreadLocal<Participant> local = ThreadLocal.withInitial(() -> {
+        Participant participant = new Participant();
+        participants.add(participant);
+        return participant;
+    });
+    private final int poolLimit;
+
+    /**
+     * Create a reclaimer.
+     * @param poolLimit The most free objects each thread keeps for reuse
+     */
+    EpochReclaimer(int poolLimit) {
+        this.poolLimit = poolLimit;
+    }
+
+    /**
+     * Starts a traversal. Calls nest, and only the outermost pair takes effect.
+     */
+    void enter() {
+        Participant participant = local.get();
+        if (participant.depth++ == 0) {
+            long epoch = globalEpoch.get();
+            participant.epoch = epoch;
+            while (globalEpoch.get() != epoch) {
+                epoch = globalEpoch.get();
+                participant.epoch = epoch;
+            }
+        }
+    }
+
+    /**
+     * Ends a traversal started with {@link #enter()}.
+     */
+    void exit() {
+        Participant participant = local.get();
+        if (--participant.depth == 0) {
+            participant.epoch = QUIESCENT;
+        }
+    }
+
+    /**
+     * Queues an object that is no longer reachable for reuse after a grace period.
+     * Must be called inside a traversal.
+     */
+    void retire(T object) {
+        Participant participant = local.get();
+        if (participant.retiredCount == participant.retired.length) {
+            reclaim(participant);
+        }
+        if (participant.retiredCount == participant.retired.length) {
+            int length = participant.retired.length * 2;
+            participant.retired = Arrays.copyOf(participant.retired, length);
+            participant.retiredEpochs = Arrays.copyOf(participant.retiredEpochs, length);
+        }
+        participant.retired[participant.retiredCount] = object;
+        participant.retiredEpochs[participant.retiredCount] = globalEpoch.get();
+        participant.retiredCount += 1;
+        if (participant.retiredCount % BATCH == 0) {
+            reclaim(participant);
+        }
+    }
+
+    /**
+     * Takes a free object whose grace period has passed, or returns null if there is none.
+     */
+    @SuppressWarnings("unchecked")
+    T reuse() {
+        return (T) local.get().free.pollFirst();
+    }
+
+    /**
+     * Advances the epoch if it can and moves retired objects past their grace period
+     * to the free list.
+     */
+    private void reclaim(Participant participant) {
+        tryAdvance();
+        long safe = globalEpoch.get() - 2;
+        int reclaimed = 0;
+        while (reclaimed < participant.retiredCount
+                && participant.retiredEpochs[reclaimed] <= safe) {
+            if (participant.free.size() < poolLimit) {
+                participant.free.addLast(participant.retired[reclaimed]);
+            }
+            reclaimed++;
+        }
+        int remaining = participant.retiredCount - reclaimed;
+        System.arraycopy(participant.retired, reclaimed, participant.retired, 0, remaining);
+        System.arraycopy(participant.retiredEpochs, reclaimed,
+                participant.retiredEpochs, 0, remaining);
+        Arrays.fill(participant.retired, remaining, participant.retiredCount, null);
+        participant.retiredCount = remaining;
+    }
+
+    /**
+     * Advances the global epoch by one if every thread in a traversal has seen it.
+     * Forgets participants whose threads have died outside a traversal.
+     */
+    private void tryAdvance() {
+        long epoch = globalEpoch.get();
+        for (Iterator<Participant> iterator = participants.iterator(); iterator.hasNext(); ) {
+            Participant participant = iterator.next();
+            long participantEpoch = participant.epoch;
+            if (participantEpoch == QUIESCENT) {
+                if (participant.thread.get() == null) {
+                    iterator.remove();
+                }
+            }
+            else if (participantEpoch != epoch) {
+                return;
+            }
+        }
+        globalEpoch.compareAndSet(epoch, epoch + 1);
+    }
+}
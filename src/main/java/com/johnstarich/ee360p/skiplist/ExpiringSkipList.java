@@ -0,0 +1,263 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * A concurrent set whose keys expire a fixed time after they were last added.
+ * Each key maps to its deadline, and a second skip list orders (deadline, key) pairs
+ * so {@link #sweep(int)} can remove the oldest expired keys without scanning the set.
+ * Reads check the deadline themselves, so an expired key is absent the moment it
+ * expires, whether or not a sweep has removed it yet. For the same reason there is
+ * no live-key counter, and {@link #size()} walks the set.
+ */
+public class ExpiringSkipList extends AbstractSet<Integer> {
+    /**
+     * A key's position in the time index.
+     */
+    static final class Expiry {
+        final long deadline;
+        final int key;
+
+        Expiry(long deadline, int key) {
+            this.deadline = deadline;
+            this.key = key;
+        }
+
+        @Override
+        public String toString() {
+            return key + "@" + deadline;
+        }
+    }
+
+    /**
+     * Orders expiries by deadline then key. The prefix is the deadline, so the time
+     * index only looks at keys to break ties.
+     */
+    static final PrefixComparator<Expiry> EXPIRY_ORDER = new PrefixComparator<Expiry>() {
+        @Override
+        public long prefix(Expiry expiry) {
+            return expiry.deadline ^ Long.MIN_VALUE;
+        }
+
+        @Override
+        public int compare(Expiry a, Expiry b) {
+            int c = Long.compare(a.deadline, b.deadline);
+            return c != 0 ? c : Integer.compare(a.key, b.key);
+        }
+    };
+
+    final FineGrainedSkipListMap<Integer, Long> deadlines;
+    final FineGrainedSkipListMap<Expiry, Boolean> timeIndex;
+    final long defaultTtlNanos;
+    final LongSupplier clock;
+    /**
+     * The clock's reading when the set was created. Deadlines are kept as nanoseconds
+     * since then, so they never wrap and sort in the same order they expire in.
+     */
+    final long origin;
+
+    /**
+     * Create an expiring set on the system clock.
+     * @param maxLevel The maximum level for both skip lists
+     * @param defaultTtl How long {@link #add(Integer)} keeps a key
+     * @param unit The unit of defaultTtl
+     */
+    public ExpiringSkipList(int maxLevel, long defaultTtl, TimeUnit unit) {
+        this(maxLevel, defaultTtl, unit, System::nanoTime);
+    }
+
+    /**
+     * Create an expiring set on a custom clock.
+     * @param maxLevel The maximum level for both skip lists
+     * @param defaultTtl How long {@link #add(Integer)} keeps a key
+     * @param unit The unit of defaultTtl
+     * @param clock A monotonic time source in nanoseconds
+     */
+    public ExpiringSkipList(int maxLevel, long defaultTtl, TimeUnit unit, LongSupplier clock) {
+        if (defaultTtl <= 0) {
+            throw new IllegalArgumentException("Time to live must be positive: " + defaultTtl);
+        }
+        this.deadlines = new FineGrainedSkipListMap<>(maxLevel, PrefixComparator.INTEGERS);
+        this.timeIndex = new FineGrainedSkipListMap<>(maxLevel, EXPIRY_ORDER);
+        this.defaultTtlNanos = unit.toNanos(defaultTtl);
+        this.clock = clock;
+        this.origin = clock.getAsLong();
+    }
+
+    /**
+     * Reads the clock as nanoseconds since the set was created.
+     */
+    private long now() {
+        return clock.getAsLong() - origin;
+    }
+
+    private boolean isLive(Long deadline, long now) {
+        return deadline != null && deadline > now;
+    }
+
+    /**
+     * Adds key with the default time to live, or renews it if already present.
+     * @param key The key to add
+     * @return true if key was absent or expired
+     */
+    @Override
+    public boolean add(Integer key) {
+        return add(key, defaultTtlNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adds key, or renews it if already present, so that it expires after ttl.
+     * A ttl too long to represent in nanoseconds, such as Long.MAX_VALUE days, keeps key
+     * until it is removed.
+     * @param key The key to add
+     * @param ttl How long to keep key
+     * @param unit The unit of ttl
+     * @return true if key was absent or expired
+     */
+    public boolean add(Integer key, long ttl, TimeUnit unit) {
+        long now = now();
+        long deadline = now + Math.min(unit.toNanos(ttl), Long.MAX_VALUE - now);
+        Long previous = deadlines.put(key, deadline);
+        timeIndex.put(new Expiry(deadline, key), Boolean.TRUE);
+        if (previous != null && previous != deadline) {
+            timeIndex.remove(new Expiry(previous, key));
+        }
+        return !isLive(previous, now);
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        if (!(key instanceof Integer)) {
+            return false;
+        }
+        return isLive(deadlines.get(key), now());
+    }
+
+    @Override
+    public boolean remove(Object key) {
+        if (!(key instanceof Integer)) {
+            return false;
+        }
+        Long deadline = deadlines.remove(key);
+        if (deadline == null) {
+            return false;
+        }
+        timeIndex.remove(new Expiry(deadline, (Integer) key));
+        return isLive(deadline, now());
+    }
+
+    /**
+     * Removes up to maxBatch expired keys, oldest deadline first.
+     * Each key is removed only if its deadline has not been renewed meanwhile,
+     * and the batch bound keeps a sweep from holding up foreground operations.
+     * @param maxBatch The most keys to examine
+     * @return the number of expired keys removed
+     */
+    public int sweep(int maxBatch) {
+        long now = now();
+        int removed = 0;
+        Iterator<Map.Entry<Expiry, Boolean>> expiries = timeIndex.entrySet().iterator();
+
+        for (int examined = 0; examined < maxBatch && expiries.hasNext(); examined++) {
+            Expiry expiry = expiries.next().getKey();
+            if (expiry.deadline > now) {
+                break;
+            }
+            if (deadlines.remove(expiry.key, expiry.deadline)) {
+                removed++;
+            }
+            timeIndex.remove(expiry);
+        }
+        return removed;
+    }
+
+    /**
+     * Sweeps in the background, one batch of at most maxBatch keys per period.
+     * Cancel the returned future to stop sweeping.
+     * @param executor The executor to run sweeps on
+     * @param period Time between sweeps
+     * @param unit The unit of period
+     * @param maxBatch The most keys each sweep examines
+     * @return the scheduled sweeper
+     */
+    public ScheduledFuture<?> scheduleSweeper(ScheduledExecutorService executor, long period,
+                                              TimeUnit unit, int maxBatch) {
+        return executor.scheduleWithFixedDelay(() -> sweep(maxBatch), period, period, unit);
+    }
+
+    /**
+     * Counts the live keys. Unlike the other operations this takes O(n) time, since
+     * expired keys awaiting a sweep must be skipped; use {@link #isEmpty()} to test
+     * for keys.
+     * @return the number of keys that have not expired
+     */
+    @Override
+    public int size() {
+        int size = 0;
+        for (Iterator<Integer> keys = iterator(); keys.hasNext(); keys.next()) {
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Determines if no key is live, stopping at the first live key instead of counting.
+     * @return true if every key has expired or been removed
+     */
+    @Override
+    public boolean isEmpty() {
+        return !iterator().hasNext();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private final Iterator<Map.Entry<Integer, Long>> entries =
+                    deadlines.entrySet().iterator();
+            private final long now = now();
+            private Integer next = advance();
+            private Integer lastReturned;
+
+            private Integer advance() {
+                while (entries.hasNext()) {
+                    Map.Entry<Integer, Long> entry = entries.next();
+                    if (isLive(entry.getValue(), now)) {
+                        return entry.getKey();
+                    }
+                }
+                return null;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Integer next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                lastReturned = next;
+                next = advance();
+                return lastReturned;
+            }
+
+            @Override
+            public void remove() {
+                if (lastReturned == null) {
+                    throw new IllegalStateException();
+                }
+                ExpiringSkipList.this.remove(lastReturned);
+                lastReturned = null;
+            }
+        };
+    }
+}
@@ -0,0 +1,536 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.LongConsumer;
+
+/**
+ * A fine-grained skip-list of primitive long keys.
+ * The head and tail are sentinel nodes compared by identity, so every long value,
+ * including Long.MIN_VALUE and Long.MAX_VALUE, can be stored.
+ *
+ * <p>This is a copy of the {@link FineGrainedSkipList} engine for long keys, kept
+ * separate so keys stay unboxed. It carries the backoff policy, the embedded lock, the
+ * lookup filter with its rebuild fix, the delta-varint format, and insert's check that
+ * the successor lies above the key. It does not carry node recycling, the level
+ * rebalancer's validation, the hash index, back links, the change stream, batches,
+ * range removal or polling; fixes to those parts of the engine do not apply here.
+ */
+public class FineGrainedLongSkipList extends AbstractSet<Long> {
+    class Node {
+        final long key;
+        final int level;
+        final Node[] forward;
+
+        volatile int lockState;
+        volatile boolean fullyLinked;
+        volatile boolean markedForRemoval;
+
+        Node(long key, int level, int maxLevel) {
+            this.key = key;
+            this.level = level;
+            this.forward = new Node[maxLevel];
+        }
+
+        void lock() {
+            for (int attempt = 0; !tryLock(); attempt += 1) {
+                backoff.backoff(attempt);
+            }
+        }
+
+        boolean tryLock() {
+            return lockState == UNLOCKED && LOCK_STATE.compareAndSet(this, UNLOCKED, LOCKED);
+        }
+
+        void unlock() {
+            lockState = UNLOCKED;
+        }
+
+        public String toString() {
+            return Long.toString(key);
+        }
+    }
+
+    private static final int UNLOCKED = 0;
+    private static final int LOCKED = 1;
+    private static final AtomicIntegerFieldUpdater<Node> LOCK_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "lockState");
+
+    final Node header;
+    final Node tail;
+    final int maxLevel;
+    final AtomicInteger size;
+    final float p = 0.5f;
+    final BackoffPolicy backoff;
+    /**
+     * Rejects most lookups for absent keys before they search, or null if none.
+     */
+    final NegativeLookupFilter filter;
+
+    /**
+     * Create a long skip list with a maximum level.
+     * @param maxLevel The maximum level for this skip list
+     */
+    public FineGrainedLongSkipList(int maxLevel) {
+        this(maxLevel, BackoffPolicy.DEFAULT);
+    }
+
+    /**
+     * Create a long skip list with a maximum level and a contention policy.
+     * @param maxLevel The maximum level for this skip list
+     * @param backoff How threads wait before retrying after losing a race
+     */
+    public FineGrainedLongSkipList(int maxLevel, BackoffPolicy backoff) {
+        this(maxLevel, backoff, null);
+    }
+
+    /**
+     * Create a long skip list that checks a negative-lookup filter before searching.
+     * @param maxLevel The maximum level for this skip list
+     * @param backoff How threads wait before retrying after losing a race
+     * @param filter A new filter for this list only, or null for none
+     */
+    public FineGrainedLongSkipList(int maxLevel, BackoffPolicy backoff,
+            NegativeLookupFilter filter) {
+        this.filter = filter;
+        this.maxLevel = maxLevel;
+        this.backoff = backoff;
+        this.size = new AtomicInteger(0);
+        this.tail = new Node(0L, maxLevel - 1, maxLevel);
+        this.header = new Node(0L, maxLevel - 1, maxLevel);
+        for (int level = 0; level < maxLevel; level += 1) {
+            header.forward[level] = tail;
+        }
+        header.fullyLinked = true;
+        tail.fullyLinked = true;
+        if (filter != null) {
+            filter.bind(this::forEachFilteredKey);
+        }
+    }
+
+    @Override
+    public boolean add(Long key) {
+        return add(key.longValue());
+    }
+
+    /**
+     * Adds key to the set.
+     * @param key The key to add
+     * @return true if the key was not already present
+     */
+    public boolean add(long key) {
+        Node[] predecessors = new Node[maxLevel];
+        Node[] successors = new Node[maxLevel];
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
+
+            int foundNodeLevel = find(key, predecessors, successors);
+
+            if (foundNodeLevel != -1) {
+                Node foundNode = successors[foundNodeLevel];
+                if (!foundNode.markedForRemoval) {
+                    for (int spins = 0; !foundNode.fullyLinked; spins += 1) {
+                        backoff.backoff(spins);
+                    }
+                    return false;
+                }
+            }
+
+            int newLevel = chooseRandomLevel();
+            int highestLockedLevel = -1;
+            NegativeLookupFilter.Table counted = null;
+            Node newNode;
+
+            try {
+                boolean valid = true;
+                Node predecessor;
+                Node successor;
+                Node previousPredecessor = null;
+
+                for (int level = 0; (valid && (level <= newLevel)); level += 1) {
+                    predecessor = predecessors[level];
+                    successor = successors[level];
+
+                    if (predecessor != previousPredecessor) {
+                        predecessor.lock();
+                        highestLockedLevel = level;
+                        previousPredecessor = predecessor;
+                    }
+
+                    // The key check catches a search that found a removed node on a
+                    // higher level but, lower down, a newer node with the same key.
+                    valid = !predecessor.markedForRemoval
+                            && !successor.markedForRemoval
+                            && predecessor.forward[level] == successor
+                            && (successor == tail || successor.key > key);
+                }
+
+                if (!valid) {
+                    continue;
+                }
+
+                if (filter != null) {
+                    counted = filter.inserting(key);
+                }
+                newNode = new Node(key, newLevel, maxLevel);
+                if (filter != null) {
+                    // Removals lock the node first, so none uncounts the key before it is counted.
+                    newNode.lock();
+                }
+
+                for (int level = 0; level <= newLevel; level += 1) {
+                    newNode.forward[level] = successors[level];
+                    predecessors[level].forward[level] = newNode;
+                }
+
+                newNode.fullyLinked = true;
+                size.incrementAndGet();
+            }
+            finally {
+                unlockPredecessors(predecessors, highestLockedLevel);
+            }
+
+            if (filter != null) {
+                filter.inserted(key, counted);
+                newNode.unlock();
+            }
+            return true;
+        }
+    }
+
+    @Override
+    public boolean remove(Object key) {
+        return key instanceof Long && remove(((Long) key).longValue());
+    }
+
+    /**
+     * Removes key from the set.
+     * @param key The key to remove
+     * @return true if the key was present
+     */
+    public boolean remove(long key) {
+        Node[] predecessors = new Node[maxLevel];
+        Node[] successors = new Node[maxLevel];
+        Node nodeToRemove = null;
+        boolean inProcessOfRemoving = false;
+        int highestLevelFound = -1;
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
+
+            int foundNodeLevel = find(key, predecessors, successors);
+
+            if (!inProcessOfRemoving
+                    && (foundNodeLevel == -1
+                    || !canDelete(successors[foundNodeLevel], foundNodeLevel))) {
+                return false;
+            }
+
+            if (!inProcessOfRemoving) {
+                nodeToRemove = successors[foundNodeLevel];
+                highestLevelFound = nodeToRemove.level;
+                nodeToRemove.lock();
+
+                if (nodeToRemove.markedForRemoval) {
+                    nodeToRemove.unlock();
+                    return false;
+                }
+
+                nodeToRemove.markedForRemoval = true;
+                inProcessOfRemoving = true;
+            }
+
+            int highestLockedLevel = -1;
+
+            try {
+                boolean valid = true;
+                Node predecessor;
+                Node previousPredecessor = null;
+
+                for (int level = 0; (valid && (level <= highestLevelFound)); level += 1) {
+                    predecessor = predecessors[level];
+
+                    if (predecessor != previousPredecessor) {
+                        predecessor.lock();
+                        highestLockedLevel = level;
+                        previousPredecessor = predecessor;
+                    }
+
+                    valid = !predecessor.markedForRemoval
+                            && predecessor.forward[level] == nodeToRemove;
+                }
+
+                if (!valid) {
+                    continue;
+                }
+
+                NegativeLookupFilter.Table counted = filter != null ? filter.removing() : null;
+                for (int level = highestLevelFound; level >= 0; level -= 1) {
+                    predecessors[level].forward[level] = nodeToRemove.forward[level];
+                }
+
+                nodeToRemove.unlock();
+                size.decrementAndGet();
+                if (filter != null) {
+                    filter.removed(key, counted);
+                }
+
+                return true;
+            }
+            finally {
+                unlockPredecessors(predecessors, highestLockedLevel);
+            }
+        }
+    }
+
+    private static void unlockPredecessors(Node[] predecessors, int highestLockedLevel) {
+        Node previousPredecessor = null;
+        for (int level = 0; level <= highestLockedLevel; level += 1) {
+            if (predecessors[level] != previousPredecessor) {
+                previousPredecessor = predecessors[level];
+                previousPredecessor.unlock();
+            }
+        }
+    }
+
+    private boolean canDelete(Node node, int highestLevelFound) {
+        return !node.markedForRemoval
+                && node.fullyLinked
+                && node.level == highestLevelFound;
+    }
+
+    @Override
+    public boolean contains(Object key) {
+        return key instanceof Long && contains(((Long) key).longValue());
+    }
+
+    /**
+     * Determines if key is in the set.
+     * @param key The key to look for
+     * @return true if the key is present
+     */
+    public boolean contains(long key) {
+        if (filter == null) {
+            return search(key);
+        }
+        if (!filter.mightContain(key)) {
+            return false;
+        }
+        boolean found = search(key);
+        if (!found) {
+            filter.falsePositive();
+        }
+        return found;
+    }
+
+    private boolean search(long key) {
+        Node predecessor = header;
+        Node current = null;
+
+        for (int level = maxLevel - 1; level >= 0; level -= 1) {
+            current = predecessor.forward[level];
+
+            while (current != tail && current.key < key) {
+                predecessor = current;
+                current = predecessor.forward[level];
+            }
+
+            if (current != tail && current.key == key) {
+                return current.fullyLinked && !current.markedForRemoval;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Feeds the linked keys to a filter rebuild, reading each node's lock state before its
+     * successor so the walk is ordered after every insert that released the node.
+     * Marked nodes are fed as well, since their removals may already count on it.
+     */
+    private void forEachFilteredKey(LongConsumer action) {
+        Node node = header;
+        while (true) {
+            LOCK_STATE.get(node);
+            node = node.forward[0];
+            if (node == tail) {
+                return;
+            }
+            if (node.fullyLinked) {
+                action.accept(node.key);
+            }
+        }
+    }
+
+    /**
+     * Finds key in the skiplist, returning highest level of occurrence or -1 if absent.
+     */
+    int find(long key, Node[] predecessors, Node[] successors) {
+        int highestLevel = -1;
+        Node predecessor = this.header;
+        Node current;
+
+        for (int level = maxLevel - 1; level >= 0; level -= 1) {
+            current = predecessor.forward[level];
+
+            while (current != tail && current.key < key) {
+                predecessor = current;
+                current = predecessor.forward[level];
+            }
+
+            if (highestLevel == -1 && current != tail && current.key == key) {
+                highestLevel = level;
+            }
+
+            predecessors[level] = predecessor;
+            successors[level] = current;
+        }
+
+        return highestLevel;
+    }
+
+    private Random levelRandom = new Random(0);
+
+    private int chooseRandomLevel() {
+        int newLevel = 0;
+        while (newLevel < maxLevel - 1 && levelRandom.nextFloat() < this.p) {
+            newLevel += 1;
+        }
+        return newLevel;
+    }
+
+    /**
+     * Writes the keys in the compact delta-varint format, streaming level 0 in order.
+     * Bytes are written one at a time, so wrap unbuffered streams in a buffer.
+     * @param out The stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        encode(new DeltaVarintCodec.Encoder<>(out::write));
+    }
+
+    /**
+     * Writes the keys in the compact delta-varint format into a buffer.
+     * @param buffer The buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer fills up
+     */
+    public void writeTo(ByteBuffer buffer) {
+        encode(new DeltaVarintCodec.Encoder<>(b -> buffer.put((byte) b)));
+    }
+
+    private <E extends Exception> void encode(DeltaVarintCodec.Encoder<E> encoder) throws E {
+        for (PrimitiveIterator.OfLong keys = longIterator(); keys.hasNext(); ) {
+            encoder.add(keys.nextLong());
+        }
+        encoder.finish();
+    }
+
+    /**
+     * Reads a set written by {@link #writeTo} into a new list. Keys arrive in order,
+     * so each is linked after the last node on its levels in O(1) instead of searched for.
+     * @param in The stream to read from
+     * @param maxLevel The maximum level for the new list
+     * @return a list of the decoded keys
+     * @throws IOException if the stream fails, ends early or holds a malformed set
+     */
+    public static FineGrainedLongSkipList readFrom(InputStream in, int maxLevel)
+            throws IOException {
+        return decode(new DeltaVarintCodec.Decoder<>(() -> {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Set ended without a terminator");
+            }
+            return b;
+        }), maxLevel);
+    }
+
+    /**
+     * Reads a set written by {@link #writeTo} from a buffer into a new list.
+     * @param buffer The buffer to read from
+     * @param maxLevel The maximum level for the new list
+     * @return a list of the decoded keys
+     * @throws IOException if the buffer holds a malformed set
+     * @throws java.nio.BufferUnderflowException if the buffer ends early
+     */
+    public static FineGrainedLongSkipList readFrom(ByteBuffer buffer, int maxLevel)
+            throws IOException {
+        return decode(new DeltaVarintCodec.Decoder<>(() -> buffer.get() & 0xFF), maxLevel);
+    }
+
+    private static <E extends Exception> FineGrainedLongSkipList decode(
+            DeltaVarintCodec.Decoder<E> decoder, int maxLevel) throws IOException, E {
+        FineGrainedLongSkipList list = new FineGrainedLongSkipList(maxLevel);
+        Node[] last = new Node[maxLevel];
+        Arrays.fill(last, list.header);
+        while (decoder.advance()) {
+            int newLevel = list.chooseRandomLevel();
+            Node node = list.new Node(decoder.key(), newLevel, maxLevel);
+            for (int level = 0; level <= newLevel; level += 1) {
+                node.forward[level] = list.tail;
+                last[level].forward[level] = node;
+                last[level] = node;
+            }
+            node.fullyLinked = true;
+            list.size.incrementAndGet();
+        }
+        return list;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Iterator<Long> iterator() {
+        return longIterator();
+    }
+
+    /**
+     * Iterates over the keys in ascending order without boxing.
+     * @return an iterator over the present keys
+     */
+    public PrimitiveIterator.OfLong longIterator() {
+        return new PrimitiveIterator.OfLong() {
+            private Node current = advance(header);
+
+            private Node advance(Node node) {
+                Node next = node.forward[0];
+                while (next != tail && (next.markedForRemoval || !next.fullyLinked)) {
+                    next = next.forward[0];
+                }
+                return next;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current != tail;
+            }
+
+            @Override
+            public long nextLong() {
+                if (current == tail) {
+                    throw new NoSuchElementException();
+                }
+                long key = current.key;
+                current = advance(current);
+                return key;
+            }
+        };
+    }
+}
@@ -1,10 +1,23 @@
 package com.johnstarich.ee360p.skiplist;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
 import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.function.LongConsumer;
 
 /**
  * A fine-grained and lock-free skip-list implementation.
@@ -14,21 +27,90 @@ public class FineGrainedSkipList extends AbstractSet<Integer> {
     class Node {
         int key;
         int value;
-        int level;
+        /**
+         * The highest level this node is linked on. Only changes under the node's lock,
+         * when the list is rebalanced.
+         */
+        volatile int level;
         Node[] forward;
+        /**
+         * The level-0 predecessor, kept only when back links are on. Written only while
+         * holding the lock of the node that links forward to this one, so it changes
+         * together with that link.
+         */
+        volatile Node backward;
 
-        ReentrantLock lock;
-        boolean fullyLinked;
-        boolean markedForRemoval;
+        volatile int lockState;
+        volatile boolean fullyLinked;
+        volatile boolean markedForRemoval;
+        /**
+         * Bumped when recycling starts and again when it ends, so it is odd while the
+         * node is being rewritten, and a reader holding the node across traversals can
+         * tell whether it still holds the same key.
+         */
+        volatile int incarnation;
 
         public Node(int key, int value, int level, int maxLevel) {
             this.key = key;
             this.value = value;
             this.level = level;
             this.forward = new Node[maxLevel];
-            this.fullyLinked = true;
+            this.fullyLinked = false;
             this.markedForRemoval = false;
-            this.lock = new ReentrantLock();
+        }
+
+        /**
+         * Acquires this node's lock, waiting according to the list's backoff policy.
+         * The lock is not re-entrant, and unlock does not wake waiters; a parking
+         * policy's waiters retry when their park times out.
+         */
+        void lock() {
+            for (int attempt = 0; !tryLock(); attempt += 1) {
+                backoff.backoff(attempt);
+            }
+        }
+
+        boolean tryLock() {
+            return lockState == UNLOCKED && LOCK_STATE.compareAndSet(this, UNLOCKED, LOCKED);
+        }
+
+        void unlock() {
+            lockState = UNLOCKED;
+        }
+
+        /**
+         * Points this node's link on level at next.
+         */
+        void link(int level, Node next) {
+            forward[level] = next;
+        }
+
+        /**
+         * Prepares a recycled node to be linked again as a new node. The incarnation moves
+         * on before any field is rewritten, so a reader that sees the mark cleared also
+         * sees that the node is no longer the one it held.
+         */
+        void reuse(int key, int value, int level) {
+            this.incarnation += 1;
+            this.key = key;
+            this.value = value;
+            this.level = level;
+            Arrays.fill(forward, level + 1, forward.length, null);
+            this.backward = null;
+            this.lockState = UNLOCKED;
+            this.markedForRemoval = false;
+            this.fullyLinked = false;
+            this.incarnation += 1;
+        }
+
+        /**
+         * Checks that this node still holds the key a reader saw at seenIncarnation and has
+         * not been removed. The mark is read first: reuse clears it only after moving the
+         * incarnation on, so a cleared mark on a recycled node cannot pass for the old one.
+         * A node that passes inside an epoch cannot be recycled until that epoch ends.
+         */
+        boolean stillHolds(int seenIncarnation) {
+            return !markedForRemoval && incarnation == seenIncarnation;
         }
 
         public String toString() {
@@ -36,11 +118,50 @@ public class FineGrainedSkipList extends AbstractSet<Integer> {
         }
     }
 
+    private static final int UNLOCKED = 0;
+    private static final int LOCKED = 1;
+    private static final AtomicIntegerFieldUpdater<Node> LOCK_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "lockState");
+
+    /**
+     * Outcomes of searching for a batch's keys.
+     */
+    private static final int BATCH_FOUND = 0;
+    private static final int BATCH_FAILS = 1;
+    private static final int BATCH_RETRY = 2;
+
     final Node header;
     AtomicInteger currentLevels;
     final int maxLevel;
     AtomicInteger size;
     final float p = 0.5f;
+    final BackoffPolicy backoff;
+    /**
+     * Recycles removed nodes, or null if every insert allocates a new node.
+     */
+    final EpochReclaimer<Node> reclaimer;
+    /**
+     * Per-thread predecessor and successor arrays, kept only when recycling nodes.
+     */
+    private final ThreadLocal<Node[][]> searchArrays;
+    /**
+     * Maps each key to its node for point lookups, or null if every lookup searches.
+     * A node enters the index before it is fully linked and leaves after it is unlinked,
+     * so a live node is always indexed.
+     */
+    final ConcurrentHashMap<Integer, Node> index;
+    /**
+     * Rejects most lookups for absent keys before they search, or null if none.
+     */
+    final NegativeLookupFilter filter;
+    /**
+     * Whether level 0 keeps back links for descending scans.
+     */
+    final boolean backLinks;
+    /**
+     * Receives every committed insert and removal, or null if changes are not streamed.
+     */
+    final ChangeStream changes;
 
     /**
      * Create a skip list with a maximum level.
@@ -48,31 +169,204 @@ public class FineGrainedSkipList extends AbstractSet<Integer> {
      * @param maxLevel The maximum level for this SkipList
      */
     public FineGrainedSkipList(int maxLevel) {
+        this(maxLevel, BackoffPolicy.DEFAULT);
+    }
+
+    /**
+     * Create a skip list with a maximum level and a contention policy.
+     * Use {@link BackoffPolicy#PARKING} when callers run on virtual threads.
+     * @param maxLevel The maximum level for this SkipList
+     * @param backoff How threads wait before retrying after losing a race
+     */
+    public FineGrainedSkipList(int maxLevel, BackoffPolicy backoff) {
+        this(maxLevel, backoff, 0);
+    }
+
+    /**
+     * Create a skip list that recycles removed nodes.
+     * Each thread keeps up to poolSize removed nodes and reuses them for its inserts once
+     * every thread that could still be traversing them has finished, so steady churn
+     * allocates almost no nodes. Iterators tolerate their position being recycled by
+     * finding their place again by key.
+     * @param maxLevel The maximum level for this SkipList
+     * @param backoff How threads wait before retrying after losing a race
+     * @param poolSize The most removed nodes each thread keeps, or 0 to disable recycling
+     */
+    public FineGrainedSkipList(int maxLevel, BackoffPolicy backoff, int poolSize) {
+        this(maxLevel, backoff, poolSize, false);
+    }
+
+    /**
+     * Create a skip list that can answer point lookups from a hash index.
+     * contains, and higher or ceiling of a present key, read the index instead of
+     * descending the levels; scans and range removal still use the list.
+     * The index costs one hash entry per key.
+     * @param maxLevel The maximum level for this SkipList
+     * @param backoff How threads wait before retrying after losing a race
+     * @param poolSize The most removed nodes each thread keeps, or 0 to disable recycling
+     * @param hashIndex Whether to keep a hash index of every node
+     */
+    public FineGrainedSkipList(int maxLevel, BackoffPolicy backoff, int poolSize,
+            boolean hashIndex) {
+        this(maxLevel, backoff, poolSize, hashIndex, null);
+    }
+
+    /**
+     * Create a skip list that checks a negative-lookup filter before searching for a key.
+     * The filter counts every insert and removal and is rebuilt from this list in the
+     * background when its false-positive rate drifts.
+     * @param maxLevel The maximum level for this SkipList
+     * @param backoff How threads wait before retrying after losing a race
+     * @param poolSize The most removed nodes each thread keeps, or 0 to disable recycling
+     * @param hashIndex Whether to keep a hash index of every node
+     * @param filter A new filter for this list only, or null for none
+     */
+    public FineGrainedSkipList(int maxLevel, BackoffPolicy backoff, int poolSize,
+            boolean hashIndex, NegativeLookupFilter filter) {
+        this(maxLevel, backoff, poolSize, hashIndex, filter, false);
+    }
+
+    /**
+     * Create a skip list that can also keep back links on level 0.
+     * With back links each descending step follows one link instead of searching,
+     * at the cost of one more reference per node and one more write per update.
+     * @param maxLevel The maximum level for this SkipList
+     * @param backoff How threads wait before retrying after losing a race
+     * @param poolSize The most removed nodes each thread keeps, or 0 to disable recycling
+     * @param hashIndex Whether to keep a hash index of every node
+     * @param filter A new filter for this list only, or null for none
+     * @param backLinks Whether to link each node on level 0 to its predecessor
+     */
+    public FineGrainedSkipList(int maxLevel, BackoffPolicy backoff, int poolSize,
+            boolean hashIndex, NegativeLookupFilter filter, boolean backLinks) {
+        this(maxLevel, backoff, poolSize, hashIndex, filter, backLinks, null);
+    }
+
+    /**
+     * Create a skip list that publishes its committed inserts and removals, including
+     * those of range removals and polls, to a change stream for subscribers to follow.
+     * @param maxLevel The maximum level for this SkipList
+     * @param backoff How threads wait before retrying after losing a race
+     * @param poolSize The most removed nodes each thread keeps, or 0 to disable recycling
+     * @param hashIndex Whether to keep a hash index of every node
+     * @param filter A new filter for this list only, or null for none
+     * @param backLinks Whether to link each node on level 0 to its predecessor
+     * @param changes A new change stream for this list only, or null for none
+     */
+    public FineGrainedSkipList(int maxLevel, BackoffPolicy backoff, int poolSize,
+            boolean hashIndex, NegativeLookupFilter filter, boolean backLinks,
+            ChangeStream changes) {
+        this.changes = changes;
+        this.backLinks = backLinks;
+        this.filter = filter;
+        this.index = hashIndex ? new ConcurrentHashMap<>() : null;
+        this.reclaimer = poolSize > 0 ? new EpochReclaimer<>(poolSize) : null;
+        this.searchArrays = poolSize > 0 ? ThreadLocal.withInitial(this::newSearchArrays) : null;
         this.currentLevels = new AtomicInteger(0);
         this.size = new AtomicInteger(0);
         this.maxLevel = maxLevel;
+        this.backoff = backoff;
         header = new Node(Integer.MAX_VALUE, Integer.MAX_VALUE, 0, maxLevel);
+        header.fullyLinked = true;
         for (int i = 0; i < maxLevel; i += 1) {
-            header.forward[i] = header;
+            header.link(i, header);
+        }
+        header.backward = header;
+        if (filter != null) {
+            filter.bind(this::forEachFilteredKey);
+        }
+        if (changes != null) {
+            changes.bind();
         }
     }
 
     @Override
     public boolean add(Integer value) {
-        return insert(value, value);
+        enter();
+        try {
+            return insert(value, value);
+        }
+        finally {
+            exit();
+        }
+    }
+
+    /**
+     * Marks the start of a traversal, so the nodes it reaches are not recycled under it.
+     * Every method that follows forward links runs between enter and exit.
+     */
+    void enter() {
+        if (reclaimer != null) {
+            reclaimer.enter();
+        }
+    }
+
+    void exit() {
+        if (reclaimer != null) {
+            reclaimer.exit();
+        }
+    }
+
+    /**
+     * Creates a node, reusing a recycled one when there is one.
+     */
+    private Node newNode(int key, int value, int level) {
+        Node node = reclaimer != null ? reclaimer.reuse() : null;
+        if (node == null) {
+            return new Node(key, value, level, maxLevel);
+        }
+        node.reuse(key, value, level);
+        return node;
+    }
+
+    /**
+     * Returns predecessor and successor arrays for one search. They are reused by the
+     * calling thread when recycling, so callers must not hold them across operations.
+     */
+    private Node[][] searchArrays() {
+        return searchArrays != null ? searchArrays.get() : newSearchArrays();
+    }
+
+    private Node[][] newSearchArrays() {
+        return new Node[][] {new Node[maxLevel], new Node[maxLevel]};
+    }
+
+    /**
+     * Hands an unlinked node to the reclaimer, if recycling is enabled.
+     */
+    private void retire(Node node) {
+        if (reclaimer != null) {
+            reclaimer.retire(node);
+        }
+    }
+
+    /**
+     * Drops an unlinked node from the hash index, unless its key was inserted again.
+     */
+    private void unindex(Node node) {
+        if (index != null) {
+            index.remove(node.key, node);
+        }
     }
 
     private boolean insert(int searchKey, int value) {
-        Node[] predecessors = new Node[maxLevel];
-        Node[] successors = new Node[maxLevel];
+        Node[][] search = searchArrays();
+        Node[] predecessors = search[0];
+        Node[] successors = search[1];
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
 
-        while (true) {
             int foundNodeLevel = find(searchKey, predecessors, successors);
 
             if (foundNodeLevel != -1) {
                 Node foundNode = successors[foundNodeLevel];
                 if (!foundNode.markedForRemoval) {
-                    while (!foundNode.fullyLinked);
+                    for (int spins = 0; !foundNode.fullyLinked; spins += 1) {
+                        backoff.backoff(spins);
+                    }
                     return false;
                 }
             }
@@ -86,6 +380,8 @@ public class FineGrainedSkipList extends AbstractSet<Integer> {
             }
 
             int highestLockedLevel = -1;
+            NegativeLookupFilter.Table counted = null;
+            Node newNode;
 
             try {
                 boolean valid = true;
@@ -98,39 +394,61 @@ public class FineGrainedSkipList extends AbstractSet<Integer> {
                     successor = successors[level];
 
                     if (predecessor != previousPredecessor) {
-                        predecessor.lock.lock();
+                        predecessor.lock();
                         highestLockedLevel = level;
                         previousPredecessor = predecessor;
                     }
 
+                    // The key check catches a search that found a removed node on a
+                    // higher level but, lower down, a newer node with the same key.
                     valid = !predecessor.markedForRemoval
+                            && isLinkedOn(predecessor, level)
                             && !successor.markedForRemoval
-                            && predecessor.forward[level] == successor;
+                            && predecessor.forward[level] == successor
+                            && successor.key > searchKey;
                 }
 
                 if (!valid) {
                     continue;
                 }
 
-                Node newNode = new Node(searchKey, value, newLevel, maxLevel);
+                if (filter != null) {
+                    counted = filter.inserting(searchKey);
+                }
+                newNode = newNode(searchKey, value, newLevel);
+                if (filter != null) {
+                    // Held until the filter has counted the key, so a removal, which must
+                    // lock the node first, never uncounts a key the filter has yet to count.
+                    newNode.lock();
+                }
+                if (backLinks) {
+                    newNode.backward = predecessors[0];
+                }
 
                 for (int level = 0; level <= newLevel; level += 1) {
-                    newNode.forward[level] = successors[level];
-                    predecessors[level].forward[level] = newNode;
+                    newNode.link(level, successors[level]);
+                    predecessors[level].link(level, newNode);
+                }
+                if (backLinks) {
+                    successors[0].backward = newNode;
                 }
 
+                if (index != null) {
+                    index.put(searchKey, newNode);
+                }
                 newNode.fullyLinked = true;
                 size.incrementAndGet();
-
-                return true;
+                publish(searchKey, true);
             }
             finally {
-                for (int level = 0; level <= highestLockedLevel; level += 1) {
-                    if (predecessors[level].lock.isHeldByCurrentThread()) {
-                        predecessors[level].lock.unlock();
-                    }
-                }
+                unlockPredecessors(predecessors, highestLockedLevel);
+            }
+
+            if (filter != null) {
+                filter.inserted(searchKey, counted);
+                newNode.unlock();
             }
+            return true;
         }
     }
 
@@ -140,166 +458,1275 @@ public class FineGrainedSkipList extends AbstractSet<Integer> {
             return false;
         }
 
-        Node[] predecessors = new Node[maxLevel];
-        Node[] successors = new Node[maxLevel];
-        Node nodeToRemove = null;
-        boolean inProcessOfRemoving = false;
-        int highestLevelFound = -1;
-
-        while (true) {
-            int foundNodeLevel = find(value, predecessors, successors);
-
-            if (inProcessOfRemoving
-                    || (foundNodeLevel != -1
-                    && canDelete(successors[foundNodeLevel], foundNodeLevel))) {
-
-                if (!inProcessOfRemoving) {
-                    nodeToRemove = successors[foundNodeLevel];
-                    highestLevelFound = nodeToRemove.level;
-                    nodeToRemove.lock.lock();
+        enter();
+        try {
+            return delete(value);
+        }
+        finally {
+            exit();
+        }
+    }
 
-                    if (nodeToRemove.markedForRemoval) {
-                        nodeToRemove.lock.unlock();
-                        return false;
-                    }
+    private boolean delete(Object value) {
+        Node[][] search = searchArrays();
+        Node[] predecessors = search[0];
+        Node[] successors = search[1];
 
-                    nodeToRemove.markedForRemoval = true;
-                    inProcessOfRemoving = true;
-                }
+        int foundNodeLevel = find(value, predecessors, successors);
 
-                int highestLockedLevel = -1;
+        for (int attempt = 0; foundNodeLevel != -1
+                && successors[foundNodeLevel].fullyLinked
+                && !successors[foundNodeLevel].markedForRemoval
+                && successors[foundNodeLevel].level != foundNodeLevel; attempt += 1) {
+            // A rebalance is moving the node's tower, so wait for it and look again
+            backoff.backoff(attempt);
+            foundNodeLevel = find(value, predecessors, successors);
+        }
 
-                try {
-                    boolean valid = true;
-                    Node predecessor;
-                    Node successor;
-                    Node previousPredecessor = null;
-
-                    for (int level = 0; (valid && (level <= highestLevelFound)); level += 1) {
-                        predecessor = predecessors[level];
-                        successor = successors[level];
-
-                        if (predecessor != previousPredecessor) {
-                            predecessor.lock.lock();
-                            highestLockedLevel = level;
-                            previousPredecessor = predecessor;
-                        }
+        if (foundNodeLevel == -1 || !canDelete(successors[foundNodeLevel], foundNodeLevel)) {
+            return false;
+        }
 
-                        valid = !predecessor.markedForRemoval
-                                && predecessor.forward[level] == successor;
-                    }
+        Node nodeToRemove = successors[foundNodeLevel];
+        nodeToRemove.lock();
 
-                    if (!valid) {
-                        continue;
-                    }
+        if (nodeToRemove.markedForRemoval) {
+            nodeToRemove.unlock();
+            return false;
+        }
 
-                    for (int level = highestLevelFound; level >= 0; level -= 1) {
-                        predecessors[level].forward[level] = nodeToRemove.forward[level];
-                    }
+        nodeToRemove.markedForRemoval = true;
+        unlinkMarked(nodeToRemove, predecessors, successors);
+        return true;
+    }
 
-                    nodeToRemove.lock.unlock();
-                    size.decrementAndGet();
+    /**
+     * Removes and returns the smallest value, or null if the list is empty.
+     * The first live node is claimed under its own lock, so concurrent pollers
+     * each get a distinct value and always the smallest one not yet taken.
+     * @return the smallest value, or null if there is none
+     */
+    public Integer pollFirst() {
+        enter();
+        try {
+            return pollFirstNode();
+        }
+        finally {
+            exit();
+        }
+    }
 
-                    return true;
-                }
-                finally {
-                    for (int level = 0; level <= highestLockedLevel; level += 1) {
-                        if (predecessors[level].lock.isHeldByCurrentThread()) {
-                            predecessors[level].lock.unlock();
-                        }
-                    }
+    private Integer pollFirstNode() {
+        for (Node node = header.forward[0]; node != header; node = node.forward[0]) {
+            if (node.fullyLinked && !node.markedForRemoval) {
+                node.lock();
+                if (!node.markedForRemoval) {
+                    node.markedForRemoval = true;
+                    unlinkMarked(node);
+                    return node.value;
                 }
-            }
-            else {
-                return false;
+                node.unlock();
             }
         }
+        return null;
     }
 
     /**
-     * Determines if node was found at the highest level, not marked for removal, and fully linked.
-     * TODO: add complexity description
+     * Removes and returns the largest value, or null if the list is empty.
+     * @return the largest value, or null if there is none
      */
-    public boolean canDelete(Node node, int highestLevelFound) {
-        return !node.markedForRemoval
-                && node.fullyLinked
-                && node.level == highestLevelFound;
+    public Integer pollLast() {
+        enter();
+        try {
+            return pollLastNode();
+        }
+        finally {
+            exit();
+        }
     }
 
-    @Override
-    public boolean contains(Object value) {
-        Node[] predecessors = new Node[maxLevel];
-        Node[] successors = new Node[maxLevel];
+    private Integer pollLastNode() {
+        Node[][] search = searchArrays();
+        Node[] predecessors = search[0];
+        Node[] successors = search[1];
 
-        int foundNodeLevel = find(value, predecessors, successors);
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
 
-        return foundNodeLevel != -1
-                && successors[foundNodeLevel].fullyLinked
-                && !successors[foundNodeLevel].markedForRemoval;
+            find(header.key, predecessors, successors);
+            Node node = predecessors[0];
+            if (node == header) {
+                return null;
+            }
+            if (!node.fullyLinked || node.markedForRemoval) {
+                continue;
+            }
+
+            node.lock();
+            if (node.markedForRemoval) {
+                node.unlock();
+                continue;
+            }
+            node.markedForRemoval = true;
+            unlinkMarked(node);
+            return node.value;
+        }
     }
 
     /**
-     * Finds "value" in the skiplist, returning highest level of occurrence or -1 if absent.
-     * TODO: add complexity description
+     * Marks node for removal if nobody holds its lock and it is live.
+     * On success the caller owns the node and must pass it to {@link #unlinkMarked}.
      */
-    public int find(Object value, Node[] predecessors, Node[] successors) {
-        if (! (value instanceof Integer)) {
-            return -1;
+    boolean tryClaim(Node node) {
+        if (!node.fullyLinked || node.markedForRemoval || !node.tryLock()) {
+            return false;
+        }
+        if (node.markedForRemoval) {
+            node.unlock();
+            return false;
         }
+        node.markedForRemoval = true;
+        return true;
+    }
 
-        int highestLevel = -1;
-        int searchKey = (Integer) value;
-        Node predecessor = this.header;
-        Node current;
+    /**
+     * Unlinks a node this thread has marked and still holds locked, then releases it.
+     */
+    void unlinkMarked(Node nodeToRemove) {
+        Node[][] search = searchArrays();
+        Node[] predecessors = search[0];
+        Node[] successors = search[1];
+        find(nodeToRemove.key, predecessors, successors);
+        unlinkMarked(nodeToRemove, predecessors, successors);
+    }
 
-        for (int level = maxLevel - 1; level >= 0; level -= 1) {
-            current = predecessor.forward[level];
+    /**
+     * Unlinks a marked, locked node, starting from the result of a find for its key.
+     */
+    void unlinkMarked(Node nodeToRemove, Node[] predecessors, Node[] successors) {
+        int highestLevelFound = nodeToRemove.level;
 
-            while (current.key < searchKey) {
-                predecessor = current;
-                current = predecessor.forward[level];
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+                find(nodeToRemove.key, predecessors, successors);
             }
 
-            if (highestLevel == -1 && current.key == searchKey) {
-                highestLevel = level;
-            }
+            int highestLockedLevel = -1;
 
-            predecessors[level] = predecessor;
-            successors[level] = current;
-        }
+            try {
+                boolean valid = true;
+                Node predecessor;
+                Node previousPredecessor = null;
 
-        return highestLevel;
-    }
+                for (int level = 0; (valid && (level <= highestLevelFound)); level += 1) {
+                    predecessor = predecessors[level];
 
-    private Random levelRandom = new Random(0);
+                    if (predecessor != previousPredecessor) {
+                        predecessor.lock();
+                        highestLockedLevel = level;
+                        previousPredecessor = predecessor;
+                    }
 
-    private int chooseRandomLevel() {
-        int newLevel = 0;
-        while (newLevel < maxLevel - 1 && levelRandom.nextFloat() < this.p) {
-            newLevel += 1;
+                    valid = !predecessor.markedForRemoval
+                            && isLinkedOn(predecessor, level)
+                            && predecessor.forward[level] == nodeToRemove;
+                }
+
+                if (!valid) {
+                    continue;
+                }
+
+                NegativeLookupFilter.Table counted = filter != null ? filter.removing() : null;
+                for (int level = highestLevelFound; level >= 0; level -= 1) {
+                    predecessors[level].link(level, nodeToRemove.forward[level]);
+                }
+                if (backLinks) {
+                    nodeToRemove.forward[0].backward = predecessors[0];
+                }
+                publish(nodeToRemove.key, false);
+
+                nodeToRemove.unlock();
+                size.decrementAndGet();
+                if (filter != null) {
+                    filter.removed(nodeToRemove.key, counted);
+                }
+                unindex(nodeToRemove);
+                retire(nodeToRemove);
+
+                return;
+            }
+            finally {
+                unlockPredecessors(predecessors, highestLockedLevel);
+            }
         }
-        return newLevel;
     }
 
-    public int size() {
-        return size.get();
+    /**
+     * Removes every value in [fromInclusive, toExclusive) with one splice per level.
+     * Locks the segment from its last node back to its first, then the predecessors,
+     * the same right-to-left order as every other writer. Once no other writer can
+     * touch the segment, all its nodes are marked and each level's predecessor is
+     * linked straight to the first survivor. Readers already inside the segment keep
+     * following its unchanged forward links back into the list.
+     * @param fromInclusive The lowest value to remove
+     * @param toExclusive The first value past the range
+     * @return the number of values removed
+     */
+    public int removeRange(int fromInclusive, int toExclusive) {
+        if (fromInclusive >= toExclusive) {
+            return 0;
+        }
+
+        enter();
+        try {
+            return deleteRange(fromInclusive, toExclusive);
+        }
+        finally {
+            exit();
+        }
     }
 
-    @Override
-    public Iterator<Integer> iterator() {
-        return new Iterator<Integer>() {
-            private Node current = header.forward[0];
+    private int deleteRange(int fromInclusive, int toExclusive) {
+        Node[][] search = searchArrays();
+        Node[] predecessors = search[0];
+        Node[] successors = search[1];
+        List<Node> segment = new ArrayList<>();
 
-            @Override
-            public boolean hasNext() {
-                return current.key != Integer.MAX_VALUE;
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
             }
 
-            @Override
-            public Integer next() {
-                Integer value = current.value;
-                current = current.forward[0];
-                return value;
+            find(fromInclusive, predecessors, successors);
+            segment.clear();
+            int highestLevel = 0;
+            for (Node node = predecessors[0].forward[0];
+                    node != header && node.key < toExclusive; node = node.forward[0]) {
+                segment.add(node);
+            }
+            if (segment.isEmpty()) {
+                return 0;
+            }
+
+            int firstLocked = segment.size();
+            int highestLockedLevel = -1;
+
+            try {
+                while (firstLocked > 0) {
+                    segment.get(firstLocked - 1).lock();
+                    firstLocked -= 1;
+                }
+                for (Node node : segment) {
+                    highestLevel = Math.max(highestLevel, node.level);
+                }
+
+                boolean valid = true;
+                Node previousPredecessor = null;
+
+                for (int level = 0; (valid && (level <= highestLevel)); level += 1) {
+                    Node predecessor = predecessors[level];
+
+                    if (predecessor != previousPredecessor) {
+                        predecessor.lock();
+                        highestLockedLevel = level;
+                        previousPredecessor = predecessor;
+                    }
+
+                    Node successor = predecessor.forward[level];
+                    valid = !predecessor.markedForRemoval
+                            && isLinkedOn(predecessor, level)
+                            && (successor == header || successor.key >= fromInclusive);
+                }
+
+                Node node = predecessors[0].forward[0];
+                for (int i = 0; valid && i < segment.size(); i++) {
+                    valid = node == segment.get(i) && node.fullyLinked && !node.markedForRemoval;
+                    node = node.forward[0];
+                }
+
+                if (!valid || (node != header && node.key < toExclusive)) {
+                    continue;
+                }
+
+                for (Node removed : segment) {
+                    removed.markedForRemoval = true;
+                }
+                NegativeLookupFilter.Table counted = filter != null ? filter.removing() : null;
+
+                for (int level = highestLevel; level >= 0; level -= 1) {
+                    Node survivor = predecessors[level].forward[level];
+                    while (survivor != header && survivor.key < toExclusive) {
+                        survivor = survivor.forward[level];
+                    }
+                    predecessors[level].link(level, survivor);
+                    if (backLinks && level == 0) {
+                        survivor.backward = predecessors[0];
+                    }
+                }
+
+                size.addAndGet(-segment.size());
+                for (Node removed : segment) {
+                    publish(removed.key, false);
+                    if (filter != null) {
+                        filter.removed(removed.key, counted);
+                    }
+                    unindex(removed);
+                    retire(removed);
+                }
+
+                return segment.size();
+            }
+            finally {
+                unlockPredecessors(predecessors, highestLockedLevel);
+                for (int i = firstLocked; i < segment.size(); i++) {
+                    segment.get(i).unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Inserts and removes keys as one all-or-nothing change: if every key in inserts is
+     * absent and every key in removes is present, the whole batch is applied, and
+     * otherwise nothing changes.
+     * The batch is sorted, every key's predecessor tower is found, and each node
+     * involved is locked once, right to left like every other writer, so batches cannot
+     * deadlock with each other or with single-key writers. With all the locks held the
+     * batch is validated and applied, so other writers see it all at once. A reader
+     * checking several keys while it commits may, as with {@link #removeRange}, see some
+     * of its changes before others.
+     * @param inserts The keys to insert
+     * @param removes The keys to remove
+     * @return true if the batch was applied, false if a key to insert was present or a
+     *     key to remove was absent
+     * @throws IllegalArgumentException if a key appears twice in the batch
+     */
+    public boolean applyBatch(int[] inserts, int[] removes) {
+        enter();
+        try {
+            return commitBatch(inserts, removes);
+        }
+        finally {
+            exit();
+        }
+    }
+
+    private boolean commitBatch(int[] inserts, int[] removes) {
+        int count = inserts.length + removes.length;
+        long[] sorted = new long[count];
+        for (int i = 0; i < inserts.length; i++) {
+            sorted[i] = ((long) inserts[i] << 1) | 1;
+        }
+        for (int i = 0; i < removes.length; i++) {
+            sorted[inserts.length + i] = (long) removes[i] << 1;
+        }
+        Arrays.sort(sorted);
+
+        int[] keys = new int[count];
+        boolean[] inserting = new boolean[count];
+        int[] levels = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = (int) (sorted[i] >> 1);
+            inserting[i] = (sorted[i] & 1) != 0;
+            if (i > 0 && keys[i] == keys[i - 1]) {
+                throw new IllegalArgumentException("Key appears twice in batch: " + keys[i]);
+            }
+            if (inserting[i]) {
+                levels[i] = chooseRandomLevel();
+                if (levels[i] > currentLevels.get()) {
+                    levels[i] = currentLevels.incrementAndGet();
+                }
+            }
+        }
+
+        Node[][] predecessors = new Node[count][maxLevel];
+        Node[][] successors = new Node[count][maxLevel];
+        Node[] victims = new Node[count];
+        Comparator<Node> rightToLeft = (a, b) -> a == header ? (b == header ? 0 : 1)
+                : b == header ? -1 : Integer.compare(b.key, a.key);
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
+
+            int found = findBatch(keys, inserting, levels, predecessors, successors, victims);
+            if (found == BATCH_FAILS) {
+                return false;
+            }
+            if (found == BATCH_RETRY) {
+                continue;
+            }
+
+            Node[] locked = lockOrder(predecessors, levels, inserting, victims, rightToLeft);
+            int lockedCount = 0;
+            Node[] created = null;
+            NegativeLookupFilter.Table[] counted = null;
+            NegativeLookupFilter.Table uncounted = null;
+
+            try {
+                while (lockedCount < locked.length) {
+                    locked[lockedCount].lock();
+                    lockedCount += 1;
+                }
+
+                if (!validBatch(keys, inserting, levels, predecessors, successors, victims)) {
+                    continue;
+                }
+
+                created = new Node[count];
+                counted = new NegativeLookupFilter.Table[count];
+                if (filter != null && removes.length > 0) {
+                    uncounted = filter.removing();
+                }
+                for (int i = 0; i < count; i++) {
+                    if (inserting[i]) {
+                        if (filter != null) {
+                            counted[i] = filter.inserting(keys[i]);
+                        }
+                        created[i] = newNode(keys[i], keys[i], levels[i]);
+                        if (filter != null) {
+                            created[i].lock();
+                        }
+                    }
+                    else {
+                        victims[i].markedForRemoval = true;
+                    }
+                }
+
+                for (int i = count - 1; i >= 0; i--) {
+                    Node[] towers = predecessors[i];
+                    if (inserting[i]) {
+                        Node newNode = created[i];
+                        if (backLinks) {
+                            newNode.backward = towers[0];
+                        }
+                        for (int level = 0; level <= levels[i]; level += 1) {
+                            newNode.link(level, towers[level].forward[level]);
+                            towers[level].link(level, newNode);
+                        }
+                        if (backLinks) {
+                            newNode.forward[0].backward = newNode;
+                        }
+                        if (index != null) {
+                            index.put(keys[i], newNode);
+                        }
+                    }
+                    else {
+                        Node victim = victims[i];
+                        for (int level = levels[i]; level >= 0; level -= 1) {
+                            towers[level].link(level, victim.forward[level]);
+                        }
+                        if (backLinks) {
+                            victim.forward[0].backward = towers[0];
+                        }
+                    }
+                }
+
+                for (int i = 0; i < count; i++) {
+                    if (inserting[i]) {
+                        created[i].fullyLinked = true;
+                    }
+                }
+                size.addAndGet(inserts.length - removes.length);
+                for (int i = 0; i < count; i++) {
+                    publish(keys[i], inserting[i]);
+                }
+            }
+            finally {
+                for (int i = 0; i < lockedCount; i++) {
+                    locked[i].unlock();
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (inserting[i]) {
+                    if (filter != null) {
+                        filter.inserted(keys[i], counted[i]);
+                        created[i].unlock();
+                    }
+                }
+                else {
+                    if (filter != null) {
+                        filter.removed(keys[i], uncounted);
+                    }
+                    unindex(victims[i]);
+                    retire(victims[i]);
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Lists each node a batch must lock once, in the right-to-left order writers lock in.
+     */
+    private static Node[] lockOrder(Node[][] predecessors, int[] levels, boolean[] inserting,
+            Node[] victims, Comparator<Node> rightToLeft) {
+        int total = 0;
+        for (int i = 0; i < levels.length; i++) {
+            total += levels[i] + 2;
+        }
+        Node[] nodes = new Node[total];
+        int count = 0;
+        for (int i = 0; i < levels.length; i++) {
+            for (int level = 0; level <= levels[i]; level += 1) {
+                if (count == 0 || nodes[count - 1] != predecessors[i][level]) {
+                    nodes[count++] = predecessors[i][level];
+                }
+            }
+            if (!inserting[i]) {
+                nodes[count++] = victims[i];
+            }
+        }
+        Arrays.sort(nodes, 0, count, rightToLeft);
+
+        int distinct = 0;
+        for (int i = 0; i < count; i++) {
+            boolean repeated = false;
+            for (int j = distinct - 1; !repeated && j >= 0
+                    && rightToLeft.compare(nodes[j], nodes[i]) == 0; j--) {
+                repeated = nodes[j] == nodes[i];
+            }
+            if (!repeated) {
+                nodes[distinct++] = nodes[i];
+            }
+        }
+        return Arrays.copyOf(nodes, distinct);
+    }
+
+    /**
+     * Searches for every key of a sorted batch, starting each search from the last one's
+     * predecessors, and records the node to remove and its level for each key in removes.
+     * @return whether the batch can go ahead, fails its conditions, or must search again
+     */
+    private int findBatch(int[] keys, boolean[] inserting, int[] levels,
+            Node[][] predecessors, Node[][] successors, Node[] victims) {
+        for (int i = 0; i < keys.length; i++) {
+            Node[] start = i > 0 ? predecessors[i - 1] : null;
+            int foundNodeLevel = find(keys[i], start, predecessors[i], successors[i]);
+            Node node = foundNodeLevel == -1 ? null : successors[i][foundNodeLevel];
+            if (node == header) {
+                return BATCH_FAILS;
+            }
+
+            if (inserting[i]) {
+                if (node != null) {
+                    if (node.markedForRemoval) {
+                        return BATCH_RETRY;
+                    }
+                    for (int spins = 0; !node.fullyLinked; spins += 1) {
+                        backoff.backoff(spins);
+                    }
+                    return BATCH_FAILS;
+                }
+            }
+            else {
+                if (node == null || !node.fullyLinked || node.markedForRemoval) {
+                    return BATCH_FAILS;
+                }
+                if (node.level != foundNodeLevel) {
+                    // A rebalance is moving the node's tower
+                    return BATCH_RETRY;
+                }
+                victims[i] = node;
+                levels[i] = foundNodeLevel;
+            }
+        }
+        return BATCH_FOUND;
+    }
+
+    /**
+     * Checks, with every involved node locked, that nothing moved since the batch's search.
+     */
+    private boolean validBatch(int[] keys, boolean[] inserting, int[] levels,
+            Node[][] predecessors, Node[][] successors, Node[] victims) {
+        for (int i = 0; i < keys.length; i++) {
+            if (inserting[i]) {
+                for (int level = 0; level <= levels[i]; level += 1) {
+                    Node predecessor = predecessors[i][level];
+                    Node successor = successors[i][level];
+                    if (predecessor.markedForRemoval
+                            || !isLinkedOn(predecessor, level)
+                            || successor.markedForRemoval
+                            || predecessor.forward[level] != successor
+                            || successor.key <= keys[i]) {
+                        return false;
+                    }
+                }
+            }
+            else {
+                Node victim = victims[i];
+                if (victim.markedForRemoval || victim.level != levels[i]) {
+                    return false;
+                }
+                for (int level = 0; level <= levels[i]; level += 1) {
+                    Node predecessor = predecessors[i][level];
+                    if (predecessor.markedForRemoval
+                            || !isLinkedOn(predecessor, level)
+                            || predecessor.forward[level] != victim) {
+                        return false;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Streams a committed change, if anyone is subscribed. Called after the change is
+     * visible and before the locks that order changes to key are released.
+     */
+    private void publish(int key, boolean inserted) {
+        if (changes != null && changes.active()) {
+            changes.publish(key, inserted);
+        }
+    }
+
+    /**
+     * Checks that node is still linked on level. A tower lowered by a rebalance keeps
+     * its old forward links for readers passing through, so a matching forward link
+     * alone does not prove a predecessor is still in place.
+     */
+    private boolean isLinkedOn(Node node, int level) {
+        return node == header || node.level >= level;
+    }
+
+    /**
+     * Releases the distinct predecessors locked on levels 0 through highestLockedLevel.
+     * A node that precedes on several consecutive levels was only locked once.
+     */
+    private static void unlockPredecessors(Node[] predecessors, int highestLockedLevel) {
+        Node previousPredecessor = null;
+        for (int level = 0; level <= highestLockedLevel; level += 1) {
+            if (predecessors[level] != previousPredecessor) {
+                previousPredecessor = predecessors[level];
+                previousPredecessor.unlock();
+            }
+        }
+    }
+
+    /**
+     * Determines if node was found at the highest level, not marked for removal, and fully linked.
+     * TODO: add complexity description
+     */
+    public boolean canDelete(Node node, int highestLevelFound) {
+        return !node.markedForRemoval
+                && node.fullyLinked
+                && node.level == highestLevelFound;
+    }
+
+    private static boolean isLive(Node node) {
+        return node.fullyLinked && !node.markedForRemoval;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        if (filter == null) {
+            return search(value);
+        }
+        if (!(value instanceof Integer) || !filter.mightContain((Integer) value)) {
+            return false;
+        }
+        boolean found = search(value);
+        if (!found) {
+            filter.falsePositive();
+        }
+        return found;
+    }
+
+    private boolean search(Object value) {
+        if (index != null) {
+            if (!(value instanceof Integer)) {
+                return false;
+            }
+            enter();
+            try {
+                Node node = index.get(value);
+                return node != null && node.key == (Integer) value && isLive(node);
+            }
+            finally {
+                exit();
+            }
+        }
+
+        Node[][] search = searchArrays();
+        Node[] predecessors = search[0];
+        Node[] successors = search[1];
+
+        enter();
+        try {
+            int foundNodeLevel = find(value, predecessors, successors);
+
+            return foundNodeLevel != -1
+                    && successors[foundNodeLevel].fullyLinked
+                    && !successors[foundNodeLevel].markedForRemoval;
+        }
+        finally {
+            exit();
+        }
+    }
+
+    /**
+     * Finds "value" in the skiplist, returning highest level of occurrence or -1 if absent.
+     * TODO: add complexity description
+     */
+    public int find(Object value, Node[] predecessors, Node[] successors) {
+        if (! (value instanceof Integer)) {
+            return -1;
+        }
+        return find((Integer) value, null, predecessors, successors);
+    }
+
+    /**
+     * Finds searchKey like {@link #find(Object, Node[], Node[])}, but when start holds the
+     * predecessors of a smaller key, starts each level from whichever of start's node and
+     * the node the level above stopped at lies further right.
+     */
+    private int find(int searchKey, Node[] start, Node[] predecessors, Node[] successors) {
+        int highestLevel = -1;
+        Node predecessor = this.header;
+        Node current;
+
+        for (int level = maxLevel - 1; level >= 0; level -= 1) {
+            if (start != null && start[level] != header
+                    && (predecessor == header || start[level].key > predecessor.key)) {
+                predecessor = start[level];
+            }
+            current = predecessor.forward[level];
+            while (current.key < searchKey) {
+                predecessor = current;
+                current = predecessor.forward[level];
+            }
+            if (highestLevel == -1 && current.key == searchKey) {
+                highestLevel = level;
+            }
+
+            predecessors[level] = predecessor;
+            successors[level] = current;
+        }
+
+        return highestLevel;
+    }
+
+    /**
+     * Feeds the linked keys to a filter rebuild. Reads each node's lock state before its
+     * successor, so an insert that released the node before that read is seen, and one
+     * that releases it later finds the rebuild's table already published.
+     * Marked nodes are fed too: their removals may have seen the table complete only if
+     * the walk had already passed them, and a removal that did not stays counted.
+     */
+    private void forEachFilteredKey(LongConsumer action) {
+        enter();
+        try {
+            Node node = header;
+            while (true) {
+                LOCK_STATE.get(node);
+                node = node.forward[0];
+                if (node == header) {
+                    return;
+                }
+                if (node.fullyLinked) {
+                    action.accept(node.key);
+                }
+            }
+        }
+        finally {
+            exit();
+        }
+    }
+
+    /**
+     * Returns the least value greater than key, or null if there is none.
+     * With a hash index and key present, starts from key's node without a search.
+     * @param key The value to look above
+     * @return the successor of key, or null
+     */
+    public Integer higher(int key) {
+        enter();
+        try {
+            return successor(key, false);
+        }
+        finally {
+            exit();
+        }
+    }
+
+    /**
+     * Returns the least value greater than or equal to key, or null if there is none.
+     * @param key The value to look from
+     * @return key if present, else its successor, or null
+     */
+    public Integer ceiling(int key) {
+        enter();
+        try {
+            return successor(key, true);
+        }
+        finally {
+            exit();
+        }
+    }
+
+    private Integer successor(int key, boolean inclusive) {
+        Node node = null;
+        if (index != null) {
+            Node indexed = index.get(key);
+            if (indexed != null && indexed.key == key && isLive(indexed)) {
+                node = inclusive ? indexed : indexed.forward[0];
+            }
+        }
+        if (node == null) {
+            Node[][] search = searchArrays();
+            find(key, search[0], search[1]);
+            node = search[1][0];
+            if (!inclusive && node != header && node.key == key) {
+                node = node.forward[0];
+            }
+        }
+        while (node != header && !isLive(node)) {
+            node = node.forward[0];
+        }
+        return node == header ? null : node.value;
+    }
+
+    private Random levelRandom = new Random(0);
+
+    private int chooseRandomLevel() {
+        int newLevel = 0;
+        while (newLevel < maxLevel - 1 && levelRandom.nextFloat() < this.p) {
+            newLevel += 1;
+        }
+        return newLevel;
+    }
+
+    /**
+     * Counts the live nodes whose towers reach each level.
+     * @return counts indexed by a node's highest level
+     */
+    public int[] levelHistogram() {
+        int[] histogram = new int[maxLevel];
+        enter();
+        try {
+            for (Node node = header.forward[0]; node != header; node = node.forward[0]) {
+                if (node.fullyLinked && !node.markedForRemoval) {
+                    histogram[node.level] += 1;
+                }
+            }
+        }
+        finally {
+            exit();
+        }
+        return histogram;
+    }
+
+    /**
+     * Changes the height of node's tower to newLevel, linking or unlinking it on the levels
+     * in between. Only ever tries each lock once, so it gives up rather than wait on a
+     * foreground operation. Must be called between enter and exit.
+     * @return true if the tower now has the new height
+     */
+    boolean tryRelevel(Node node, int newLevel) {
+        if (!node.tryLock()) {
+            return false;
+        }
+        Node[][] search = searchArrays();
+        Node[] predecessors = search[0];
+        Node[] successors = search[1];
+        int oldLevel = node.level;
+        int lowest = Math.min(oldLevel, newLevel) + 1;
+        int highest = Math.max(oldLevel, newLevel);
+        int highestLockedLevel = lowest - 1;
+
+        try {
+            if (oldLevel == newLevel || !node.fullyLinked || node.markedForRemoval) {
+                return oldLevel == newLevel;
+            }
+
+            find(node.key, predecessors, successors);
+            boolean valid = true;
+            Node previousPredecessor = null;
+
+            for (int level = lowest; (valid && (level <= highest)); level += 1) {
+                Node predecessor = predecessors[level];
+
+                if (predecessor != previousPredecessor) {
+                    if (!predecessor.tryLock()) {
+                        return false;
+                    }
+                    highestLockedLevel = level;
+                    previousPredecessor = predecessor;
+                }
+
+                Node expected = newLevel > oldLevel ? successors[level] : node;
+                valid = !predecessor.markedForRemoval
+                        && isLinkedOn(predecessor, level)
+                        && predecessor.forward[level] == expected
+                        && (newLevel < oldLevel || successors[level].key > node.key);
+            }
+
+            if (!valid) {
+                return false;
+            }
+
+            if (newLevel > oldLevel) {
+                for (int level = lowest; level <= highest; level += 1) {
+                    node.link(level, successors[level]);
+                    predecessors[level].link(level, node);
+                }
+                node.level = newLevel;
+                if (newLevel > currentLevels.get()) {
+                    currentLevels.set(newLevel);
+                }
+            }
+            else {
+                node.level = newLevel;
+                for (int level = highest; level >= lowest; level -= 1) {
+                    predecessors[level].link(level, node.forward[level]);
+                }
+            }
+            return true;
+        }
+        finally {
+            Node previousPredecessor = null;
+            for (int level = lowest; level <= highestLockedLevel; level += 1) {
+                if (predecessors[level] != previousPredecessor) {
+                    previousPredecessor = predecessors[level];
+                    previousPredecessor.unlock();
+                }
+            }
+            node.unlock();
+        }
+    }
+
+    /**
+     * Builds a list no other thread can see yet by appending keys in ascending order.
+     * Each append links the new node after the last node on each of its levels,
+     * so building a list of n keys takes O(n) time instead of O(n log n).
+     */
+    class Appender {
+        private final Node[] last = new Node[maxLevel];
+        private boolean empty = true;
+
+        Appender() {
+            for (int level = 0; level < maxLevel; level += 1) {
+                last[level] = header;
+            }
+        }
+
+        void append(int key) {
+            if (key == header.key || (!empty && key <= last[0].key)) {
+                throw new IllegalArgumentException("Keys must ascend below " + header.key
+                        + ": " + key);
+            }
+            int newLevel = chooseRandomLevel();
+            Node node = newNode(key, key, newLevel);
+            if (backLinks) {
+                node.backward = last[0];
+                header.backward = node;
+            }
+            for (int level = 0; level <= newLevel; level += 1) {
+                node.link(level, header);
+                last[level].link(level, node);
+                last[level] = node;
+            }
+            if (index != null) {
+                index.put(key, node);
+            }
+            if (filter != null) {
+                filter.inserting(key);
+            }
+            node.fullyLinked = true;
+            if (newLevel > currentLevels.get()) {
+                currentLevels.set(newLevel);
+            }
+            size.incrementAndGet();
+            empty = false;
+        }
+    }
+
+    /**
+     * Returns the last live node with a key below bound, or the header if there is none.
+     * Starts from hint's back link if given, else from a search. Without back links every
+     * step back is a search. Must be called between enter and exit.
+     */
+    private Node liveBefore(int bound, Node hint) {
+        Node node = hint != null && backLinks ? hint.backward : null;
+        if (node == null) {
+            node = searchBefore(bound);
+        }
+        while (node != header && (!isLive(node) || node.key >= bound)) {
+            Node back = backLinks ? node.backward : null;
+            node = back != null && node.key < bound
+                    ? back : searchBefore(Math.min(node.key, bound));
+        }
+        return node;
+    }
+
+    private Node searchBefore(int bound) {
+        Node[][] search = searchArrays();
+        find(bound, search[0], search[1]);
+        return search[0][0];
+    }
+
+    /**
+     * Iterates over the values in descending order. Each step follows one back link
+     * when they are on, or searches from the top otherwise.
+     * @return an iterator from the largest value down
+     */
+    public PrimitiveIterator.OfInt descendingIterator() {
+        return descendingIterator(header.key);
+    }
+
+    /**
+     * Iterates in descending order over the values below toExclusive, for paging backwards
+     * from a cursor. Weakly consistent, like the ascending iterator.
+     * @param toExclusive The value to start below
+     * @return an iterator from the largest value below toExclusive down
+     */
+    public PrimitiveIterator.OfInt descendingIterator(int toExclusive) {
+        return new PrimitiveIterator.OfInt() {
+            private Node next;
+            private int nextKey;
+            private int nextIncarnation;
+
+            {
+                enter();
+                try {
+                    setNext(liveBefore(toExclusive, null));
+                }
+                finally {
+                    exit();
+                }
+            }
+
+            private void setNext(Node node) {
+                next = node;
+                nextIncarnation = node.incarnation;
+                nextKey = node.key;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next != header;
+            }
+
+            @Override
+            public int nextInt() {
+                if (next == header) {
+                    throw new NoSuchElementException();
+                }
+                int key = nextKey;
+                enter();
+                try {
+                    // A removed or recycled node's back link cannot be trusted, so search instead
+                    setNext(liveBefore(key, next.stillHolds(nextIncarnation) ? next : null));
+                }
+                finally {
+                    exit();
+                }
+                return key;
+            }
+        };
+    }
+
+    /**
+     * Returns up to limit values below toExclusive, largest first.
+     * @param toExclusive The value to start below
+     * @param limit The most values to return
+     * @return the values, in descending order
+     */
+    public int[] lastBefore(int toExclusive, int limit) {
+        int[] values = new int[Math.min(limit, size())];
+        int count = 0;
+        for (PrimitiveIterator.OfInt keys = descendingIterator(toExclusive);
+                count < values.length && keys.hasNext(); ) {
+            values[count++] = keys.nextInt();
+        }
+        return count == values.length ? values : Arrays.copyOf(values, count);
+    }
+
+    /**
+     * Writes the values in the compact delta-varint format, streaming level 0 in order.
+     * Bytes are written one at a time, so wrap unbuffered streams in a buffer.
+     * @param out The stream to write to
+     * @throws IOException if the stream fails
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        encode(new DeltaVarintCodec.Encoder<>(out::write));
+    }
+
+    /**
+     * Writes the values in the compact delta-varint format into a buffer.
+     * @param buffer The buffer to write to
+     * @throws java.nio.BufferOverflowException if the buffer fills up
+     */
+    public void writeTo(ByteBuffer buffer) {
+        encode(new DeltaVarintCodec.Encoder<>(b -> buffer.put((byte) b)));
+    }
+
+    private <E extends Exception> void encode(DeltaVarintCodec.Encoder<E> encoder) throws E {
+        for (PrimitiveIterator.OfInt values = intIterator(); values.hasNext(); ) {
+            encoder.add(values.nextInt());
+        }
+        encoder.finish();
+    }
+
+    /**
+     * Reads a set written by {@link #writeTo} into a new list. Keys arrive in order,
+     * so each is appended after the last in O(1) instead of searched for.
+     * @param in The stream to read from
+     * @param maxLevel The maximum level for the new list
+     * @return a list of the decoded values
+     * @throws IOException if the stream fails, ends early or holds a malformed set
+     */
+    public static FineGrainedSkipList readFrom(InputStream in, int maxLevel) throws IOException {
+        return decode(new DeltaVarintCodec.Decoder<>(() -> {
+            int b = in.read();
+            if (b < 0) {
+                throw new EOFException("Set ended without a terminator");
+            }
+            return b;
+        }), maxLevel);
+    }
+
+    /**
+     * Reads a set written by {@link #writeTo} from a buffer into a new list.
+     * @param buffer The buffer to read from
+     * @param maxLevel The maximum level for the new list
+     * @return a list of the decoded values
+     * @throws IOException if the buffer holds a malformed set
+     * @throws java.nio.BufferUnderflowException if the buffer ends early
+     */
+    public static FineGrainedSkipList readFrom(ByteBuffer buffer, int maxLevel)
+            throws IOException {
+        return decode(new DeltaVarintCodec.Decoder<>(() -> buffer.get() & 0xFF), maxLevel);
+    }
+
+    private static <E extends Exception> FineGrainedSkipList decode(
+            DeltaVarintCodec.Decoder<E> decoder, int maxLevel) throws IOException, E {
+        FineGrainedSkipList list = new FineGrainedSkipList(maxLevel);
+        Appender appender = list.new Appender();
+        while (decoder.advance()) {
+            long key = decoder.key();
+            if (key < Integer.MIN_VALUE || key >= list.header.key) {
+                throw new IOException("Key out of range: " + key);
+            }
+            appender.append((int) key);
+        }
+        return list;
+    }
+
+    public int size() {
+        return size.get();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return intIterator();
+    }
+
+    /**
+     * Iterates over the values in ascending order without boxing.
+     * @return an iterator over the present values
+     */
+    public PrimitiveIterator.OfInt intIterator() {
+        return new PrimitiveIterator.OfInt() {
+            private Node current;
+            private int currentKey;
+            private int currentIncarnation;
+            /**
+             * When recycling, whether hasNext already found current live and saved its
+             * value, which nextInt then returns even if current is removed meanwhile.
+             */
+            private boolean ready;
+            private int nextValue;
+
+            {
+                enter();
+                try {
+                    current = header.forward[0];
+                    currentKey = current.key;
+                    currentIncarnation = current.incarnation;
+                }
+                finally {
+                    exit();
+                }
+            }
+
+            /**
+             * Moves current to the first node at or after key, found by a fresh search.
+             */
+            private void seek(int key) {
+                Node[] predecessors = new Node[maxLevel];
+                Node[] successors = new Node[maxLevel];
+                find(key, predecessors, successors);
+                current = successors[0];
+                currentIncarnation = current.incarnation;
+                currentKey = current.key;
+            }
+
+
+            @Override
+            public boolean hasNext() {
+                if (reclaimer == null) {
+                    return current.key != Integer.MAX_VALUE;
+                }
+                if (ready) {
+                    return true;
+                }
+                enter();
+                try {
+                    while (true) {
+                        if (!current.stillHolds(currentIncarnation)) {
+                            seek(currentKey);
+                        }
+                        if (current == header) {
+                            return false;
+                        }
+                        int value = current.value;
+                        if (current.incarnation == currentIncarnation) {
+                            nextValue = value;
+                            ready = true;
+                            return true;
+                        }
+                    }
+                }
+                finally {
+                    exit();
+                }
+            }
+
+            @Override
+            public int nextInt() {
+                if (reclaimer == null) {
+                    int value = current.value;
+                    current = current.forward[0];
+                    return value;
+                }
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                ready = false;
+                enter();
+                try {
+                    if (current.stillHolds(currentIncarnation)) {
+                        Node next = current.forward[0];
+                        if (current.incarnation == currentIncarnation) {
+                            current = next;
+                            currentIncarnation = current.incarnation;
+                            currentKey = current.key;
+                            return nextValue;
+                        }
+                    }
+                    seek(currentKey + 1);
+                    return nextValue;
+                }
+                finally {
+                    exit();
+                }
             }
 
             @Override
@@ -0,0 +1,586 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A fine-grained skip-list map ordered by a comparator.
+ * Each node caches its key's {@link PrefixComparator#prefix}, so a search usually
+ * decides each step with one primitive comparison and never loads the key object.
+ *
+ * <p>This is a copy of the {@link FineGrainedSkipList} engine for comparator-ordered
+ * keys and their values. It carries the backoff policy, the embedded lock, and insert's
+ * check that the successor lies above the key. It does not carry node recycling, the
+ * level rebalancer's validation, the lookup filter, the hash index, back links, the
+ * change stream, batches, range removal, polling or the delta-varint format; fixes to
+ * those parts of the engine do not apply here.
+ * @param <K> The key type
+ * @param <V> The value type
+ */
+public class FineGrainedSkipListMap<K, V> extends AbstractMap<K, V>
+        implements ConcurrentMap<K, V> {
+    class Node {
+        final K key;
+        final long prefix;
+        final int level;
+        final Node[] forward;
+        volatile V value;
+
+        volatile int lockState;
+        volatile boolean fullyLinked;
+        volatile boolean markedForRemoval;
+
+        Node(K key, long prefix, V value, int level, int maxLevel) {
+            this.key = key;
+            this.prefix = prefix;
+            this.value = value;
+            this.level = level;
+            this.forward = newNodes(maxLevel);
+        }
+
+        void lock() {
+            for (int attempt = 0; !tryLock(); attempt += 1) {
+                backoff.backoff(attempt);
+            }
+        }
+
+        boolean tryLock() {
+            return lockState == UNLOCKED && LOCK_STATE.compareAndSet(this, UNLOCKED, LOCKED);
+        }
+
+        void unlock() {
+            lockState = UNLOCKED;
+        }
+
+        boolean isPresent() {
+            return fullyLinked && !markedForRemoval;
+        }
+
+        public String toString() {
+            return key + "=" + value;
+        }
+    }
+
+    private static final int UNLOCKED = 0;
+    private static final int LOCKED = 1;
+    @SuppressWarnings("rawtypes")
+    private static final AtomicIntegerFieldUpdater<FineGrainedSkipListMap.Node> LOCK_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(FineGrainedSkipListMap.Node.class, "lockState");
+
+    final Node header;
+    final Node tail;
+    final int maxLevel;
+    final AtomicInteger size;
+    final float p = 0.5f;
+    final PrefixComparator<? super K> comparator;
+    final BackoffPolicy backoff;
+
+    /**
+     * Create a skip list map with a maximum level, ordered by comparator.
+     * Pass a {@link PrefixComparator} such as {@link PrefixComparator#BYTES} to
+     * resolve most comparisons on the cached prefix.
+     * @param maxLevel The maximum level for this skip list
+     * @param comparator The key ordering
+     */
+    public FineGrainedSkipListMap(int maxLevel, Comparator<? super K> comparator) {
+        this(maxLevel, comparator, BackoffPolicy.DEFAULT);
+    }
+
+    /**
+     * Create a skip list map with a maximum level, an ordering and a contention policy.
+     * @param maxLevel The maximum level for this skip list
+     * @param comparator The key ordering
+     * @param backoff How threads wait before retrying after losing a race
+     */
+    public FineGrainedSkipListMap(int maxLevel, Comparator<? super K> comparator,
+                                  BackoffPolicy backoff) {
+        this.maxLevel = maxLevel;
+        this.comparator = PrefixComparator.of(comparator);
+        this.backoff = backoff;
+        this.size = new AtomicInteger(0);
+        this.tail = new Node(null, 0L, null, maxLevel - 1, maxLevel);
+        this.header = new Node(null, 0L, null, maxLevel - 1, maxLevel);
+        for (int level = 0; level < maxLevel; level += 1) {
+            header.forward[level] = tail;
+        }
+        header.fullyLinked = true;
+        tail.fullyLinked = true;
+    }
+
+    @SuppressWarnings("unchecked")
+    Node[] newNodes(int length) {
+        return (Node[]) new FineGrainedSkipListMap<?, ?>.Node[length];
+    }
+
+    /**
+     * Compares node's key to key, deciding on the cached prefixes when they differ.
+     */
+    private int compare(Node node, K key, long prefix) {
+        return comparator.compare(node.key, node.prefix, key, prefix);
+    }
+
+    /**
+     * Finds key in the skiplist, returning highest level of occurrence or -1 if absent.
+     * Fills predecessors and successors on every level.
+     */
+    int find(K key, long prefix, Node[] predecessors, Node[] successors) {
+        int highestLevel = -1;
+        Node predecessor = header;
+        Node current;
+
+        for (int level = maxLevel - 1; level >= 0; level -= 1) {
+            current = predecessor.forward[level];
+
+            while (current != tail) {
+                int c = compare(current, key, prefix);
+                if (c > 0) {
+                    break;
+                }
+                if (c == 0) {
+                    if (highestLevel == -1) {
+                        highestLevel = level;
+                    }
+                    break;
+                }
+                predecessor = current;
+                current = predecessor.forward[level];
+            }
+
+            predecessors[level] = predecessor;
+            successors[level] = current;
+        }
+
+        return highestLevel;
+    }
+
+    /**
+     * Finds the node holding key, or null. Stops at the first level the key appears on.
+     */
+    Node findNode(K key) {
+        long prefix = comparator.prefix(key);
+        Node predecessor = header;
+
+        for (int level = maxLevel - 1; level >= 0; level -= 1) {
+            Node current = predecessor.forward[level];
+
+            while (current != tail) {
+                int c = compare(current, key, prefix);
+                if (c > 0) {
+                    break;
+                }
+                if (c == 0) {
+                    return current;
+                }
+                predecessor = current;
+                current = predecessor.forward[level];
+            }
+        }
+
+        return null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K checkKey(Object key) {
+        return (K) Objects.requireNonNull(key);
+    }
+
+    @Override
+    public V get(Object key) {
+        Node node = findNode(checkKey(key));
+        if (node == null || !node.isPresent()) {
+            return null;
+        }
+        return node.value;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        Node node = findNode(checkKey(key));
+        return node != null && node.isPresent();
+    }
+
+    /**
+     * Returns the mapping with the greatest key less than or equal to key.
+     * @param key The key to look up
+     * @return the floor mapping, or null if every key is greater
+     */
+    public Map.Entry<K, V> floorEntry(K key) {
+        long prefix = comparator.prefix(Objects.requireNonNull(key));
+        Node[] predecessors = newNodes(maxLevel);
+        Node[] successors = newNodes(maxLevel);
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
+
+            int foundNodeLevel = find(key, prefix, predecessors, successors);
+            Node floor = foundNodeLevel != -1 ? successors[0] : predecessors[0];
+
+            if (floor == header) {
+                return null;
+            }
+            V value = floor.value;
+            if (floor.isPresent()) {
+                return new SimpleImmutableEntry<>(floor.key, value);
+            }
+        }
+    }
+
+    @Override
+    public V put(K key, V value) {
+        return insert(key, value, false);
+    }
+
+    @Override
+    public V putIfAbsent(K key, V value) {
+        return insert(key, value, true);
+    }
+
+    /**
+     * Inserts a mapping, or updates the existing one unless onlyIfAbsent.
+     * @return the previous value, or null if the key was absent
+     */
+    private V insert(K key, V value, boolean onlyIfAbsent) {
+        Objects.requireNonNull(key);
+        Objects.requireNonNull(value);
+        long prefix = comparator.prefix(key);
+        Node[] predecessors = newNodes(maxLevel);
+        Node[] successors = newNodes(maxLevel);
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
+
+            int foundNodeLevel = find(key, prefix, predecessors, successors);
+
+            if (foundNodeLevel != -1) {
+                Node foundNode = successors[foundNodeLevel];
+                if (!foundNode.markedForRemoval) {
+                    for (int spins = 0; !foundNode.fullyLinked; spins += 1) {
+                        backoff.backoff(spins);
+                    }
+                    if (onlyIfAbsent) {
+                        return foundNode.value;
+                    }
+                    foundNode.lock();
+                    try {
+                        if (foundNode.markedForRemoval) {
+                            continue;
+                        }
+                        V previous = foundNode.value;
+                        foundNode.value = value;
+                        return previous;
+                    }
+                    finally {
+                        foundNode.unlock();
+                    }
+                }
+            }
+
+            int newLevel = chooseRandomLevel();
+            int highestLockedLevel = -1;
+
+            try {
+                boolean valid = true;
+                Node predecessor;
+                Node successor;
+                Node previousPredecessor = null;
+
+                for (int level = 0; (valid && (level <= newLevel)); level += 1) {
+                    predecessor = predecessors[level];
+                    successor = successors[level];
+
+                    if (predecessor != previousPredecessor) {
+                        predecessor.lock();
+                        highestLockedLevel = level;
+                        previousPredecessor = predecessor;
+                    }
+
+                    // The key check catches a search that found a removed node on a
+                    // higher level but, lower down, a newer node with the same key.
+                    valid = !predecessor.markedForRemoval
+                            && !successor.markedForRemoval
+                            && predecessor.forward[level] == successor
+                            && (successor == tail || compare(successor, key, prefix) > 0);
+                }
+
+                if (!valid) {
+                    continue;
+                }
+
+                Node newNode = new Node(key, prefix, value, newLevel, maxLevel);
+
+                for (int level = 0; level <= newLevel; level += 1) {
+                    newNode.forward[level] = successors[level];
+                    predecessors[level].forward[level] = newNode;
+                }
+
+                newNode.fullyLinked = true;
+                size.incrementAndGet();
+
+                return null;
+            }
+            finally {
+                unlockPredecessors(predecessors, highestLockedLevel);
+            }
+        }
+    }
+
+    @Override
+    public V remove(Object key) {
+        return delete(checkKey(key), null);
+    }
+
+    @Override
+    public boolean remove(Object key, Object value) {
+        return value != null && delete(checkKey(key), value) != null;
+    }
+
+    /**
+     * Removes key if present and, when expectedValue is not null, mapped to expectedValue.
+     * @return the removed value, or null if nothing was removed
+     */
+    private V delete(K key, Object expectedValue) {
+        long prefix = comparator.prefix(key);
+        Node[] predecessors = newNodes(maxLevel);
+        Node[] successors = newNodes(maxLevel);
+        Node nodeToRemove = null;
+        V removedValue = null;
+        boolean inProcessOfRemoving = false;
+        int highestLevelFound = -1;
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
+
+            int foundNodeLevel = find(key, prefix, predecessors, successors);
+
+            if (!inProcessOfRemoving) {
+                if (foundNodeLevel == -1) {
+                    return null;
+                }
+
+                nodeToRemove = successors[foundNodeLevel];
+                if (!nodeToRemove.isPresent() || nodeToRemove.level != foundNodeLevel) {
+                    return null;
+                }
+
+                highestLevelFound = nodeToRemove.level;
+                nodeToRemove.lock();
+
+                removedValue = nodeToRemove.value;
+                if (nodeToRemove.markedForRemoval
+                        || (expectedValue != null && !expectedValue.equals(removedValue))) {
+                    nodeToRemove.unlock();
+                    return null;
+                }
+
+                nodeToRemove.markedForRemoval = true;
+                inProcessOfRemoving = true;
+            }
+
+            int highestLockedLevel = -1;
+
+            try {
+                boolean valid = true;
+                Node predecessor;
+                Node previousPredecessor = null;
+
+                for (int level = 0; (valid && (level <= highestLevelFound)); level += 1) {
+                    predecessor = predecessors[level];
+
+                    if (predecessor != previousPredecessor) {
+                        predecessor.lock();
+                        highestLockedLevel = level;
+                        previousPredecessor = predecessor;
+                    }
+
+                    valid = !predecessor.markedForRemoval
+                            && predecessor.forward[level] == nodeToRemove;
+                }
+
+                if (!valid) {
+                    continue;
+                }
+
+                for (int level = highestLevelFound; level >= 0; level -= 1) {
+                    predecessors[level].forward[level] = nodeToRemove.forward[level];
+                }
+
+                nodeToRemove.unlock();
+                size.decrementAndGet();
+
+                return removedValue;
+            }
+            finally {
+                unlockPredecessors(predecessors, highestLockedLevel);
+            }
+        }
+    }
+
+    @Override
+    public V replace(K key, V value) {
+        Objects.requireNonNull(value);
+        Node node = findNode(checkKey(key));
+        if (node == null) {
+            return null;
+        }
+        node.lock();
+        try {
+            if (!node.isPresent()) {
+                return null;
+            }
+            V previous = node.value;
+            node.value = value;
+            return previous;
+        }
+        finally {
+            node.unlock();
+        }
+    }
+
+    @Override
+    public boolean replace(K key, V oldValue, V newValue) {
+        Objects.requireNonNull(oldValue);
+        Objects.requireNonNull(newValue);
+        Node node = findNode(checkKey(key));
+        if (node == null) {
+            return false;
+        }
+        node.lock();
+        try {
+            if (!node.isPresent() || !oldValue.equals(node.value)) {
+                return false;
+            }
+            node.value = newValue;
+            return true;
+        }
+        finally {
+            node.unlock();
+        }
+    }
+
+    private void unlockPredecessors(Node[] predecessors, int highestLockedLevel) {
+        Node previousPredecessor = null;
+        for (int level = 0; level <= highestLockedLevel; level += 1) {
+            if (predecessors[level] != previousPredecessor) {
+                previousPredecessor = predecessors[level];
+                previousPredecessor.unlock();
+            }
+        }
+    }
+
+    private Random levelRandom = new Random(0);
+
+    private int chooseRandomLevel() {
+        int newLevel = 0;
+        while (newLevel < maxLevel - 1 && levelRandom.nextFloat() < this.p) {
+            newLevel += 1;
+        }
+        return newLevel;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Returns the key ordering.
+     * @return the comparator given at construction, wrapped as a prefix comparator
+     */
+    public PrefixComparator<? super K> comparator() {
+        return comparator;
+    }
+
+    @Override
+    public Set<Map.Entry<K, V>> entrySet() {
+        return new AbstractSet<Map.Entry<K, V>>() {
+            @Override
+            public Iterator<Map.Entry<K, V>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return FineGrainedSkipListMap.this.size();
+            }
+        };
+    }
+
+    /**
+     * Iterates over the mappings whose keys are at or above fromKey, in key order.
+     * Like {@link #entrySet}, sees each mapping as it was at some point during the walk.
+     */
+    Iterator<Map.Entry<K, V>> tailIterator(K fromKey) {
+        long prefix = comparator.prefix(Objects.requireNonNull(fromKey));
+        Node[] predecessors = newNodes(maxLevel);
+        Node[] successors = newNodes(maxLevel);
+        find(fromKey, prefix, predecessors, successors);
+        return new EntryIterator(predecessors[0]);
+    }
+
+    /**
+     * Walks level 0 in key order, skipping nodes that are not present.
+     */
+    private class EntryIterator implements Iterator<Map.Entry<K, V>> {
+        private Node current;
+        private Node lastReturned;
+
+        EntryIterator() {
+            this(header);
+        }
+
+        /**
+         * Starts after start, which may have been removed since it was found.
+         */
+        EntryIterator(Node start) {
+            current = advance(start);
+        }
+
+        private Node advance(Node node) {
+            Node next = node.forward[0];
+            while (next != tail && !next.isPresent()) {
+                next = next.forward[0];
+            }
+            return next;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return current != tail;
+        }
+
+        @Override
+        public Map.Entry<K, V> next() {
+            if (current == tail) {
+                throw new NoSuchElementException();
+            }
+            lastReturned = current;
+            current = advance(current);
+            return new SimpleImmutableEntry<>(lastReturned.key, lastReturned.value);
+        }
+
+        @Override
+        public void remove() {
+            if (lastReturned == null) {
+                throw new IllegalStateException();
+            }
+            FineGrainedSkipListMap.this.remove(lastReturned.key);
+            lastReturned = null;
+        }
+    }
+}
@@ -0,0 +1,406 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * A fine-grained skip-list multiset of int keys, where each node carries how many
+ * times its key was added. Changing the count of a present key is one atomic add on
+ * its node, with no locks taken; only inserting a new key or removing a key whose count
+ * reached zero locks predecessors, reusing the search that found the key.
+ * A count that reaches zero never changes again, so a key is present exactly while its
+ * node's count is positive. The head and tail are sentinels compared by identity,
+ * so every int value can be stored.
+ *
+ * <p>The search, locking and unlinking are a copy of the {@link FineGrainedSkipList}
+ * engine. It carries the backoff policy and the embedded lock. It does not carry node
+ * recycling, the level rebalancer's validation, the lookup filter, the hash index, back
+ * links, the change stream, batches, range removal, polling or the delta-varint format;
+ * fixes to those parts of the engine do not apply here. Nor does it need insert's check
+ * that the successor lies above the key: add only inserts when its search met the key
+ * on no level, and searches again otherwise.
+ */
+public class FineGrainedSkipListMultiset {
+    class Node {
+        final int key;
+        final int level;
+        final Node[] forward;
+        /**
+         * Occurrences of key, or 0 once the node is being removed.
+         */
+        volatile int count;
+
+        volatile int lockState;
+        volatile boolean fullyLinked;
+        volatile boolean markedForRemoval;
+
+        Node(int key, int count, int level, int maxLevel) {
+            this.key = key;
+            this.count = count;
+            this.level = level;
+            this.forward = new Node[maxLevel];
+        }
+
+        void lock() {
+            for (int attempt = 0; !tryLock(); attempt += 1) {
+                backoff.backoff(attempt);
+            }
+        }
+
+        boolean tryLock() {
+            return lockState == UNLOCKED && LOCK_STATE.compareAndSet(this, UNLOCKED, LOCKED);
+        }
+
+        void unlock() {
+            lockState = UNLOCKED;
+        }
+
+        public String toString() {
+            return key + "x" + count;
+        }
+    }
+
+    private static final int UNLOCKED = 0;
+    private static final int LOCKED = 1;
+    private static final AtomicIntegerFieldUpdater<Node> LOCK_STATE =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "lockState");
+    private static final AtomicIntegerFieldUpdater<Node> COUNT =
+            AtomicIntegerFieldUpdater.newUpdater(Node.class, "count");
+
+    /**
+     * Returned by {@link #adjust} when the node's count already reached zero.
+     */
+    private static final int REMOVED = -1;
+
+    final Node header;
+    final Node tail;
+    final int maxLevel;
+    final AtomicInteger size;
+    final float p = 0.5f;
+    final BackoffPolicy backoff;
+
+    /**
+     * Create a multiset with a maximum level.
+     * @param maxLevel The maximum level for this skip list
+     */
+    public FineGrainedSkipListMultiset(int maxLevel) {
+        this(maxLevel, BackoffPolicy.DEFAULT);
+    }
+
+    /**
+     * Create a multiset with a maximum level and a contention policy.
+     * @param maxLevel The maximum level for this skip list
+     * @param backoff How threads wait before retrying after losing a race
+     */
+    public FineGrainedSkipListMultiset(int maxLevel, BackoffPolicy backoff) {
+        this.maxLevel = maxLevel;
+        this.backoff = backoff;
+        this.size = new AtomicInteger(0);
+        this.tail = new Node(0, 0, maxLevel - 1, maxLevel);
+        this.header = new Node(0, 0, maxLevel - 1, maxLevel);
+        for (int level = 0; level < maxLevel; level += 1) {
+            header.forward[level] = tail;
+        }
+        header.fullyLinked = true;
+        tail.fullyLinked = true;
+    }
+
+    /**
+     * Adds delta occurrences of key. A negative delta removes occurrences, and the key
+     * is removed once its count reaches zero; removing more occurrences than are present
+     * leaves none.
+     * @param key The key to count
+     * @param delta How many occurrences to add, or remove if negative
+     * @return the count of key after the change
+     * @throws ArithmeticException if the count would overflow an int
+     */
+    public int add(int key, int delta) {
+        if (delta == 0) {
+            return count(key);
+        }
+        Node[] predecessors = new Node[maxLevel];
+        Node[] successors = new Node[maxLevel];
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+            }
+
+            int foundNodeLevel = find(key, predecessors, successors);
+
+            if (foundNodeLevel != -1) {
+                Node foundNode = successors[foundNodeLevel];
+                if (foundNode.markedForRemoval) {
+                    continue;
+                }
+                for (int spins = 0; !foundNode.fullyLinked; spins += 1) {
+                    backoff.backoff(spins);
+                }
+                int count = adjust(foundNode, delta);
+                if (count == 0) {
+                    unlink(foundNode, predecessors, successors);
+                }
+                if (count != REMOVED) {
+                    return count;
+                }
+                continue;
+            }
+
+            if (delta < 0) {
+                return 0;
+            }
+            if (insert(key, delta, predecessors, successors)) {
+                return delta;
+            }
+        }
+    }
+
+    /**
+     * Applies delta to a present node's count without locking.
+     * @return the new count, where 0 makes the caller responsible for unlinking node,
+     *     or {@link #REMOVED} if another thread already brought the count to zero
+     */
+    private static int adjust(Node node, int delta) {
+        while (true) {
+            int count = node.count;
+            if (count == 0) {
+                return REMOVED;
+            }
+            int updated = Math.max(0, Math.addExact(count, delta));
+            if (COUNT.compareAndSet(node, count, updated)) {
+                return updated;
+            }
+        }
+    }
+
+    /**
+     * Links a new node for an absent key between the predecessors and successors
+     * a search found.
+     * @return false if they changed since, so the caller must search again
+     */
+    private boolean insert(int key, int count, Node[] predecessors, Node[] successors) {
+        int newLevel = chooseRandomLevel();
+        int highestLockedLevel = -1;
+
+        try {
+            boolean valid = true;
+            Node predecessor;
+            Node successor;
+            Node previousPredecessor = null;
+
+            for (int level = 0; (valid && (level <= newLevel)); level += 1) {
+                predecessor = predecessors[level];
+                successor = successors[level];
+
+                if (predecessor != previousPredecessor) {
+                    predecessor.lock();
+                    highestLockedLevel = level;
+                    previousPredecessor = predecessor;
+                }
+
+                valid = !predecessor.markedForRemoval
+                        && !successor.markedForRemoval
+                        && predecessor.forward[level] == successor;
+            }
+
+            if (!valid) {
+                return false;
+            }
+
+            Node newNode = new Node(key, count, newLevel, maxLevel);
+
+            for (int level = 0; level <= newLevel; level += 1) {
+                newNode.forward[level] = successors[level];
+                predecessors[level].forward[level] = newNode;
+            }
+
+            newNode.fullyLinked = true;
+            size.incrementAndGet();
+            return true;
+        }
+        finally {
+            unlockPredecessors(predecessors, highestLockedLevel);
+        }
+    }
+
+    /**
+     * Unlinks a fully linked node this thread brought to a count of zero, starting
+     * from the predecessors of the search that found it. No other thread marks it,
+     * since only the thread that zeroed a count removes its node.
+     */
+    private void unlink(Node nodeToRemove, Node[] predecessors, Node[] successors) {
+        nodeToRemove.lock();
+        nodeToRemove.markedForRemoval = true;
+        int highestLevelFound = nodeToRemove.level;
+
+        for (int attempt = 0; true; attempt += 1) {
+            if (attempt > 0) {
+                backoff.backoff(attempt - 1);
+                find(nodeToRemove.key, predecessors, successors);
+            }
+
+            int highestLockedLevel = -1;
+
+            try {
+                boolean valid = true;
+                Node predecessor;
+                Node previousPredecessor = null;
+
+                for (int level = 0; (valid && (level <= highestLevelFound)); level += 1) {
+                    predecessor = predecessors[level];
+
+                    if (predecessor != previousPredecessor) {
+                        predecessor.lock();
+                        highestLockedLevel = level;
+                        previousPredecessor = predecessor;
+                    }
+
+                    valid = !predecessor.markedForRemoval
+                            && predecessor.forward[level] == nodeToRemove;
+                }
+
+                if (!valid) {
+                    continue;
+                }
+
+                for (int level = highestLevelFound; level >= 0; level -= 1) {
+                    predecessors[level].forward[level] = nodeToRemove.forward[level];
+                }
+
+                nodeToRemove.unlock();
+                size.decrementAndGet();
+                return;
+            }
+            finally {
+                unlockPredecessors(predecessors, highestLockedLevel);
+            }
+        }
+    }
+
+    private static void unlockPredecessors(Node[] predecessors, int highestLockedLevel) {
+        Node previousPredecessor = null;
+        for (int level = 0; level <= highestLockedLevel; level += 1) {
+            if (predecessors[level] != previousPredecessor) {
+                previousPredecessor = predecessors[level];
+                previousPredecessor.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns how many times key is present.
+     * @param key The key to look for
+     * @return the count of key, or 0 if it is absent
+     */
+    public int count(int key) {
+        Node predecessor = header;
+        Node current;
+
+        for (int level = maxLevel - 1; level >= 0; level -= 1) {
+            current = predecessor.forward[level];
+
+            while (current != tail && current.key < key) {
+                predecessor = current;
+                current = predecessor.forward[level];
+            }
+
+            if (current != tail && current.key == key) {
+                return current.fullyLinked && !current.markedForRemoval ? current.count : 0;
+            }
+        }
+
+        return 0;
+    }
+
+    /**
+     * Determines if key is present at least once.
+     * @param key The key to look for
+     * @return true if the count of key is positive
+     */
+    public boolean contains(int key) {
+        return count(key) > 0;
+    }
+
+    /**
+     * Finds key in the skiplist, returning highest level of occurrence or -1 if absent.
+     */
+    int find(int key, Node[] predecessors, Node[] successors) {
+        int highestLevel = -1;
+        Node predecessor = this.header;
+        Node current;
+
+        for (int level = maxLevel - 1; level >= 0; level -= 1) {
+            current = predecessor.forward[level];
+
+            while (current != tail && current.key < key) {
+                predecessor = current;
+                current = predecessor.forward[level];
+            }
+
+            if (highestLevel == -1 && current != tail && current.key == key) {
+                highestLevel = level;
+            }
+
+            predecessors[level] = predecessor;
+            successors[level] = current;
+        }
+
+        return highestLevel;
+    }
+
+    private Random levelRandom = new Random(0);
+
+    private int chooseRandomLevel() {
+        int newLevel = 0;
+        while (newLevel < maxLevel - 1 && levelRandom.nextFloat() < this.p) {
+            newLevel += 1;
+        }
+        return newLevel;
+    }
+
+    /**
+     * Counts the distinct keys present.
+     * @return the number of keys with a positive count
+     */
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Iterates over the distinct keys present, in ascending order. Pair with
+     * {@link #count} for each key's count at the time it is asked for.
+     * @return an iterator over the present keys
+     */
+    public PrimitiveIterator.OfInt keyIterator() {
+        return new PrimitiveIterator.OfInt() {
+            private Node current = advance(header);
+
+            private Node advance(Node node) {
+                Node next = node.forward[0];
+                while (next != tail
+                        && (next.markedForRemoval || !next.fullyLinked || next.count == 0)) {
+                    next = next.forward[0];
+                }
+                return next;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current != tail;
+            }
+
+            @Override
+            public int nextInt() {
+                if (current == tail) {
+                    throw new NoSuchElementException();
+                }
+                int key = current.key;
+                current = advance(current);
+                return key;
+            }
+        };
+    }
+}
@@ -0,0 +1,205 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Restores the geometric level distribution of a {@link FineGrainedSkipList} in the background.
+ * Each pass walks level 0 in small steps, counting how many towers so far reach each level.
+ * A node is lowered when its level is over-represented so far, and raised when the level
+ * above it is under-represented, so towers only move where the distribution has drifted.
+ * Relinking only ever tries locks, never waits on them, so foreground operations are not
+ * blocked; nodes it cannot lock are skipped until the next pass.
+ * The thread sleeps between steps so that it uses at most the configured share of one CPU.
+ */
+public class LevelRebalancer implements AutoCloseable {
+    /**
+     * Nodes visited per step, between which the budget is enforced.
+     */
+    static final int STEP = 256;
+
+    private final FineGrainedSkipList list;
+    private final double cpuBudget;
+    private final long idleNanos;
+    private volatile boolean running;
+    private Thread thread;
+
+    private final int[] towers;
+    private int visited;
+    private int highestLevel;
+    private Integer resumeKey;
+    private volatile long moved;
+
+    /**
+     * Create a rebalancer that idles for one second between passes.
+     * @param list The list to rebalance
+     * @param cpuBudget The share of one CPU the rebalancer may use, in (0, 1]
+     */
+    public LevelRebalancer(FineGrainedSkipList list, double cpuBudget) {
+        this(list, cpuBudget, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Create a rebalancer.
+     * @param list The list to rebalance
+     * @param cpuBudget The share of one CPU the rebalancer may use, in (0, 1]
+     * @param idle How long to wait after a complete pass
+     * @param unit The unit of idle
+     */
+    public LevelRebalancer(FineGrainedSkipList list, double cpuBudget, long idle, TimeUnit unit) {
+        if (!(cpuBudget > 0 && cpuBudget <= 1)) {
+            throw new IllegalArgumentException("CPU budget must be in (0, 1]: " + cpuBudget);
+        }
+        this.list = list;
+        this.cpuBudget = cpuBudget;
+        this.idleNanos = unit.toNanos(idle);
+        this.towers = new int[list.maxLevel];
+    }
+
+    /**
+     * Starts rebalancing on a daemon thread.
+     */
+    public synchronized void start() {
+        if (thread != null) {
+            throw new IllegalStateException("Already started");
+        }
+        running = true;
+        thread = new Thread(this::loop, "skip-list-rebalancer");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Stops the background thread and waits for it to finish its current step.
+     * If the caller is interrupted while waiting, close returns at once with the
+     * interrupt flag set, and the thread stops after its current step.
+     */
+    @Override
+    public synchronized void close() {
+        running = false;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+            try {
+                thread.join();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+    }
+
+    private void loop() {
+        while (running) {
+            long start = System.nanoTime();
+            boolean passDone = step(STEP);
+            long elapsed = System.nanoTime() - start;
+            long pause = (long) (elapsed * (1 - cpuBudget) / cpuBudget);
+            LockSupport.parkNanos(passDone ? Math.max(pause, idleNanos) : pause);
+        }
+    }
+
+    /**
+     * Visits up to maxNodes nodes of the current pass, re-levelling those that have drifted.
+     * Call it directly only when the background thread is not running.
+     * @param maxNodes The most nodes to visit
+     * @return true if this step finished a pass over the whole list
+     */
+    public boolean step(int maxNodes) {
+        list.enter();
+        try {
+            FineGrainedSkipList.Node node;
+            if (resumeKey == null) {
+                node = list.header.forward[0];
+            }
+            else {
+                FineGrainedSkipList.Node[] predecessors =
+                        new FineGrainedSkipList.Node[list.maxLevel];
+                FineGrainedSkipList.Node[] successors =
+                        new FineGrainedSkipList.Node[list.maxLevel];
+                list.find(resumeKey + 1, predecessors, successors);
+                node = successors[0];
+            }
+
+            for (int i = 0; i < maxNodes; i++) {
+                if (node == list.header) {
+                    finishPass();
+                    return true;
+                }
+                if (node.fullyLinked && !node.markedForRemoval) {
+                    visit(node);
+                }
+                resumeKey = node.key;
+                node = node.forward[0];
+            }
+            if (node == list.header) {
+                finishPass();
+                return true;
+            }
+            return false;
+        }
+        finally {
+            list.exit();
+        }
+    }
+
+    /**
+     * Chooses a level for node that keeps this pass's tower counts near k / 2^level.
+     * Each count may drift a quarter from its target before towers are moved.
+     */
+    private void visit(FineGrainedSkipList.Node node) {
+        visited += 1;
+        int level = node.level;
+        int target = level;
+        while (target > 0 && towers[target] >= slackAbove(visited >> target)) {
+            target -= 1;
+        }
+        while (target < list.maxLevel - 1
+                && towers[target + 1] + 1 < slackBelow(visited >> (target + 1))) {
+            target += 1;
+        }
+        if (target != level && list.tryRelevel(node, target)) {
+            moved = moved + 1;
+            level = target;
+        }
+        else {
+            level = node.level;
+        }
+        for (int i = 0; i <= level; i++) {
+            towers[i] += 1;
+        }
+        highestLevel = Math.max(highestLevel, level);
+    }
+
+    private static int slackAbove(int expected) {
+        return expected + (expected >> 2) + 1;
+    }
+
+    private static int slackBelow(int expected) {
+        return expected - (expected >> 2);
+    }
+
+    /**
+     * Lowers the ceiling on new towers' levels if the top levels emptied, and resets
+     * the counts. Searches still start from the list's maximum level; an empty level
+     * costs them only one cached-key comparison at the header.
+     */
+    private void finishPass() {
+        if (list.currentLevels.get() > highestLevel) {
+            list.currentLevels.set(highestLevel);
+        }
+        Arrays.fill(towers, 0);
+        visited = 0;
+        highestLevel = 0;
+        resumeKey = null;
+    }
+
+    /**
+     * Counts the towers moved so far.
+     * @return the number of nodes re-levelled
+     */
+    public long moved() {
+        return moved;
+    }
+}
@@ -0,0 +1,643 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+/**
+ * A set of int keys that outgrows the heap by keeping most of its keys on local disk,
+ * in the manner of a log-structured merge tree. Writes go to an in-memory
+ * {@link FineGrainedSkipListMap} memtable, where a removal is recorded as a tombstone.
+ * Once the memtable holds {@code memtableLimit} entries it is frozen, a fresh one takes
+ * writes, and a background task flushes the frozen one to an immutable {@link SortedRun}.
+ * When more than {@code maxRuns} runs pile up, the same task merges the newest runs of
+ * similar size, so a large old run is rewritten only once newer runs have grown to
+ * match it. A merge drops tombstones only when it takes in the oldest run, since then
+ * nothing older remains for them to hide.
+ * Lookups and scans consult the memtables and then the runs, newest first, so the newest
+ * entry for a key decides whether it is present.
+ *
+ * <p>Writes are blind: {@link #add} and {@link #remove} do not report whether the key was
+ * present, since finding out would mean reading the runs on every write.
+ * Keys still in memtables are lost if the process dies; {@link #close} flushes them.
+ * Runs are written to a temporary file, forced to disk and renamed into place, and the
+ * directory is forced after the rename. Reopening a directory picks up the runs in it.
+ */
+public class LsmSkipList implements Closeable {
+    /**
+     * Runs kept before a compaction merges them, unless given.
+     */
+    public static final int DEFAULT_MAX_RUNS = 4;
+
+    /**
+     * How many times the average size of a compaction tier a run may hold and still join it.
+     */
+    static final int TIER_RATIO = 2;
+
+    /**
+     * A memtable and the writers currently adding to it.
+     */
+    private static final class Memtable {
+        final long id;
+        final FineGrainedSkipListMap<Integer, Boolean> entries;
+        /**
+         * Writers that checked this memtable was not frozen and have not yet finished.
+         * A flush waits for it to reach zero.
+         */
+        final AtomicInteger writers = new AtomicInteger();
+        volatile boolean frozen;
+
+        Memtable(long id, int maxLevel) {
+            this.id = id;
+            this.entries = new FineGrainedSkipListMap<>(maxLevel, PrefixComparator.INTEGERS);
+        }
+    }
+
+    /**
+     * Where the keys live at one moment. Never changed once published; flushes and
+     * compactions publish a replacement. Readers pin the one they read from, so the runs
+     * it lists stay open until every reader is done with it.
+     */
+    private static final class Tables {
+        final Memtable active;
+        /**
+         * Memtables awaiting a flush, newest first.
+         */
+        final List<Memtable> frozen;
+        /**
+         * Runs, newest first.
+         */
+        final List<SortedRun> runs;
+        final AtomicInteger readers = new AtomicInteger();
+        volatile boolean retired;
+
+        Tables(Memtable active, List<Memtable> frozen, List<SortedRun> runs) {
+            this.active = active;
+            this.frozen = frozen;
+            this.runs = runs;
+        }
+    }
+
+    private final Path directory;
+    private final int maxLevel;
+    private final int memtableLimit;
+    private final int maxRuns;
+    private final Executor background;
+    private final BackoffPolicy backoff = BackoffPolicy.DEFAULT;
+    /**
+     * Serialises flushes and compactions, which do their I/O without holding this
+     * list's monitor. The monitor guards publishing tables, ids and retired.
+     */
+    private final Object maintenance = new Object();
+    private volatile Tables tables;
+    /**
+     * Replaced tables that readers may still hold, oldest first.
+     */
+    private final ArrayDeque<Tables> retired = new ArrayDeque<>();
+    private long nextId;
+    private volatile boolean closed;
+
+    /**
+     * Opens a list in directory, picking up the runs already there.
+     * @param directory Where runs are kept
+     * @param memtableLimit Entries a memtable holds before it is flushed
+     * @param background Runs flushes and compactions, for example a single-thread executor
+     * @throws IOException if the directory or a run in it cannot be read
+     */
+    public LsmSkipList(Path directory, int memtableLimit, Executor background)
+            throws IOException {
+        this(directory, 16, memtableLimit, DEFAULT_MAX_RUNS, background);
+    }
+
+    /**
+     * Opens a list in directory, picking up the runs already there.
+     * @param directory Where runs are kept
+     * @param maxLevel The maximum level for each memtable
+     * @param memtableLimit Entries a memtable holds before it is flushed
+     * @param maxRuns Runs kept before a compaction merges some of them
+     * @param background Runs flushes and compactions, for example a single-thread executor
+     * @throws IOException if the directory or a run in it cannot be read
+     */
+    public LsmSkipList(Path directory, int maxLevel, int memtableLimit, int maxRuns,
+                       Executor background) throws IOException {
+        if (memtableLimit < 1 || maxRuns < 1) {
+            throw new IllegalArgumentException("Limits must be positive");
+        }
+        this.directory = Files.createDirectories(directory);
+        this.maxLevel = maxLevel;
+        this.memtableLimit = memtableLimit;
+        this.maxRuns = maxRuns;
+        this.background = background;
+
+        List<SortedRun> runs = openRuns(directory);
+        this.nextId = runs.isEmpty() ? 0 : runs.get(0).last + 1;
+        this.tables = new Tables(newMemtable(), Collections.emptyList(), runs);
+    }
+
+    /**
+     * Opens every run in directory, newest first, deleting temporary files left by an
+     * interrupted write and runs a finished compaction replaced.
+     */
+    private static List<SortedRun> openRuns(Path directory) throws IOException {
+        List<SortedRun> runs = new ArrayList<>();
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "run-*")) {
+            for (Path file : files) {
+                if (SortedRun.isRun(file.getFileName())) {
+                    runs.add(SortedRun.open(file));
+                }
+                else if (file.getFileName().toString().endsWith(".tmp")) {
+                    Files.delete(file);
+                }
+            }
+        }
+        catch (IOException | RuntimeException e) {
+            for (SortedRun run : runs) {
+                run.close();
+            }
+            throw e;
+        }
+
+        runs.sort((a, b) -> a.last != b.last ? Long.compare(b.last, a.last)
+                : Long.compare(a.first, b.first));
+        List<SortedRun> live = new ArrayList<>();
+        for (SortedRun run : runs) {
+            if (!live.isEmpty() && live.get(live.size() - 1).covers(run)) {
+                run.discard();
+            }
+            else {
+                live.add(run);
+            }
+        }
+        return live;
+    }
+
+    private synchronized Memtable newMemtable() {
+        return new Memtable(nextId++, maxLevel);
+    }
+
+    /**
+     * Adds key.
+     * @param key The key to add
+     * @throws IllegalStateException if the list is closed
+     */
+    public void add(int key) {
+        write(key, Boolean.TRUE);
+    }
+
+    /**
+     * Removes key, by writing a tombstone that hides older entries for it.
+     * @param key The key to remove
+     * @throws IllegalStateException if the list is closed
+     */
+    public void remove(int key) {
+        write(key, Boolean.FALSE);
+    }
+
+    private void write(int key, Boolean live) {
+        while (true) {
+            ensureOpen();
+            Memtable memtable = tables.active;
+            memtable.writers.incrementAndGet();
+            try {
+                if (memtable.frozen) {
+                    // Lost the race with a freeze; the fresh memtable is published next
+                    continue;
+                }
+                memtable.entries.put(key, live);
+            }
+            finally {
+                memtable.writers.decrementAndGet();
+            }
+            if (memtable.entries.size() >= memtableLimit) {
+                freeze(memtable);
+            }
+            return;
+        }
+    }
+
+    /**
+     * Swaps a fresh memtable in for full, unless another writer already did, and
+     * schedules the flush.
+     */
+    private void freeze(Memtable full) {
+        synchronized (this) {
+            Tables current = tables;
+            if (current.active != full || closed) {
+                return;
+            }
+            full.frozen = true;
+            publish(new Tables(newMemtable(), prepend(full, current.frozen), current.runs));
+        }
+        background.execute(this::maintain);
+    }
+
+    private static <T> List<T> prepend(T first, List<T> rest) {
+        List<T> list = new ArrayList<>(rest.size() + 1);
+        list.add(first);
+        list.addAll(rest);
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Replaces the published tables. Called holding this list's monitor.
+     */
+    private void publish(Tables next) {
+        Tables previous = tables;
+        tables = next;
+        previous.retired = true;
+        retired.addLast(previous);
+        reclaim();
+    }
+
+    /**
+     * Pins the current tables so the runs they list stay open. Pair with {@link #release}.
+     */
+    private Tables acquire() {
+        while (true) {
+            Tables current = tables;
+            current.readers.incrementAndGet();
+            if (current == tables) {
+                return current;
+            }
+            release(current);
+        }
+    }
+
+    private void release(Tables pinned) {
+        if (pinned.readers.decrementAndGet() == 0 && pinned.retired) {
+            reclaim();
+        }
+    }
+
+    /**
+     * Discards runs that no pinned tables list any more. Tables are reclaimed oldest
+     * first, so a run dropped between two tables is discarded once the older is unpinned.
+     */
+    private synchronized void reclaim() {
+        while (!retired.isEmpty() && retired.peekFirst().readers.get() == 0) {
+            Tables oldest = retired.pollFirst();
+            Tables newer = retired.isEmpty() ? tables : retired.peekFirst();
+            for (SortedRun run : oldest.runs) {
+                if (!newer.runs.contains(run)) {
+                    run.discard();
+                }
+            }
+        }
+    }
+
+    /**
+     * Flushes frozen memtables, then compacts if too many runs pile up.
+     */
+    private void maintain() {
+        synchronized (maintenance) {
+            if (closed) {
+                return;
+            }
+            try {
+                flushFrozen();
+                if (tables.runs.size() > maxRuns) {
+                    compact();
+                }
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Flushes frozen memtables to runs, oldest first. A memtable that fails to flush
+     * stays frozen, and is still read from, until the next flush.
+     */
+    private void flushFrozen() throws IOException {
+        while (true) {
+            List<Memtable> frozen = tables.frozen;
+            if (frozen.isEmpty()) {
+                return;
+            }
+            Memtable oldest = frozen.get(frozen.size() - 1);
+            for (int attempt = 0; oldest.writers.get() != 0; attempt += 1) {
+                backoff.backoff(attempt);
+            }
+
+            SortedRun run = null;
+            if (oldest.entries.size() > 0) {
+                run = SortedRun.write(directory, oldest.id, oldest.id,
+                        new MemtableCursor(oldest, Integer.MIN_VALUE), oldest.entries.size());
+            }
+            synchronized (this) {
+                Tables current = tables;
+                List<SortedRun> runs = run == null ? current.runs : prepend(run, current.runs);
+                publish(new Tables(current.active,
+                        current.frozen.subList(0, current.frozen.size() - 1), runs));
+            }
+        }
+    }
+
+    /**
+     * Merges tiers of runs until at most maxRuns remain. Flushes wait meanwhile, so the
+     * runs do not change under a merge.
+     */
+    private void compact() throws IOException {
+        while (tables.runs.size() > maxRuns) {
+            List<SortedRun> runs = tables.runs;
+            long[] sizes = new long[runs.size()];
+            for (int i = 0; i < sizes.length; i++) {
+                sizes[i] = runs.get(i).entries;
+            }
+            int[] tier = pickTier(sizes);
+            int newest = tier[0];
+            int oldest = tier[1];
+            SortedRun.Cursor[] cursors = new SortedRun.Cursor[oldest - newest + 1];
+            long entries = 0;
+            for (int i = newest; i <= oldest; i++) {
+                cursors[i - newest] = runs.get(i).cursor(Integer.MIN_VALUE);
+                entries += runs.get(i).entries;
+            }
+            // Tombstones may only go once nothing older is left for them to hide
+            boolean dropTombstones = oldest == runs.size() - 1;
+            SortedRun merged = SortedRun.write(directory, runs.get(oldest).first,
+                    runs.get(newest).last, new MergeCursor(cursors, dropTombstones), entries);
+            synchronized (this) {
+                Tables current = tables;
+                List<SortedRun> replaced = new ArrayList<>(runs.subList(0, newest));
+                replaced.add(merged);
+                replaced.addAll(runs.subList(oldest + 1, runs.size()));
+                publish(new Tables(current.active, current.frozen,
+                        Collections.unmodifiableList(replaced)));
+            }
+        }
+    }
+
+    /**
+     * Picks the newest tier of at least two adjacent runs, each older run joining while it
+     * holds at most {@link #TIER_RATIO} times the tier's average entries. Failing that,
+     * as when run sizes grow too fast for any two neighbours to match, picks the adjacent
+     * pair with the fewest entries between them.
+     * @param sizes The entries in each run, newest first
+     * @return the indexes of the tier's newest and oldest runs
+     */
+    static int[] pickTier(long[] sizes) {
+        for (int newest = 0; newest < sizes.length - 1; newest++) {
+            long total = sizes[newest];
+            int oldest = newest;
+            while (oldest + 1 < sizes.length
+                    && sizes[oldest + 1] * (oldest - newest + 1) <= TIER_RATIO * total) {
+                oldest += 1;
+                total += sizes[oldest];
+            }
+            if (oldest > newest) {
+                return new int[] {newest, oldest};
+            }
+        }
+
+        int cheapest = 0;
+        for (int i = 1; i < sizes.length - 1; i++) {
+            if (sizes[i] + sizes[i + 1] < sizes[cheapest] + sizes[cheapest + 1]) {
+                cheapest = i;
+            }
+        }
+        return new int[] {cheapest, cheapest + 1};
+    }
+
+    /**
+     * Determines if key is present.
+     * @param key The key to look for
+     * @return true if the newest entry for key adds it
+     * @throws UncheckedIOException if a run cannot be read
+     * @throws IllegalStateException if the list is closed
+     */
+    public boolean contains(int key) {
+        ensureOpen();
+        Tables pinned = acquire();
+        try {
+            Boolean live = pinned.active.entries.get(key);
+            for (int i = 0; live == null && i < pinned.frozen.size(); i++) {
+                live = pinned.frozen.get(i).entries.get(key);
+            }
+            if (live != null) {
+                return live;
+            }
+            for (SortedRun run : pinned.runs) {
+                int found = run.lookup(key);
+                if (found != SortedRun.ABSENT) {
+                    return found == SortedRun.LIVE;
+                }
+            }
+            return false;
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            release(pinned);
+        }
+    }
+
+    /**
+     * Passes each present key in [fromInclusive, toExclusive) to action, in ascending
+     * order, merging the memtables and runs. Like iteration over the in-memory lists,
+     * sees each key as it was at some point during the call.
+     * @param fromInclusive The lowest key to visit
+     * @param toExclusive The key to stop before
+     * @param action Receives each key
+     * @throws UncheckedIOException if a run cannot be read
+     * @throws IllegalStateException if the list is closed
+     */
+    public void scan(int fromInclusive, int toExclusive, IntConsumer action) {
+        ensureOpen();
+        Tables pinned = acquire();
+        try {
+            List<SortedRun.Cursor> cursors = new ArrayList<>();
+            cursors.add(new MemtableCursor(pinned.active, fromInclusive));
+            for (Memtable memtable : pinned.frozen) {
+                cursors.add(new MemtableCursor(memtable, fromInclusive));
+            }
+            for (SortedRun run : pinned.runs) {
+                cursors.add(run.cursor(fromInclusive));
+            }
+            MergeCursor merged = new MergeCursor(
+                    cursors.toArray(new SortedRun.Cursor[0]), true);
+            for (; !merged.done() && merged.key() < toExclusive; merged.next()) {
+                action.accept(merged.key());
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        finally {
+            release(pinned);
+        }
+    }
+
+    private void ensureOpen() {
+        if (closed) {
+            throw new IllegalStateException("List closed");
+        }
+    }
+
+    /**
+     * Counts the runs on disk.
+     * @return the number of runs lookups may read
+     */
+    public int runCount() {
+        return tables.runs.size();
+    }
+
+    /**
+     * Counts the entries, tombstones included, held in memory.
+     * @return the entries in the active and frozen memtables
+     */
+    public int memtableEntries() {
+        Tables current = tables;
+        int entries = current.active.entries.size();
+        for (Memtable memtable : current.frozen) {
+            entries += memtable.entries.size();
+        }
+        return entries;
+    }
+
+    /**
+     * Flushes every memtable and closes the runs. Call once other threads have stopped
+     * using the list.
+     * @throws IOException if a flush fails; the list is closed regardless
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (maintenance) {
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                Tables current = tables;
+                current.active.frozen = true;
+                publish(new Tables(newMemtable(), prepend(current.active, current.frozen),
+                        current.runs));
+            }
+            try {
+                flushFrozen();
+            }
+            finally {
+                for (SortedRun run : tables.runs) {
+                    run.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Walks a memtable's entries, tombstones included, from a key onwards.
+     */
+    private static final class MemtableCursor implements SortedRun.Cursor {
+        private final Iterator<Map.Entry<Integer, Boolean>> entries;
+        private Map.Entry<Integer, Boolean> entry;
+
+        MemtableCursor(Memtable memtable, int fromKey) {
+            this.entries = memtable.entries.tailIterator(fromKey);
+            next();
+        }
+
+        @Override
+        public boolean done() {
+            return entry == null;
+        }
+
+        @Override
+        public int key() {
+            return entry.getKey();
+        }
+
+        @Override
+        public boolean live() {
+            return entry.getValue();
+        }
+
+        @Override
+        public void next() {
+            entry = entries.hasNext() ? entries.next() : null;
+        }
+    }
+
+    /**
+     * Merges cursors given newest first, so for each key the newest cursor's entry wins.
+     */
+    private static final class MergeCursor implements SortedRun.Cursor {
+        private final SortedRun.Cursor[] sources;
+        private final boolean dropTombstones;
+        private int key;
+        private boolean live;
+        private boolean done;
+
+        MergeCursor(SortedRun.Cursor[] sources, boolean dropTombstones) throws IOException {
+            this.sources = sources;
+            this.dropTombstones = dropTombstones;
+            settle();
+        }
+
+        @Override
+        public boolean done() {
+            return done;
+        }
+
+        @Override
+        public int key() {
+            return key;
+        }
+
+        @Override
+        public boolean live() {
+            return live;
+        }
+
+        @Override
+        public void next() throws IOException {
+            skip(key);
+            settle();
+        }
+
+        /**
+         * Moves onto the lowest key any source is at, skipping tombstones if asked.
+         */
+        private void settle() throws IOException {
+            while (true) {
+                SortedRun.Cursor newest = null;
+                for (SortedRun.Cursor source : sources) {
+                    if (!source.done() && (newest == null || source.key() < newest.key())) {
+                        newest = source;
+                    }
+                }
+                if (newest == null) {
+                    done = true;
+                    return;
+                }
+                key = newest.key();
+                live = newest.live();
+                if (live || !dropTombstones) {
+                    return;
+                }
+                skip(key);
+            }
+        }
+
+        private void skip(int skipped) throws IOException {
+            for (SortedRun.Cursor source : sources) {
+                if (!source.done() && source.key() == skipped) {
+                    source.next();
+                }
+            }
+        }
+    }
+}
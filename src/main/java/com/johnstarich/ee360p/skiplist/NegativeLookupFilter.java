@@ -0,0 +1,325 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+
+/**
+ * A blocked counting Bloom filter that lets a skip list answer most lookups for absent keys
+ * without searching. Each key maps to one 64-byte block of sixteen-per-long 4-bit counters,
+ * so a check touches a single cache line, and counters let removals clear keys again.
+ * A counter that reaches 15 sticks there, since its true count is no longer known.
+ * When the observed false-positive rate drifts past {@link #REBUILD_RATE}, or the list grows
+ * past the capacity the filter was sized for, the filter is rebuilt from the list's keys
+ * on a background executor while lookups keep using the old one.
+ * A filter belongs to the one list it was passed to.
+ */
+public class NegativeLookupFilter {
+    /**
+     * Observed false-positive rate above which the filter is rebuilt.
+     */
+    public static final double REBUILD_RATE = 0.01;
+
+    /**
+     * Absent-key lookups to observe before trusting the false-positive rate.
+     */
+    static final int MIN_SAMPLES = 4096;
+
+    private static final int COUNTERS_PER_KEY = 16;
+    private static final int LONGS_PER_BLOCK = 8;
+    private static final int COUNTERS_PER_BLOCK = LONGS_PER_BLOCK * 16;
+    private static final int PROBES = 4;
+    private static final long SATURATED = 15;
+
+    /**
+     * Walks the owning list's live keys for a rebuild.
+     */
+    interface KeySource {
+        void forEachKey(LongConsumer action);
+    }
+
+    /**
+     * One generation of counters. A table is complete once it counts every key that was
+     * live when it finished building, and only complete tables are ever decremented.
+     */
+    static final class Table {
+        final AtomicLongArray counters;
+        final int blocks;
+        final int capacity;
+        final LongAdder keys = new LongAdder();
+        volatile boolean complete;
+
+        Table(int capacity, boolean complete) {
+            this.capacity = Math.max(capacity, 1);
+            this.blocks = Math.max(1,
+                    (int) ((long) this.capacity * COUNTERS_PER_KEY / COUNTERS_PER_BLOCK));
+            this.counters = new AtomicLongArray(blocks * LONGS_PER_BLOCK);
+            this.complete = complete;
+        }
+
+        private int base(long hash) {
+            return (int) (((hash >>> 32) * blocks) >>> 32) * LONGS_PER_BLOCK;
+        }
+
+        void add(long key) {
+            keys.increment();
+            long hash = hash(key);
+            int base = base(hash);
+            for (int probe = 0; probe < PROBES; probe++, hash >>>= 7) {
+                int counter = (int) hash & (COUNTERS_PER_BLOCK - 1);
+                int slot = base + (counter >>> 4);
+                int shift = (counter & 15) * 4;
+                long word;
+                do {
+                    word = counters.get(slot);
+                } while (((word >>> shift) & SATURATED) != SATURATED
+                        && !counters.compareAndSet(slot, word, word + (1L << shift)));
+            }
+        }
+
+        void remove(long key) {
+            keys.decrement();
+            long hash = hash(key);
+            int base = base(hash);
+            for (int probe = 0; probe < PROBES; probe++, hash >>>= 7) {
+                int counter = (int) hash & (COUNTERS_PER_BLOCK - 1);
+                int slot = base + (counter >>> 4);
+                int shift = (counter & 15) * 4;
+                long word;
+                long count;
+                do {
+                    word = counters.get(slot);
+                    count = (word >>> shift) & SATURATED;
+                } while (count != SATURATED && count != 0
+                        && !counters.compareAndSet(slot, word, word - (1L << shift)));
+            }
+        }
+
+        boolean mightContain(long key) {
+            long hash = hash(key);
+            int base = base(hash);
+            for (int probe = 0; probe < PROBES; probe++, hash >>>= 7) {
+                int counter = (int) hash & (COUNTERS_PER_BLOCK - 1);
+                if (((counters.get(base + (counter >>> 4)) >>> ((counter & 15) * 4))
+                        & SATURATED) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private final int expectedKeys;
+    private final Executor rebuilder;
+    private volatile Table current;
+    /**
+     * The last complete table, consulted while current is still being built.
+     */
+    private volatile Table previous;
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+    private KeySource source;
+
+    private final LongAdder lookups = new LongAdder();
+    private final LongAdder negatives = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder windowNegatives = new LongAdder();
+    private final LongAdder windowFalsePositives = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+
+    /**
+     * Create a filter to pass to a new skip list.
+     * @param expectedKeys How many keys the first table is sized for
+     * @param rebuilder Runs background rebuilds, for example a single-thread executor
+     */
+    public NegativeLookupFilter(int expectedKeys, Executor rebuilder) {
+        this.expectedKeys = expectedKeys;
+        this.rebuilder = rebuilder;
+        this.current = new Table(expectedKeys, true);
+    }
+
+    /**
+     * Ties this filter to the list whose keys it tracks. The list must be empty.
+     */
+    synchronized void bind(KeySource keys) {
+        if (source != null) {
+            throw new IllegalStateException("Filter already belongs to a list");
+        }
+        source = keys;
+    }
+
+    static long hash(long key) {
+        key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+        key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    /**
+     * Counts key in the current table. Call once an insert is certain to link key,
+     * before its node becomes visible.
+     * @return the table counted in, to pass to {@link #inserted}
+     */
+    Table inserting(long key) {
+        Table table = current;
+        table.add(key);
+        if (table.keys.sum() > table.capacity) {
+            requestRebuild();
+        }
+        return table;
+    }
+
+    /**
+     * Counts key in a table a rebuild published while the insert was linking it.
+     * Call after releasing the insert's predecessor locks: a rebuild's walk either sees
+     * that release and the node with it, or published its table before this call reads it.
+     */
+    void inserted(long key, Table counted) {
+        Table table = current;
+        if (table != counted) {
+            table.add(key);
+        }
+    }
+
+    /**
+     * Returns the table a removal may decrement. Call before unlinking, while the node is
+     * still live: a table that is already complete then counts it.
+     * @return the table to pass to {@link #removed}, or null if none may be decremented
+     */
+    Table removing() {
+        Table table = current;
+        return table.complete ? table : null;
+    }
+
+    /**
+     * Uncounts key after it has been unlinked. A key removed while a rebuild was running
+     * stays counted, costing only a false positive until the next rebuild.
+     */
+    void removed(long key, Table counted) {
+        if (counted != null) {
+            counted.remove(key);
+        }
+    }
+
+    /**
+     * Checks whether key might be present, recording the lookup.
+     * @return false only if key is certainly absent
+     */
+    boolean mightContain(long key) {
+        lookups.increment();
+        Table table = current;
+        // Read before the counters: a table seen complete here has counted every key
+        // by the time its counters are read, but one read complete afterwards may not.
+        boolean complete = table.complete;
+        if (table.mightContain(key)) {
+            return true;
+        }
+        if (!complete) {
+            Table last = previous;
+            if (last == null || last.mightContain(key)) {
+                return true;
+            }
+        }
+        negatives.increment();
+        windowNegatives.increment();
+        return false;
+    }
+
+    /**
+     * Records that a key the filter passed was absent, rebuilding if that happens too often.
+     */
+    void falsePositive() {
+        falsePositives.increment();
+        windowFalsePositives.increment();
+        long misses = windowFalsePositives.sum();
+        long absent = misses + windowNegatives.sum();
+        if (absent >= MIN_SAMPLES && misses > absent * REBUILD_RATE) {
+            requestRebuild();
+        }
+    }
+
+    /**
+     * Schedules a rebuild on the executor unless one is already pending.
+     */
+    public void requestRebuild() {
+        if (source != null && rebuilding.compareAndSet(false, true)) {
+            rebuilder.execute(this::rebuild);
+        }
+    }
+
+    /**
+     * Builds a fresh table sized for twice the current keys from the list's live keys.
+     * The new table is published before the walk so inserts during the walk count in it,
+     * and lookups consult the old table until the walk completes.
+     */
+    private void rebuild() {
+        try {
+            Table old = current;
+            long keys = Math.max(old.keys.sum(), 0);
+            Table fresh = new Table((int) Math.min(Math.max(expectedKeys, keys * 2),
+                    Integer.MAX_VALUE / COUNTERS_PER_KEY), false);
+            previous = old;
+            current = fresh;
+            source.forEachKey(fresh::add);
+            fresh.complete = true;
+            previous = null;
+            windowNegatives.reset();
+            windowFalsePositives.reset();
+            rebuilds.increment();
+        }
+        finally {
+            rebuilding.set(false);
+        }
+    }
+
+    /**
+     * Returns how many lookups consulted the filter.
+     * @return the number of lookups
+     */
+    public long lookups() {
+        return lookups.sum();
+    }
+
+    /**
+     * Returns how many lookups the filter answered without a search.
+     * @return the number of keys the filter proved absent
+     */
+    public long negatives() {
+        return negatives.sum();
+    }
+
+    /**
+     * Returns how many lookups the filter passed for keys that turned out absent.
+     * @return the number of false positives
+     */
+    public long falsePositives() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Returns the fraction of lookups answered without a search.
+     * @return negatives divided by lookups, or 0 before any lookup
+     */
+    public double hitRate() {
+        long total = lookups.sum();
+        return total == 0 ? 0 : (double) negatives.sum() / total;
+    }
+
+    /**
+     * Returns the fraction of absent-key lookups the filter failed to reject.
+     * @return false positives divided by absent-key lookups, or 0 before any
+     */
+    public double falsePositiveRate() {
+        long misses = falsePositives.sum();
+        long absent = misses + negatives.sum();
+        return absent == 0 ? 0 : (double) misses / absent;
+    }
+
+    /**
+     * Returns how many background rebuilds have completed.
+     * @return the number of rebuilds
+     */
+    public long rebuilds() {
+        return rebuilds.sum();
+    }
+}
@@ -0,0 +1,140 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.Comparator;
+
+/**
+ * A comparator that can summarize each key as an order-preserving 64-bit prefix.
+ * Prefixes are compared as unsigned longs: if prefix(a) is below prefix(b) then a
+ * must sort before b. Equal prefixes say nothing, and the full compare decides.
+ * Skip lists cache the prefix in each node, so most comparisons never touch the key.
+ * @param <K> The key type
+ */
+public interface PrefixComparator<K> extends Comparator<K> {
+    /**
+     * Summarizes key as an order-preserving unsigned prefix.
+     * @param key The key to summarize
+     * @return the prefix, where a smaller unsigned prefix means a smaller key
+     */
+    long prefix(K key);
+
+    /**
+     * Compares two keys whose prefixes are already known.
+     * @param a The first key
+     * @param prefixA The prefix of a
+     * @param b The second key
+     * @param prefixB The prefix of b
+     * @return a negative, zero or positive number as a is less than, equal to or greater than b
+     */
+    default int compare(K a, long prefixA, K b, long prefixB) {
+        int c = Long.compareUnsigned(prefixA, prefixB);
+        return c != 0 ? c : compare(a, b);
+    }
+
+    /**
+     * Wraps a plain comparator with a constant prefix, so every comparison is a full compare.
+     * @param comparator The ordering to use
+     * @param <K> The key type
+     * @return a prefix comparator with the same ordering
+     */
+    static <K> PrefixComparator<K> of(Comparator<? super K> comparator) {
+        if (comparator instanceof PrefixComparator) {
+            @SuppressWarnings("unchecked")
+            PrefixComparator<K> prefixComparator = (PrefixComparator<K>) comparator;
+            return prefixComparator;
+        }
+        return new PrefixComparator<K>() {
+            @Override
+            public long prefix(K key) {
+                return 0L;
+            }
+
+            @Override
+            public int compare(K a, K b) {
+                return comparator.compare(a, b);
+            }
+        };
+    }
+
+    /**
+     * Orders byte arrays lexicographically, treating each byte as unsigned.
+     * The prefix is the first 8 bytes, big-endian and zero-padded.
+     */
+    PrefixComparator<byte[]> BYTES = new PrefixComparator<byte[]>() {
+        @Override
+        public long prefix(byte[] key) {
+            long prefix = 0L;
+            for (int i = 0; i < Long.BYTES; i++) {
+                prefix <<= Byte.SIZE;
+                if (i < key.length) {
+                    prefix |= key[i] & 0xFF;
+                }
+            }
+            return prefix;
+        }
+
+        @Override
+        public int compare(byte[] a, byte[] b) {
+            int length = Math.min(a.length, b.length);
+            for (int i = 0; i < length; i++) {
+                int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return a.length - b.length;
+        }
+    };
+
+    /**
+     * Orders strings by String.compareTo.
+     * The prefix is the first 4 UTF-16 chars, big-endian and zero-padded.
+     */
+    PrefixComparator<String> STRINGS = new PrefixComparator<String>() {
+        @Override
+        public long prefix(String key) {
+            long prefix = 0L;
+            for (int i = 0; i < Long.BYTES / Character.BYTES; i++) {
+                prefix <<= Character.SIZE;
+                if (i < key.length()) {
+                    prefix |= key.charAt(i);
+                }
+            }
+            return prefix;
+        }
+
+        @Override
+        public int compare(String a, String b) {
+            return a.compareTo(b);
+        }
+    };
+
+    /**
+     * Orders integers numerically. The prefix decides every comparison.
+     */
+    PrefixComparator<Integer> INTEGERS = new PrefixComparator<Integer>() {
+        @Override
+        public long prefix(Integer key) {
+            return key ^ Long.MIN_VALUE;
+        }
+
+        @Override
+        public int compare(Integer a, Integer b) {
+            return Integer.compare(a, b);
+        }
+    };
+
+    /**
+     * Orders longs numerically. The prefix decides every comparison.
+     */
+    PrefixComparator<Long> LONGS = new PrefixComparator<Long>() {
+        @Override
+        public long prefix(Long key) {
+            return key ^ Long.MIN_VALUE;
+        }
+
+        @Override
+        public int compare(Long a, Long b) {
+            return Long.compare(a, b);
+        }
+    };
+}
@@ -0,0 +1,168 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.PrimitiveIterator;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntConsumer;
+
+/**
+ * A read-only replica of a skip list, kept up to date by the frames a
+ * {@link ReplicationPrimary} ships. One thread calls {@link #receive} to apply frames
+ * while any number of threads read. A snapshot is loaded into a new list that then
+ * replaces the old one, so readers never see a half-loaded snapshot, while changes are
+ * applied to the current list one at a time, as the primary's readers saw them.
+ */
+public class ReplicationFollower {
+    private final ReplicationTransport transport;
+    private final int maxLevel;
+    private volatile FineGrainedSkipList list;
+    /**
+     * The sequence number of the next change to apply, or -1 before the first snapshot.
+     */
+    private volatile long position = -1;
+    /**
+     * The primary's next sequence number and wall-clock time when it sent the last frame
+     * applied.
+     */
+    private volatile long primaryNext;
+    private volatile long sentMillis;
+
+    /**
+     * Create a follower with an empty list, until the primary's snapshot arrives.
+     * @param transport Delivers the primary's frames
+     * @param maxLevel The maximum level for the replica's list
+     */
+    public ReplicationFollower(ReplicationTransport transport, int maxLevel) {
+        this.transport = transport;
+        this.maxLevel = maxLevel;
+        this.list = new FineGrainedSkipList(maxLevel);
+    }
+
+    /**
+     * Receives and applies one frame.
+     * @param timeout How long to wait for a frame
+     * @param unit The unit of timeout
+     * @return false if no frame arrived in time
+     * @throws IOException if the transport fails or a frame is malformed
+     * @throws IllegalStateException if a frame does not follow on from the last one applied
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean receive(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+        ByteBuffer frame = transport.receive(timeout, unit);
+        if (frame == null) {
+            return false;
+        }
+        final byte kind = frame.get();
+        final long sent = frame.getLong();
+        final long next = frame.getLong();
+
+        if (kind == ReplicationPrimary.SNAPSHOT) {
+            long resumeFrom = frame.getLong();
+            list = FineGrainedSkipList.readFrom(frame, maxLevel);
+            position = resumeFrom;
+        }
+        else if (kind == ReplicationPrimary.CHANGES) {
+            applyChanges(frame);
+        }
+        else {
+            throw new IOException("Unknown frame kind: " + kind);
+        }
+        primaryNext = next;
+        sentMillis = sent;
+        return true;
+    }
+
+    private void applyChanges(ByteBuffer frame) throws IOException {
+        long from = frame.getLong();
+        final long to = frame.getLong();
+        int count = frame.getInt();
+        if (position < 0) {
+            throw new IllegalStateException("Changes arrived before a snapshot");
+        }
+        if (from != position) {
+            throw new IllegalStateException("Expected changes from " + position
+                    + " but the frame starts at " + from);
+        }
+        if (count < 0 || frame.remaining() != (long) count * ReplicationPrimary.CHANGE_BYTES) {
+            throw new IOException("Frame holds " + frame.remaining() + " bytes for " + count
+                    + " changes");
+        }
+
+        FineGrainedSkipList target = list;
+        for (int i = 0; i < count; i++) {
+            int key = frame.getInt();
+            if (frame.get() != 0) {
+                target.add(key);
+            }
+            else {
+                target.remove(key);
+            }
+        }
+        position = to;
+    }
+
+    /**
+     * Determines if the replica holds key.
+     * @param key The key to look for
+     * @return true if key was present as of the last change applied
+     */
+    public boolean contains(int key) {
+        return list.contains(key);
+    }
+
+    /**
+     * Counts the keys in the replica.
+     * @return the replica's size
+     */
+    public int size() {
+        return list.size();
+    }
+
+    /**
+     * Passes each key in the replica to action, in ascending order.
+     * @param action Receives each key
+     */
+    public void forEach(IntConsumer action) {
+        for (PrimitiveIterator.OfInt keys = list.intIterator(); keys.hasNext(); ) {
+            action.accept(keys.nextInt());
+        }
+    }
+
+    /**
+     * Determines if the first snapshot has been applied.
+     * @return true once the replica mirrors the primary
+     */
+    public boolean bootstrapped() {
+        return position >= 0;
+    }
+
+    /**
+     * Returns the sequence number of the next change the replica needs.
+     * @return the replica's position in the primary's change stream, or -1 before the
+     *     first snapshot
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Counts the changes the primary had committed, as of the last frame applied, that
+     * the replica has not. Changes made since that frame was sent are not counted.
+     * @return how many sequence numbers the replica is behind
+     */
+    public long sequencesBehind() {
+        return bootstrapped() ? Math.max(0, primaryNext - position) : primaryNext;
+    }
+
+    /**
+     * Measures how stale the replica is, as the time since the primary sent the last
+     * frame applied. The primary sends a frame on every ship, even with nothing new, so
+     * this stays small while the follower keeps up. Compares wall clocks, which agree
+     * for processes on the same host.
+     * @return milliseconds since the last applied frame was sent, or -1 before any
+     */
+    public long millisBehind() {
+        return bootstrapped() ? Math.max(0, System.currentTimeMillis() - sentMillis) : -1;
+    }
+}
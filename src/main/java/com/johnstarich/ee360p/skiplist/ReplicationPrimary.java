@@ -0,0 +1,139 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Ships a skip list's committed changes to a read-only {@link ReplicationFollower}.
+ * The list must have been created with a {@link ChangeStream}. The first call to
+ * {@link #ship} subscribes to the stream and sends a snapshot of the list; each later
+ * call sends the changes committed since, in sequence order, as one batch.
+ * Following the stream's mirroring protocol, the snapshot is taken after subscribing,
+ * so a change it already reflects is sent again, and the follower applies changes
+ * idempotently. If the primary falls a whole ring behind, it bootstraps the follower
+ * again with a fresh snapshot.
+ *
+ * <p>Frames start with a kind byte, the primary's wall-clock send time and the stream's
+ * next sequence number, from which the follower measures its lag. A snapshot frame adds
+ * the position its changes resume from and the list in the {@link FineGrainedSkipList#writeTo}
+ * format. A changes frame adds the positions before and after the batch, the number of
+ * changes, and each change's key and a byte that is 1 for an insert.
+ * One thread ships at a time.
+ */
+public class ReplicationPrimary implements AutoCloseable {
+    static final byte SNAPSHOT = 1;
+    static final byte CHANGES = 2;
+    static final int HEADER_BYTES = 1 + 2 * Long.BYTES;
+    static final int CHANGE_BYTES = Integer.BYTES + 1;
+
+    private final FineGrainedSkipList list;
+    private final ChangeStream changes;
+    private final ReplicationTransport transport;
+    private final int batchSize;
+    private ChangeStream.Subscription subscription;
+    private long snapshots;
+
+    /**
+     * Create a primary for a list.
+     * @param list The list to replicate, created with a change stream
+     * @param transport Carries frames to the follower
+     * @param batchSize The most changes sent in one frame
+     */
+    public ReplicationPrimary(FineGrainedSkipList list, ReplicationTransport transport,
+                              int batchSize) {
+        if (list.changes == null) {
+            throw new IllegalArgumentException("List has no change stream to ship");
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+        }
+        this.list = list;
+        this.changes = list.changes;
+        this.transport = transport;
+        this.batchSize = batchSize;
+    }
+
+    private ByteBuffer frame(byte kind, int bodyBytes) {
+        ByteBuffer frame = ByteBuffer.allocate(HEADER_BYTES + bodyBytes);
+        frame.put(kind);
+        frame.putLong(System.currentTimeMillis());
+        frame.putLong(changes.nextSequence());
+        return frame;
+    }
+
+    /**
+     * Subscribes afresh and sends a snapshot of the list.
+     */
+    private void bootstrap() throws IOException {
+        if (subscription != null) {
+            subscription.close();
+        }
+        subscription = changes.subscribe();
+        ByteArrayOutputStream copy = new ByteArrayOutputStream();
+        list.writeTo(copy);
+
+        ByteBuffer frame = frame(SNAPSHOT, Long.BYTES + copy.size());
+        frame.putLong(subscription.position());
+        frame.put(copy.toByteArray());
+        frame.flip();
+        transport.send(frame);
+        snapshots += 1;
+    }
+
+    /**
+     * Sends the next batch of changes, or a snapshot on the first call or after falling
+     * a whole ring behind. A batch may be empty; sending it anyway keeps the follower's
+     * lag current while the list is idle.
+     * @return the number of changes shipped, 0 if a snapshot was sent instead
+     * @throws IOException if the transport fails
+     */
+    public int ship() throws IOException {
+        if (subscription == null) {
+            bootstrap();
+            return 0;
+        }
+
+        ByteBuffer frame = frame(CHANGES, 2 * Long.BYTES + Integer.BYTES
+                + batchSize * CHANGE_BYTES);
+        long from = subscription.position();
+        frame.putLong(from);
+        int countAt = frame.position() + Long.BYTES;
+        frame.position(countAt + Integer.BYTES);
+        int shipped;
+        try {
+            shipped = subscription.poll((sequence, key, inserted) -> {
+                frame.putInt(key);
+                frame.put((byte) (inserted ? 1 : 0));
+            }, batchSize);
+        }
+        catch (ChangeStream.OverrunException e) {
+            bootstrap();
+            return 0;
+        }
+        frame.putLong(countAt - Long.BYTES, subscription.position());
+        frame.putInt(countAt, shipped);
+        frame.flip();
+        transport.send(frame);
+        return shipped;
+    }
+
+    /**
+     * Counts the snapshots sent, including the first.
+     * @return how many times the follower was bootstrapped
+     */
+    public long snapshots() {
+        return snapshots;
+    }
+
+    /**
+     * Stops following the change stream. The list stops publishing once it has no
+     * other subscribers.
+     */
+    @Override
+    public void close() {
+        if (subscription != null) {
+            subscription.close();
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Carries replication frames from a {@link ReplicationPrimary} to a
+ * {@link ReplicationFollower}, whole and in the order they were sent.
+ * The primary only sends and the follower only receives, so one transport object
+ * may serve as both ends, as {@link #inMemory} does, or each process may hold its
+ * own end of a connection, as with {@link SocketTransport}.
+ */
+public interface ReplicationTransport {
+    /**
+     * Sends a frame, waiting if the transport applies backpressure.
+     * The transport owns the frame afterwards.
+     * @param frame The frame, from its position to its limit
+     * @throws IOException if the frame cannot be sent
+     */
+    void send(ByteBuffer frame) throws IOException;
+
+    /**
+     * Receives the next frame.
+     * @param timeout How long to wait for a frame to start arriving
+     * @param unit The unit of timeout
+     * @return the frame, or null if none arrived in time
+     * @throws IOException if the transport fails or delivers a malformed frame
+     * @throws InterruptedException if interrupted while waiting
+     */
+    ByteBuffer receive(long timeout, TimeUnit unit) throws IOException, InterruptedException;
+
+    /**
+     * Creates a transport that hands frames across threads of one process, for tests
+     * and for followers in the same JVM.
+     * @param capacity Frames in flight before send waits for the follower
+     * @return a transport to pass to both the primary and the follower
+     */
+    static ReplicationTransport inMemory(int capacity) {
+        BlockingQueue<ByteBuffer> frames = new ArrayBlockingQueue<>(capacity);
+        return new ReplicationTransport() {
+            @Override
+            public void send(ByteBuffer frame) throws IOException {
+                try {
+                    frames.put(frame);
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted sending a frame");
+                }
+            }
+
+            @Override
+            public ByteBuffer receive(long timeout, TimeUnit unit) throws InterruptedException {
+                return frames.poll(timeout, unit);
+            }
+        };
+    }
+}
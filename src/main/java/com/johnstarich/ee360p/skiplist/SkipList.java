@@ -1,5 +1,10 @@
 package com.johnstarich.ee360p.skiplist;
 
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
 import java.util.AbstractSet;
 import java.util.Iterator;
 import java.util.Random;
@@ -39,6 +44,7 @@ public class SkipList extends AbstractSet<Integer> {
 	final AtomicInteger size;
 	final int maxLevel;
 	final float p = 0.5f;
+	final BackoffPolicy backoff;
 
 	/**
 	 * Create a skip list with a maximum level.
@@ -46,9 +52,20 @@ public class SkipList extends AbstractSet<Integer> {
 	 * @param maxLevel The maximum level for this SkipList
 	 */
 	public SkipList(int maxLevel) {
+		this(maxLevel, BackoffPolicy.DEFAULT);
+	}
+
+	/**
+	 * Create a skip list with a maximum level and a contention policy.
+	 * Use {@link BackoffPolicy#PARKING} when callers run on virtual threads.
+	 * @param maxLevel The maximum level for this SkipList
+	 * @param backoff How threads wait before retrying a failed compare-and-set
+	 */
+	public SkipList(int maxLevel, BackoffPolicy backoff) {
 		this.currentLevels = new AtomicInteger(0);
 		this.size = new AtomicInteger(0);
 		this.maxLevel = maxLevel;
+		this.backoff = backoff;
 		Node headerNode = new Node(Integer.MAX_VALUE, Integer.MAX_VALUE, 0, maxLevel);
 		header = new AtomicMarkableReference<>(headerNode, true);
 		for (int level = 0; level < maxLevel; level += 1) {
@@ -78,7 +95,10 @@ public class SkipList extends AbstractSet<Integer> {
 			update[level] = currentNode;
 		}
 		if (levels > 0) {
-			while (! current.compareAndSet(nextNode, nextNode, true, false));
+			int attempt = 0;
+			while (! current.compareAndSet(nextNode, nextNode, true, false)) {
+				backoff.backoff(attempt++);
+			}
 		}
 
 		do {
@@ -142,7 +162,10 @@ public class SkipList extends AbstractSet<Integer> {
 			update[level] = currentNode;
 		}
 		if (levels > 0) {
-			while (! current.compareAndSet(nextNode, nextNode, true, false));
+			int attempt = 0;
+			while (! current.compareAndSet(nextNode, nextNode, true, false)) {
+				backoff.backoff(attempt++);
+			}
 		}
 
 		do {
@@ -176,10 +199,11 @@ public class SkipList extends AbstractSet<Integer> {
 
 			for (int level = 0; level < oldLevels; level++) {
 				AtomicMarkableReference<Node> link = update[level].forward[level];
-				Node next;
-				do {
+				Node next = link.getReference();
+				for (int attempt = 0; ! link.attemptMark(next, true); attempt++) {
+					backoff.backoff(attempt);
 					next = link.getReference();
-				} while (! link.attemptMark(next, true));
+				}
 			}
 
 			return true;
@@ -224,6 +248,100 @@ public class SkipList extends AbstractSet<Integer> {
 		return newLevel;
 	}
 
+	/**
+	 * Writes the values in the same delta-varint format as {@link FineGrainedSkipList#writeTo},
+	 * walking level 0 and skipping nodes marked for removal.
+	 * Bytes are written one at a time, so wrap unbuffered streams in a buffer.
+	 * @param out The stream to write to
+	 * @throws IOException if the stream fails
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		encode(new DeltaVarintCodec.Encoder<>(out::write));
+	}
+
+	/**
+	 * Writes the values in the compact delta-varint format into a buffer.
+	 * @param buffer The buffer to write to
+	 * @throws java.nio.BufferOverflowException if the buffer fills up
+	 */
+	public void writeTo(ByteBuffer buffer) {
+		encode(new DeltaVarintCodec.Encoder<>(b -> buffer.put((byte) b)));
+	}
+
+	private <E extends Exception> void encode(DeltaVarintCodec.Encoder<E> encoder) throws E {
+		for (AtomicMarkableReference<Node> current = header.getReference().forward[0];
+				current != header; current = current.getReference().forward[0]) {
+			Node currentNode = current.getReference();
+			if (!currentNode.markedForRemoval) {
+				encoder.add(currentNode.key);
+			}
+		}
+		encoder.finish();
+	}
+
+	/**
+	 * Reads a set written by {@link #writeTo} into a new list. Keys arrive in order, so
+	 * each is appended after the last node on every level, as insert would link it.
+	 * @param in The stream to read from
+	 * @param maxLevel The maximum level for the new list
+	 * @return a list of the decoded values
+	 * @throws IOException if the stream fails, ends early or holds a malformed set
+	 */
+	public static SkipList readFrom(InputStream in, int maxLevel) throws IOException {
+		return decode(new DeltaVarintCodec.Decoder<>(() -> {
+			int b = in.read();
+			if (b < 0) {
+				throw new EOFException("Set ended without a terminator");
+			}
+			return b;
+		}), maxLevel);
+	}
+
+	/**
+	 * Reads a set written by {@link #writeTo} from a buffer into a new list.
+	 * @param buffer The buffer to read from
+	 * @param maxLevel The maximum level for the new list
+	 * @return a list of the decoded values
+	 * @throws IOException if the buffer holds a malformed set
+	 * @throws java.nio.BufferUnderflowException if the buffer ends early
+	 */
+	public static SkipList readFrom(ByteBuffer buffer, int maxLevel) throws IOException {
+		return decode(new DeltaVarintCodec.Decoder<>(() -> buffer.get() & 0xFF), maxLevel);
+	}
+
+	private static <E extends Exception> SkipList decode(
+			DeltaVarintCodec.Decoder<E> decoder, int maxLevel) throws IOException, E {
+		SkipList list = new SkipList(maxLevel);
+		Node[] last = new Node[maxLevel];
+		int levels = 0;
+		int count = 0;
+		while (decoder.advance()) {
+			long key = decoder.key();
+			if (key < Integer.MIN_VALUE || key >= Integer.MAX_VALUE) {
+				throw new IOException("Key out of range: " + key);
+			}
+			int newLevel = list.chooseRandomLevel();
+			if (newLevel >= levels) {
+				last[levels] = list.header.getReference();
+				levels += 1;
+				newLevel = levels - 1;
+			}
+
+			Node newNode = list.new Node((int) key, (int) key, newLevel, maxLevel);
+			AtomicMarkableReference<Node> atomicNewNode =
+					new AtomicMarkableReference<>(newNode, true);
+			for (int level = 0; level < levels; level++) {
+				newNode.forward[level] = last[level].forward[level];
+				last[level].forward[level] = atomicNewNode;
+				last[level] = newNode;
+			}
+			count += 1;
+		}
+		list.currentLevels.set(levels);
+		list.size.set(count);
+		return list;
+	}
+
 	public int size() {
 		return size.get();
 	}
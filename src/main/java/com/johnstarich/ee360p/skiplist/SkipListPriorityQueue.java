@@ -0,0 +1,163 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.AbstractQueue;
+import java.util.Iterator;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * A concurrent priority queue of distinct integers backed by a {@link FineGrainedSkipList}.
+ * {@link #poll()} always removes the smallest value. {@link #pollApproxFirst()} trades
+ * that guarantee for throughput: like a SprayList, each poller takes a short random walk
+ * down the towers and claims a value among the first O(p log^3 p), so p pollers rarely
+ * touch the same node.
+ */
+public class SkipListPriorityQueue extends AbstractQueue<Integer> {
+    final FineGrainedSkipList list;
+
+    /**
+     * Level the spray starts on, about log p + 1.
+     */
+    final int sprayHeight;
+    /**
+     * Longest jump taken on one level, about log^3 p / the number of levels visited.
+     */
+    final int sprayJump;
+    /**
+     * Levels descended between jumps, max(1, log log p).
+     */
+    final int sprayDescent;
+
+    /**
+     * Create a priority queue tuned for as many pollers as there are processors.
+     * @param maxLevel The maximum level for the backing list
+     */
+    public SkipListPriorityQueue(int maxLevel) {
+        this(maxLevel, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Create a priority queue.
+     * @param maxLevel The maximum level for the backing list
+     * @param pollers The expected number of concurrent pollers, which sets the spray width
+     */
+    public SkipListPriorityQueue(int maxLevel, int pollers) {
+        this(new FineGrainedSkipList(maxLevel), pollers);
+    }
+
+    /**
+     * Create a priority queue over an existing list.
+     * @param list The list holding the queued values
+     * @param pollers The expected number of concurrent pollers, which sets the spray width
+     */
+    public SkipListPriorityQueue(FineGrainedSkipList list, int pollers) {
+        if (pollers < 1) {
+            throw new IllegalArgumentException("Pollers must be positive: " + pollers);
+        }
+        this.list = list;
+        int logP = ceilLog2(pollers);
+        this.sprayDescent = Math.max(1, ceilLog2(logP));
+        this.sprayHeight = Math.min(logP + 1, list.maxLevel - 1);
+        int levelsVisited = sprayHeight / sprayDescent + 1;
+        this.sprayJump = Math.max(1, logP * logP * logP / levelsVisited);
+    }
+
+    private static int ceilLog2(int n) {
+        return n <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(n - 1);
+    }
+
+    /**
+     * Adds a value. Values are distinct, so a value already queued is not added twice.
+     * @param value The value to queue
+     * @return true if the value was not already queued
+     */
+    @Override
+    public boolean offer(Integer value) {
+        return list.add(value);
+    }
+
+    @Override
+    public Integer poll() {
+        return list.pollFirst();
+    }
+
+    /**
+     * Removes and returns a value close to the smallest, or null if the queue is empty.
+     * The value is among roughly the first p log^3 p for p pollers.
+     * Falls back to {@link #poll()} when the spray finds nothing to claim.
+     * @return a small queued value, or null if there is none
+     */
+    public Integer pollApproxFirst() {
+        if (sprayJump <= 1 && sprayHeight <= 1) {
+            return poll();
+        }
+
+        list.enter();
+        try {
+            return spray();
+        }
+        finally {
+            list.exit();
+        }
+    }
+
+    /**
+     * Walks down from sprayHeight with random jumps and claims the first node it can.
+     */
+    private Integer spray() {
+        FineGrainedSkipList.Node header = list.header;
+        FineGrainedSkipList.Node node = header;
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+
+        for (int level = sprayHeight; level >= 0; level -= sprayDescent) {
+            for (int jump = random.nextInt(sprayJump + 1); jump > 0; jump -= 1) {
+                FineGrainedSkipList.Node next = node.forward[level];
+                if (next == header) {
+                    break;
+                }
+                node = next;
+            }
+            if (level > 0 && level < sprayDescent) {
+                level = sprayDescent;
+            }
+        }
+
+        if (node == header) {
+            node = header.forward[0];
+        }
+        for (int step = 0; node != header && step <= sprayJump; step += 1) {
+            if (list.tryClaim(node)) {
+                list.unlinkMarked(node);
+                return node.value;
+            }
+            node = node.forward[0];
+        }
+        return poll();
+    }
+
+    @Override
+    public Integer peek() {
+        list.enter();
+        try {
+            for (FineGrainedSkipList.Node node = list.header.forward[0]; node != list.header;
+                    node = node.forward[0]) {
+                if (node.fullyLinked && !node.markedForRemoval) {
+                    return node.value;
+                }
+            }
+            return null;
+        }
+        finally {
+            list.exit();
+        }
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return list.iterator();
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+}
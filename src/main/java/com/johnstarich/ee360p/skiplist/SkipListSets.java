@@ -0,0 +1,451 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Union, intersection and difference of {@link FineGrainedSkipList}s and sorted int arrays.
+ * Operands are merged along level 0 in one pass. Intersection and difference jump over
+ * runs with no match through the upper levels, so disjoint stretches cost O(log gap)
+ * rather than O(gap). Large operands are split into key ranges that run in parallel.
+ * Results are built by appending, never by repeated add.
+ * Like iteration, an operation on lists that change meanwhile sees each key as it
+ * was at some point during the call.
+ */
+public final class SkipListSets {
+    /**
+     * Operands at least this large are split into key ranges processed in parallel.
+     */
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+
+    private SkipListSets() {
+    }
+
+    /**
+     * A forward-only position in an ascending sequence of keys, bounded above by hi.
+     */
+    private interface Cursor {
+        boolean done();
+
+        int key();
+
+        void next();
+
+        /**
+         * Moves to the first key at or above key. Does nothing if already there.
+         */
+        void seek(int key);
+
+        /**
+         * Releases whatever the cursor holds to keep its position valid.
+         */
+        default void close() {
+        }
+    }
+
+    /**
+     * Walks the live nodes of a list, galloping with a finger search.
+     */
+    private static final class ListCursor implements Cursor {
+        private final FineGrainedSkipList list;
+        private final long hi;
+        private FineGrainedSkipList.Node node;
+
+        ListCursor(FineGrainedSkipList list, int lo, long hi) {
+            this.list = list;
+            this.hi = hi;
+            list.enter();
+            FineGrainedSkipList.Node[] predecessors = new FineGrainedSkipList.Node[list.maxLevel];
+            FineGrainedSkipList.Node[] successors = new FineGrainedSkipList.Node[list.maxLevel];
+            list.find(lo, predecessors, successors);
+            this.node = skipDead(successors[0]);
+        }
+
+        private FineGrainedSkipList.Node skipDead(FineGrainedSkipList.Node node) {
+            while (node != list.header && (!node.fullyLinked || node.markedForRemoval)) {
+                node = node.forward[0];
+            }
+            return node;
+        }
+
+        private boolean before(FineGrainedSkipList.Node node, int key) {
+            return node != list.header && node.key < key;
+        }
+
+        @Override
+        public boolean done() {
+            return node == list.header || node.key >= hi;
+        }
+
+        @Override
+        public int key() {
+            return node.key;
+        }
+
+        @Override
+        public void next() {
+            node = skipDead(node.forward[0]);
+        }
+
+        @Override
+        public void close() {
+            list.exit();
+        }
+
+        /**
+         * Climbs the towers while they still land before key, then descends.
+         * Skipping a gap of d nodes takes O(log d) steps.
+         */
+        @Override
+        public void seek(int key) {
+            if (!before(node, key)) {
+                return;
+            }
+            FineGrainedSkipList.Node current = node;
+            int level = 0;
+            while (true) {
+                if (level < current.level && before(current.forward[level + 1], key)) {
+                    level += 1;
+                }
+                else if (before(current.forward[level], key)) {
+                    current = current.forward[level];
+                }
+                else {
+                    break;
+                }
+            }
+            for (; level >= 0; level -= 1) {
+                while (before(current.forward[level], key)) {
+                    current = current.forward[level];
+                }
+            }
+            node = skipDead(current.forward[0]);
+        }
+    }
+
+    /**
+     * Walks a strictly ascending array, galloping with an exponential search.
+     */
+    private static final class ArrayCursor implements Cursor {
+        private final int[] keys;
+        private final long hi;
+        private int index;
+
+        ArrayCursor(int[] keys, int lo, long hi) {
+            this.keys = keys;
+            this.hi = hi;
+            this.index = lowerBound(keys, 0, keys.length, lo);
+        }
+
+        @Override
+        public boolean done() {
+            return index >= keys.length || keys[index] >= hi;
+        }
+
+        @Override
+        public int key() {
+            return keys[index];
+        }
+
+        @Override
+        public void next() {
+            index += 1;
+        }
+
+        @Override
+        public void seek(int key) {
+            int step = 1;
+            int bound = index;
+            while (bound < keys.length && keys[bound] < key) {
+                index = bound + 1;
+                bound += step;
+                step <<= 1;
+            }
+            index = lowerBound(keys, index, Math.min(bound, keys.length), key);
+        }
+    }
+
+    /**
+     * Finds the first index in [from, to) whose key is at least key, or to if none is.
+     */
+    private static int lowerBound(int[] keys, int from, int to, int key) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (keys[middle] < key) {
+                from = middle + 1;
+            }
+            else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * A growable array of result keys for one key range.
+     */
+    private static final class KeyBuffer implements IntConsumer {
+        int[] keys = new int[16];
+        int length;
+
+        @Override
+        public void accept(int key) {
+            if (length == keys.length) {
+                keys = Arrays.copyOf(keys, length * 2);
+            }
+            keys[length++] = key;
+        }
+    }
+
+    /**
+     * A set operation on two cursors over the same key range.
+     */
+    private interface Operation {
+        void apply(Cursor a, Cursor b, IntConsumer out);
+    }
+
+    private static void mergeUnion(Cursor a, Cursor b, IntConsumer out) {
+        while (!a.done() && !b.done()) {
+            int keyA = a.key();
+            int keyB = b.key();
+            if (keyA <= keyB) {
+                out.accept(keyA);
+                a.next();
+                if (keyA == keyB) {
+                    b.next();
+                }
+            }
+            else {
+                out.accept(keyB);
+                b.next();
+            }
+        }
+        for (; !a.done(); a.next()) {
+            out.accept(a.key());
+        }
+        for (; !b.done(); b.next()) {
+            out.accept(b.key());
+        }
+    }
+
+    private static void mergeIntersection(Cursor a, Cursor b, IntConsumer out) {
+        while (!a.done() && !b.done()) {
+            int keyA = a.key();
+            int keyB = b.key();
+            if (keyA == keyB) {
+                out.accept(keyA);
+                a.next();
+                b.next();
+            }
+            else if (keyA < keyB) {
+                a.seek(keyB);
+            }
+            else {
+                b.seek(keyA);
+            }
+        }
+    }
+
+    private static void mergeDifference(Cursor a, Cursor b, IntConsumer out) {
+        for (; !a.done(); a.next()) {
+            int key = a.key();
+            b.seek(key);
+            if (b.done() || b.key() != key) {
+                out.accept(key);
+            }
+        }
+    }
+
+    /**
+     * Picks ascending range boundaries from the keys on an upper level of list,
+     * about one range per available processor, or just one range for small lists.
+     * The walk stays inside an epoch, so no node it passes is recycled under a new key.
+     */
+    private static long[] split(FineGrainedSkipList list, int otherSize) {
+        int parts = Runtime.getRuntime().availableProcessors() * 4;
+        if (Math.max(list.size(), otherSize) < PARALLEL_THRESHOLD || parts < 2) {
+            return new long[] {Integer.MIN_VALUE, Long.MAX_VALUE};
+        }
+        int level = Math.min(list.maxLevel - 1,
+                31 - Integer.numberOfLeadingZeros(Math.max(1, list.size() / parts)));
+        int[] pivots = new int[16];
+        int count = 0;
+        list.enter();
+        try {
+            for (FineGrainedSkipList.Node node = list.header.forward[level];
+                    node != list.header; node = node.forward[level]) {
+                if (count == pivots.length) {
+                    pivots = Arrays.copyOf(pivots, count * 2);
+                }
+                pivots[count++] = node.key;
+            }
+        }
+        finally {
+            list.exit();
+        }
+
+        int ranges = Math.min(parts, count + 1);
+        long[] bounds = new long[ranges + 1];
+        bounds[0] = Integer.MIN_VALUE;
+        for (int i = 1; i < ranges; i++) {
+            bounds[i] = pivots[(int) ((long) i * count / ranges)];
+        }
+        bounds[ranges] = Long.MAX_VALUE;
+        return bounds;
+    }
+
+    /**
+     * Runs operation over each key range, in parallel when there are several,
+     * and appends the results in order to a new list.
+     */
+    private static FineGrainedSkipList run(FineGrainedSkipList a, int otherSize,
+                                           RangeCursor other, Operation operation) {
+        long[] bounds = split(a, otherSize);
+        KeyBuffer[] results = IntStream.range(0, bounds.length - 1)
+                .parallel()
+                .mapToObj(i -> {
+                    KeyBuffer out = new KeyBuffer();
+                    apply(operation, a, other, (int) bounds[i], bounds[i + 1], out);
+                    return out;
+                })
+                .toArray(KeyBuffer[]::new);
+
+        FineGrainedSkipList result = new FineGrainedSkipList(a.maxLevel, a.backoff);
+        FineGrainedSkipList.Appender appender = result.new Appender();
+        for (KeyBuffer buffer : results) {
+            for (int i = 0; i < buffer.length; i++) {
+                appender.append(buffer.keys[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Runs operation over [lo, hi) of both operands, closing the cursors afterwards.
+     */
+    private static void apply(Operation operation, FineGrainedSkipList a, RangeCursor other,
+                              int lo, long hi, IntConsumer out) {
+        Cursor cursorA = new ListCursor(a, lo, hi);
+        try {
+            Cursor cursorB = other.open(lo, hi);
+            try {
+                operation.apply(cursorA, cursorB, out);
+            }
+            finally {
+                cursorB.close();
+            }
+        }
+        finally {
+            cursorA.close();
+        }
+    }
+
+    /**
+     * Opens a cursor on the second operand over [lo, hi).
+     */
+    private interface RangeCursor {
+        Cursor open(int lo, long hi);
+    }
+
+    private static RangeCursor cursors(FineGrainedSkipList list) {
+        return (lo, hi) -> new ListCursor(list, lo, hi);
+    }
+
+    private static RangeCursor cursors(int[] sorted) {
+        return (lo, hi) -> new ArrayCursor(sorted, lo, hi);
+    }
+
+    /**
+     * Computes the keys in a or b.
+     * @param a The first list
+     * @param b The second list
+     * @return a new list with the keys in either list
+     */
+    public static FineGrainedSkipList union(FineGrainedSkipList a, FineGrainedSkipList b) {
+        return run(a, b.size(), cursors(b), SkipListSets::mergeUnion);
+    }
+
+    /**
+     * Computes the keys in a or in sorted.
+     * @param a The list
+     * @param sorted Strictly ascending keys, none equal to Integer.MAX_VALUE
+     * @return a new list with the keys in either operand
+     */
+    public static FineGrainedSkipList union(FineGrainedSkipList a, int[] sorted) {
+        return run(a, sorted.length, cursors(sorted), SkipListSets::mergeUnion);
+    }
+
+    /**
+     * Computes the keys in both a and b.
+     * @param a The first list
+     * @param b The second list
+     * @return a new list with the keys in both lists
+     */
+    public static FineGrainedSkipList intersect(FineGrainedSkipList a, FineGrainedSkipList b) {
+        return run(a, b.size(), cursors(b), SkipListSets::mergeIntersection);
+    }
+
+    /**
+     * Computes the keys in both a and sorted.
+     * @param a The list
+     * @param sorted Strictly ascending keys
+     * @return a new list with the keys in both operands
+     */
+    public static FineGrainedSkipList intersect(FineGrainedSkipList a, int[] sorted) {
+        return run(a, sorted.length, cursors(sorted), SkipListSets::mergeIntersection);
+    }
+
+    /**
+     * Computes the keys in a but not in b.
+     * @param a The list to subtract from
+     * @param b The list to subtract
+     * @return a new list with the keys only a has
+     */
+    public static FineGrainedSkipList difference(FineGrainedSkipList a, FineGrainedSkipList b) {
+        return run(a, b.size(), cursors(b), SkipListSets::mergeDifference);
+    }
+
+    /**
+     * Computes the keys in a but not in sorted.
+     * @param a The list to subtract from
+     * @param sorted Strictly ascending keys to subtract
+     * @return a new list with the keys only a has
+     */
+    public static FineGrainedSkipList difference(FineGrainedSkipList a, int[] sorted) {
+        return run(a, sorted.length, cursors(sorted), SkipListSets::mergeDifference);
+    }
+
+    /**
+     * Counts the keys in both a and b without building a list.
+     * @param a The first list
+     * @param b The second list
+     * @return the size of the intersection
+     */
+    public static int intersectionSize(FineGrainedSkipList a, FineGrainedSkipList b) {
+        return count(a, b.size(), cursors(b));
+    }
+
+    /**
+     * Counts the keys in both a and sorted without building a list.
+     * @param a The list
+     * @param sorted Strictly ascending keys
+     * @return the size of the intersection
+     */
+    public static int intersectionSize(FineGrainedSkipList a, int[] sorted) {
+        return count(a, sorted.length, cursors(sorted));
+    }
+
+    private static int count(FineGrainedSkipList a, int otherSize, RangeCursor other) {
+        long[] bounds = split(a, otherSize);
+        return IntStream.range(0, bounds.length - 1)
+                .parallel()
+                .map(i -> {
+                    int[] count = new int[1];
+                    apply(SkipListSets::mergeIntersection, a, other, (int) bounds[i],
+                            bounds[i + 1], key -> count[0]++);
+                    return count[0];
+                })
+                .sum();
+    }
+}
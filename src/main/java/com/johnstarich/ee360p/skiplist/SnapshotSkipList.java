@@ -0,0 +1,220 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A read-mostly set whose lookups binary-search an immutable snapshot instead of
+ * descending a skip list. Writers update a {@link FineGrainedSkipList} and record each
+ * changed key in a small delta map. A publisher periodically freezes level 0 into an
+ * int[] in Eytzinger (breadth-first) order, where the first levels of every search
+ * share a few cache lines, and publishes it with a fresh delta through one volatile
+ * reference. Reads check the delta, then the snapshot, so they are never stale.
+ * The snapshot lags the list by at most one publish period plus the time to build it,
+ * which bounds the delta to the changes made in that window.
+ */
+public class SnapshotSkipList extends AbstractSet<Integer> {
+    /**
+     * A snapshot and the changes made since it was taken.
+     * older holds changes made while the snapshot was being built, until it is published.
+     */
+    static final class State {
+        /**
+         * The snapshot's keys in Eytzinger order, 1-based: tree[0] is unused.
+         */
+        final int[] tree;
+        final ConcurrentHashMap<Integer, Boolean> delta;
+        final ConcurrentHashMap<Integer, Boolean> older;
+        final long takenNanos;
+
+        State(int[] tree, ConcurrentHashMap<Integer, Boolean> delta,
+                ConcurrentHashMap<Integer, Boolean> older, long takenNanos) {
+            this.tree = tree;
+            this.delta = delta;
+            this.older = older;
+            this.takenNanos = takenNanos;
+        }
+    }
+
+    private static final int STRIPES = 64;
+
+    final FineGrainedSkipList list;
+    private volatile State state;
+    /**
+     * Serialises writers of the same key, so each key's delta entry follows the order
+     * its list operations took effect. The publisher passes through every stripe to wait
+     * out writers still recording into the delta it is retiring.
+     */
+    private final ReentrantLock[] stripes = new ReentrantLock[STRIPES];
+
+    /**
+     * Create an empty snapshot skip list.
+     * @param maxLevel The maximum level of the underlying skip list
+     */
+    public SnapshotSkipList(int maxLevel) {
+        this.list = new FineGrainedSkipList(maxLevel);
+        this.state = new State(new int[1], new ConcurrentHashMap<>(), null, System.nanoTime());
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    private ReentrantLock stripe(int key) {
+        return stripes[(int) (NegativeLookupFilter.hash(key) >>> 58)];
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        int key = value;
+        ReentrantLock stripe = stripe(key);
+        stripe.lock();
+        try {
+            boolean added = list.add(key);
+            state.delta.put(key, Boolean.TRUE);
+            return added;
+        }
+        finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        if (!(value instanceof Integer)) {
+            return false;
+        }
+        int key = (Integer) value;
+        ReentrantLock stripe = stripe(key);
+        stripe.lock();
+        try {
+            boolean removed = list.remove(key);
+            state.delta.put(key, Boolean.FALSE);
+            return removed;
+        }
+        finally {
+            stripe.unlock();
+        }
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        if (!(value instanceof Integer)) {
+            return false;
+        }
+        int key = (Integer) value;
+        State current = state;
+        Boolean changed = current.delta.get(key);
+        if (changed == null && current.older != null) {
+            changed = current.older.get(key);
+        }
+        return changed != null ? changed : search(current.tree, key);
+    }
+
+    /**
+     * Searches a 1-based Eytzinger array. The descent goes to child 2i or 2i + 1 without
+     * branching on the comparison, and the trailing ones of the final index record the
+     * right turns taken after the last left turn, so shifting them off lands on the
+     * smallest key not below key.
+     */
+    static boolean search(int[] tree, int key) {
+        int i = 1;
+        while (i < tree.length) {
+            i = 2 * i + (tree[i] < key ? 1 : 0);
+        }
+        i >>>= Integer.numberOfTrailingZeros(~i) + 1;
+        return i != 0 && tree[i] == key;
+    }
+
+    /**
+     * Lays sorted keys out in Eytzinger order by an in-order walk of the implicit tree.
+     */
+    static int[] eytzinger(int[] sorted, int length) {
+        int[] tree = new int[length + 1];
+        fill(sorted, tree, 0, 1);
+        return tree;
+    }
+
+    private static int fill(int[] sorted, int[] tree, int position, int node) {
+        if (node < tree.length) {
+            position = fill(sorted, tree, position, 2 * node);
+            tree[node] = sorted[position++];
+            position = fill(sorted, tree, position, 2 * node + 1);
+        }
+        return position;
+    }
+
+    /**
+     * Freezes level 0 into a new snapshot and publishes it.
+     * Writers switch to a fresh delta first, and once every writer still recording into
+     * the old delta has finished, that delta's changes are all on level 0 and the walk
+     * picks them up. Changes made during the walk stay in the fresh delta.
+     * Concurrent calls are serialised.
+     */
+    public synchronized void publish() {
+        State old = state;
+        ConcurrentHashMap<Integer, Boolean> fresh = new ConcurrentHashMap<>();
+        long takenNanos = System.nanoTime();
+        state = new State(old.tree, fresh, old.delta, old.takenNanos);
+        for (ReentrantLock stripe : stripes) {
+            stripe.lock();
+            stripe.unlock();
+        }
+
+        int[] sorted = new int[Math.max(list.size(), 16)];
+        int length = 0;
+        for (Integer key : list) {
+            if (length == sorted.length) {
+                sorted = Arrays.copyOf(sorted, length * 2);
+            }
+            sorted[length++] = key;
+        }
+        state = new State(eytzinger(sorted, length), fresh, null, takenNanos);
+    }
+
+    /**
+     * Publishes a snapshot every period, bounding how far the snapshot lags the list.
+     * Cancel the returned future to stop publishing.
+     * @param executor The executor to run publishes on
+     * @param period Time between publishes
+     * @param unit The unit of period
+     * @return the scheduled publisher
+     */
+    public ScheduledFuture<?> schedulePublisher(ScheduledExecutorService executor, long period,
+                                                TimeUnit unit) {
+        return executor.scheduleWithFixedDelay(this::publish, period, period, unit);
+    }
+
+    /**
+     * Returns how long ago the current snapshot started freezing level 0.
+     * @param unit The unit to report in
+     * @return the age of the published snapshot
+     */
+    public long snapshotAge(TimeUnit unit) {
+        return unit.convert(System.nanoTime() - state.takenNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Counts the keys changed since the snapshot being consulted was taken.
+     * @return the number of delta entries readers may check
+     */
+    public int deltaSize() {
+        State current = state;
+        return current.delta.size() + (current.older != null ? current.older.size() : 0);
+    }
+
+    @Override
+    public int size() {
+        return list.size();
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return list.iterator();
+    }
+}
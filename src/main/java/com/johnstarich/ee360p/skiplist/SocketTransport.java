@@ -0,0 +1,81 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One end of a replication connection over a socket, typically on the loopback
+ * interface between processes on the same host. Each frame is sent as its length
+ * followed by its bytes. The primary accepts or opens the socket, wraps it and sends;
+ * the follower wraps its end and receives.
+ */
+public class SocketTransport implements ReplicationTransport, Closeable {
+    private final Socket socket;
+    private final DataInputStream in;
+    private final DataOutputStream out;
+
+    /**
+     * Wraps a connected socket.
+     * @param socket The connection to the other process
+     * @throws IOException if the socket's streams cannot be opened
+     */
+    public SocketTransport(Socket socket) throws IOException {
+        this.socket = socket;
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    @Override
+    public void send(ByteBuffer frame) throws IOException {
+        byte[] bytes = new byte[frame.remaining()];
+        frame.get(bytes);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+        out.flush();
+    }
+
+    /**
+     * Receives the next frame. Only the wait for its first byte times out; once a frame
+     * starts arriving, the rest is read in full, so a timeout never splits a frame.
+     */
+    @Override
+    public ByteBuffer receive(long timeout, TimeUnit unit) throws IOException {
+        int first;
+        socket.setSoTimeout((int) Math.max(1, Math.min(Integer.MAX_VALUE, unit.toMillis(timeout))));
+        try {
+            first = in.read();
+        }
+        catch (SocketTimeoutException e) {
+            return null;
+        }
+        finally {
+            socket.setSoTimeout(0);
+        }
+        if (first < 0) {
+            throw new EOFException("Connection closed");
+        }
+
+        int length = first << 24 | in.readUnsignedByte() << 16
+                | in.readUnsignedByte() << 8 | in.readUnsignedByte();
+        if (length < 0) {
+            throw new IOException("Bad frame length: " + length);
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return ByteBuffer.wrap(bytes);
+    }
+
+    @Override
+    public void close() throws IOException {
+        socket.close();
+    }
+}
@@ -0,0 +1,418 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable file of ascending int keys, each either live or a tombstone, that an
+ * {@link LsmSkipList} writes when it flushes a memtable or compacts runs.
+ * Entries are stored in blocks of {@link #BLOCK_ENTRIES}, each block its own
+ * {@link DeltaVarintCodec} set of key * 2 + 1 for a live key or key * 2 for a tombstone.
+ * The blocks are followed by a sparse index of each block's first key and offset,
+ * a Bloom filter over every key, and a fixed-size footer. Only the index and filter
+ * are held in memory, so a lookup the filter lets through reads a single block.
+ *
+ * <p>A run's file name records the range of memtable ids it holds, so a run that a
+ * compaction replaced but did not get to delete is recognised and deleted at open.
+ */
+final class SortedRun {
+    /**
+     * Entries per block, and so per sparse index entry.
+     */
+    static final int BLOCK_ENTRIES = 128;
+
+    /**
+     * Outcomes of {@link #lookup}.
+     */
+    static final int ABSENT = 0;
+    static final int LIVE = 1;
+    static final int TOMBSTONE = 2;
+
+    private static final int BITS_PER_KEY = 10;
+    private static final int PROBES = 7;
+    private static final int INDEX_ENTRY_BYTES = Integer.BYTES + Long.BYTES;
+    private static final int FOOTER_BYTES = 2 * Long.BYTES + 3 * Integer.BYTES;
+    private static final int MAGIC = 0x4C534D31;
+    private static final Pattern NAME = Pattern.compile("run-(\\d+)-(\\d+)\\.run");
+
+    /**
+     * A forward-only position in an ascending sequence of entries.
+     */
+    interface Cursor {
+        boolean done();
+
+        int key();
+
+        boolean live();
+
+        void next() throws IOException;
+    }
+
+    /**
+     * The oldest and newest memtable ids whose entries this run holds.
+     */
+    final long first;
+    final long last;
+    final long entries;
+    private final Path path;
+    private final FileChannel channel;
+    /**
+     * The first key of each block.
+     */
+    private final int[] firstKeys;
+    /**
+     * The offset of each block, followed by the offset where the blocks end.
+     */
+    private final long[] offsets;
+    private final long[] filter;
+
+    private SortedRun(Path path, long first, long last, FileChannel channel, long entries,
+                      int[] firstKeys, long[] offsets, long[] filter) {
+        this.path = path;
+        this.first = first;
+        this.last = last;
+        this.channel = channel;
+        this.entries = entries;
+        this.firstKeys = firstKeys;
+        this.offsets = offsets;
+        this.filter = filter;
+    }
+
+    static String name(long first, long last) {
+        return "run-" + first + "-" + last + ".run";
+    }
+
+    /**
+     * Checks whether fileName names a run, and not a temporary file or anything else.
+     */
+    static boolean isRun(Path fileName) {
+        return NAME.matcher(fileName.toString()).matches();
+    }
+
+    /**
+     * Counts the bytes written through it, past the int range DataOutputStream counts to.
+     */
+    private static final class CountingOutputStream extends FilterOutputStream {
+        long written;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            written += 1;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            written += len;
+        }
+    }
+
+    /**
+     * Writes entries to a new run in directory, durably, and opens it.
+     * @param expectedEntries An upper bound on the entries, to size the filter
+     */
+    static SortedRun write(Path directory, long first, long last, Cursor entries,
+                           long expectedEntries) throws IOException {
+        Path path = directory.resolve(name(first, last));
+        Path temporary = directory.resolve(name(first, last) + ".tmp");
+        long[] filter = new long[(int) Math.max(1, (expectedEntries * BITS_PER_KEY + 63) / 64)];
+        int[] firstKeys = new int[16];
+        long[] offsets = new long[16];
+        int blocks = 0;
+        long count = 0;
+
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            CountingOutputStream counter = new CountingOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel)));
+            DataOutputStream out = new DataOutputStream(counter);
+            DeltaVarintCodec.Encoder<IOException> encoder = null;
+
+            for (; !entries.done(); entries.next()) {
+                int key = entries.key();
+                if (count % BLOCK_ENTRIES == 0) {
+                    if (encoder != null) {
+                        encoder.finish();
+                    }
+                    if (blocks == firstKeys.length) {
+                        firstKeys = Arrays.copyOf(firstKeys, blocks * 2);
+                        offsets = Arrays.copyOf(offsets, blocks * 2);
+                    }
+                    firstKeys[blocks] = key;
+                    offsets[blocks] = counter.written;
+                    blocks += 1;
+                    encoder = new DeltaVarintCodec.Encoder<>(out::write);
+                }
+                encoder.add(((long) key << 1) | (entries.live() ? 1 : 0));
+                add(filter, key);
+                count += 1;
+            }
+            if (encoder != null) {
+                encoder.finish();
+            }
+
+            long indexOffset = counter.written;
+            for (int block = 0; block < blocks; block++) {
+                out.writeInt(firstKeys[block]);
+                out.writeLong(offsets[block]);
+            }
+            for (long word : filter) {
+                out.writeLong(word);
+            }
+            out.writeLong(indexOffset);
+            out.writeLong(count);
+            out.writeInt(blocks);
+            out.writeInt(filter.length);
+            out.writeInt(MAGIC);
+            out.flush();
+            channel.force(true);
+        }
+
+        Files.move(temporary, path, StandardCopyOption.ATOMIC_MOVE);
+        forceDirectory(directory);
+        return open(path);
+    }
+
+    /**
+     * Forces directory's entries to disk, so a rename into it survives a crash. Platforms
+     * that cannot open a directory, such as Windows, are left to order the rename themselves.
+     */
+    private static void forceDirectory(Path directory) throws IOException {
+        FileChannel channel;
+        try {
+            channel = FileChannel.open(directory, StandardOpenOption.READ);
+        }
+        catch (IOException e) {
+            return;
+        }
+        try (FileChannel opened = channel) {
+            opened.force(true);
+        }
+    }
+
+    /**
+     * Opens a run written by {@link #write}, loading its index and filter.
+     * @throws IOException if the file cannot be read or is not a complete run
+     */
+    static SortedRun open(Path path) throws IOException {
+        Matcher name = NAME.matcher(path.getFileName().toString());
+        if (!name.matches()) {
+            throw new IOException("Not a run: " + path);
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            if (size < FOOTER_BYTES) {
+                throw new IOException("Run too short: " + path);
+            }
+            ByteBuffer footer = read(channel, size - FOOTER_BYTES, FOOTER_BYTES);
+            final long indexOffset = footer.getLong();
+            final long count = footer.getLong();
+            int blocks = footer.getInt();
+            int filterWords = footer.getInt();
+            if (footer.getInt() != MAGIC || blocks < 0 || filterWords < 1 || indexOffset < 0
+                    || indexOffset + (long) blocks * INDEX_ENTRY_BYTES
+                    + (long) filterWords * Long.BYTES + FOOTER_BYTES != size) {
+                throw new IOException("Corrupt run footer: " + path);
+            }
+
+            ByteBuffer metadata = read(channel, indexOffset,
+                    (int) (size - FOOTER_BYTES - indexOffset));
+            int[] firstKeys = new int[blocks];
+            long[] offsets = new long[blocks + 1];
+            for (int block = 0; block < blocks; block++) {
+                firstKeys[block] = metadata.getInt();
+                offsets[block] = metadata.getLong();
+            }
+            offsets[blocks] = indexOffset;
+            long[] filter = new long[filterWords];
+            metadata.asLongBuffer().get(filter);
+
+            return new SortedRun(path, Long.parseLong(name.group(1)),
+                    Long.parseLong(name.group(2)), channel, count, firstKeys, offsets, filter);
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private static ByteBuffer read(FileChannel channel, long position, int length)
+            throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new EOFException("Run ended early at " + (position + buffer.position()));
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static void add(long[] filter, int key) {
+        long hash = NegativeLookupFilter.hash(key);
+        long bits = filter.length * 64L;
+        for (int probe = 0; probe < PROBES; probe++) {
+            long bit = Integer.toUnsignedLong((int) hash + probe * (int) (hash >>> 32)) % bits;
+            filter[(int) (bit >>> 6)] |= 1L << bit;
+        }
+    }
+
+    private boolean mightContain(int key) {
+        long hash = NegativeLookupFilter.hash(key);
+        long bits = filter.length * 64L;
+        for (int probe = 0; probe < PROBES; probe++) {
+            long bit = Integer.toUnsignedLong((int) hash + probe * (int) (hash >>> 32)) % bits;
+            if ((filter[(int) (bit >>> 6)] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the last block whose first key is at or below key.
+     * @return the block, or -1 if key sorts before every block
+     */
+    private int floorBlock(int key) {
+        int found = Arrays.binarySearch(firstKeys, key);
+        return found >= 0 ? found : -found - 2;
+    }
+
+    private DeltaVarintCodec.Decoder<RuntimeException> decoder(int block) throws IOException {
+        ByteBuffer bytes = read(channel, offsets[block],
+                (int) (offsets[block + 1] - offsets[block]));
+        return new DeltaVarintCodec.Decoder<>(() -> bytes.get() & 0xFF);
+    }
+
+    /**
+     * Looks key up, reading at most one block.
+     * @return {@link #LIVE}, {@link #TOMBSTONE}, or {@link #ABSENT} if the run has no entry
+     */
+    int lookup(int key) throws IOException {
+        if (!mightContain(key)) {
+            return ABSENT;
+        }
+        int block = floorBlock(key);
+        if (block < 0) {
+            return ABSENT;
+        }
+        DeltaVarintCodec.Decoder<RuntimeException> decoder = decoder(block);
+        while (decoder.advance()) {
+            long entry = decoder.key();
+            int found = (int) (entry >> 1);
+            if (found >= key) {
+                return found > key ? ABSENT : (entry & 1) != 0 ? LIVE : TOMBSTONE;
+            }
+        }
+        return ABSENT;
+    }
+
+    /**
+     * Returns a cursor at the first entry at or above fromKey, reading blocks as it goes.
+     */
+    Cursor cursor(int fromKey) throws IOException {
+        return new RunCursor(fromKey);
+    }
+
+    private final class RunCursor implements Cursor {
+        private int block;
+        private DeltaVarintCodec.Decoder<RuntimeException> decoder;
+        private long entry;
+        private boolean done;
+
+        RunCursor(int fromKey) throws IOException {
+            block = Math.max(0, floorBlock(fromKey));
+            if (block < firstKeys.length) {
+                decoder = decoder(block);
+                next();
+            }
+            else {
+                done = true;
+            }
+            while (!done && key() < fromKey) {
+                next();
+            }
+        }
+
+        @Override
+        public boolean done() {
+            return done;
+        }
+
+        @Override
+        public int key() {
+            return (int) (entry >> 1);
+        }
+
+        @Override
+        public boolean live() {
+            return (entry & 1) != 0;
+        }
+
+        @Override
+        public void next() throws IOException {
+            while (!decoder.advance()) {
+                block += 1;
+                if (block == firstKeys.length) {
+                    done = true;
+                    return;
+                }
+                decoder = decoder(block);
+            }
+            entry = decoder.key();
+        }
+    }
+
+    /**
+     * Closes the file, for example when the list is closed.
+     */
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Closes and deletes the file of a run a compaction replaced. A failed delete is
+     * ignored, since the replacing run covers this one and the next open deletes it.
+     */
+    void discard() {
+        try {
+            channel.close();
+            Files.deleteIfExists(path);
+        }
+        catch (IOException e) {
+            return;
+        }
+    }
+
+    /**
+     * Checks whether this run holds every memtable id that other holds, so other is stale.
+     */
+    boolean covers(SortedRun other) {
+        return this != other && first <= other.first && other.last <= last;
+    }
+
+    @Override
+    public String toString() {
+        return path.getFileName().toString();
+    }
+}
@@ -0,0 +1,36 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+
+/**
+ * Calls Thread.onSpinWait where the running JVM provides it (Java 9+).
+ * On older JVMs the hint is a no-op.
+ */
+final class SpinHint {
+    private static final MethodHandle ON_SPIN_WAIT = lookup();
+
+    private SpinHint() {}
+
+    private static MethodHandle lookup() {
+        try {
+            return MethodHandles.lookup().findStatic(
+                    Thread.class, "onSpinWait", MethodType.methodType(void.class));
+        }
+        catch (NoSuchMethodException | IllegalAccessException e) {
+            return null;
+        }
+    }
+
+    static void onSpinWait() {
+        if (ON_SPIN_WAIT != null) {
+            try {
+                ON_SPIN_WAIT.invokeExact();
+            }
+            catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,437 @@
+package com.johnstarich.ee360p.skiplist;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * An unrolled skip-list: level 0 is a linked list of chunks that each hold a small
+ * sorted block of keys, and the upper levels are a {@link FineGrainedSkipListMap}
+ * indexing every chunk by its low fence.
+ * Full chunks split in half and sparse neighbours merge, so there is one node per
+ * block of keys instead of one per key, and scans walk contiguous arrays.
+ * Readers search a chunk under an optimistic stamp and only fall back to a read lock
+ * when a writer changed it meanwhile; writers lock only the chunks they change.
+ */
+public class UnrolledSkipList extends AbstractSet<Integer> {
+    /**
+     * A block of sorted keys covering [lowFence, next.lowFence).
+     * keys and count are guarded by lock; lowFence never changes.
+     */
+    static final class Chunk {
+        final int lowFence;
+        final int[] keys;
+        int count;
+        volatile Chunk next;
+        volatile boolean deleted;
+        final StampedLock lock = new StampedLock();
+
+        Chunk(int lowFence, int capacity) {
+            this.lowFence = lowFence;
+            this.keys = new int[capacity];
+        }
+    }
+
+    /**
+     * Outcomes of probing one chunk for a key.
+     */
+    private static final int FOUND = 0;
+    private static final int ABSENT = 1;
+    private static final int MOVE_RIGHT = 2;
+    private static final int RESTART = 3;
+
+    static final int DEFAULT_CHUNK_CAPACITY = 32;
+
+    final FineGrainedSkipListMap<Integer, Chunk> index;
+    final Chunk head;
+    final int capacity;
+    final AtomicInteger size;
+    final BackoffPolicy backoff;
+
+    /**
+     * Create an unrolled skip list with 32 keys per chunk.
+     * @param maxLevel The maximum level of the chunk index
+     */
+    public UnrolledSkipList(int maxLevel) {
+        this(maxLevel, DEFAULT_CHUNK_CAPACITY, BackoffPolicy.DEFAULT);
+    }
+
+    /**
+     * Create an unrolled skip list.
+     * @param maxLevel The maximum level of the chunk index
+     * @param chunkCapacity Keys per chunk, typically 16 to 64
+     * @param backoff How threads wait before retrying after losing a race
+     */
+    public UnrolledSkipList(int maxLevel, int chunkCapacity, BackoffPolicy backoff) {
+        if (chunkCapacity < 4) {
+            throw new IllegalArgumentException("Chunk capacity below 4: " + chunkCapacity);
+        }
+        this.capacity = chunkCapacity;
+        this.backoff = backoff;
+        this.size = new AtomicInteger(0);
+        this.index = new FineGrainedSkipListMap<>(maxLevel, PrefixComparator.INTEGERS, backoff);
+        this.head = new Chunk(Integer.MIN_VALUE, chunkCapacity);
+        index.put(head.lowFence, head);
+    }
+
+    /**
+     * Counts the keys in keys[0, count) below key. The loop has no data-dependent
+     * branches, so the JIT can compile it to vector compares over the block.
+     */
+    static int lowerCount(int[] keys, int count, int key) {
+        int lower = 0;
+        for (int i = 0; i < count; i++) {
+            lower += (int) (((long) keys[i] - key) >>> 63);
+        }
+        return lower;
+    }
+
+    /**
+     * Finds the chunk whose range the index says holds key.
+     */
+    private Chunk floorChunk(int key) {
+        return index.floorEntry(key).getValue();
+    }
+
+    /**
+     * Decides whether chunk holds key, must be left for a later chunk, or is stale.
+     * Callers must validate the result against the chunk's stamp.
+     */
+    private int probe(Chunk chunk, int key) {
+        if (chunk.deleted || key < chunk.lowFence) {
+            return RESTART;
+        }
+        Chunk next = chunk.next;
+        if (next != null && key >= next.lowFence) {
+            return MOVE_RIGHT;
+        }
+        int count = Math.min(chunk.count, chunk.keys.length);
+        int position = lowerCount(chunk.keys, count, key);
+        return position < count && chunk.keys[position] == key ? FOUND : ABSENT;
+    }
+
+    @Override
+    public boolean contains(Object value) {
+        if (!(value instanceof Integer)) {
+            return false;
+        }
+        int key = (Integer) value;
+        Chunk chunk = floorChunk(key);
+
+        for (int attempt = 0; true; ) {
+            long stamp = chunk.lock.tryOptimisticRead();
+            int state = probe(chunk, key);
+            Chunk next = chunk.next;
+            if (!chunk.lock.validate(stamp)) {
+                stamp = chunk.lock.readLock();
+                try {
+                    state = probe(chunk, key);
+                    next = chunk.next;
+                }
+                finally {
+                    chunk.lock.unlockRead(stamp);
+                }
+            }
+
+            switch (state) {
+                case FOUND:
+                    return true;
+                case ABSENT:
+                    return false;
+                case MOVE_RIGHT:
+                    chunk = next;
+                    break;
+                default:
+                    backoff.backoff(attempt++);
+                    chunk = floorChunk(key);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Locks the chunk that owns key for writing and returns it with its stamp in stamp[0].
+     */
+    private Chunk lockOwner(int key, long[] stamp) {
+        Chunk chunk = floorChunk(key);
+
+        for (int attempt = 0; true; ) {
+            long writeStamp = chunk.lock.writeLock();
+            int state = probe(chunk, key);
+            if (state == FOUND || state == ABSENT) {
+                stamp[0] = writeStamp;
+                return chunk;
+            }
+            Chunk next = chunk.next;
+            chunk.lock.unlockWrite(writeStamp);
+
+            if (state == MOVE_RIGHT) {
+                chunk = next;
+            }
+            else {
+                backoff.backoff(attempt++);
+                chunk = floorChunk(key);
+            }
+        }
+    }
+
+    @Override
+    public boolean add(Integer value) {
+        int key = value;
+        long[] stamp = new long[1];
+        Chunk chunk = lockOwner(key, stamp);
+        Chunk split = null;
+
+        try {
+            int position = lowerCount(chunk.keys, chunk.count, key);
+            if (position < chunk.count && chunk.keys[position] == key) {
+                return false;
+            }
+
+            if (chunk.count == capacity) {
+                split = split(chunk);
+                if (key >= split.lowFence) {
+                    position -= chunk.count;
+                    insertAt(split, position, key);
+                }
+                else {
+                    insertAt(chunk, position, key);
+                }
+            }
+            else {
+                insertAt(chunk, position, key);
+            }
+            size.incrementAndGet();
+            return true;
+        }
+        finally {
+            chunk.lock.unlockWrite(stamp[0]);
+            if (split != null) {
+                index.put(split.lowFence, split);
+                if (split.deleted) {
+                    index.remove(split.lowFence, split);
+                }
+            }
+        }
+    }
+
+    private static void insertAt(Chunk chunk, int position, int key) {
+        System.arraycopy(chunk.keys, position, chunk.keys, position + 1, chunk.count - position);
+        chunk.keys[position] = key;
+        chunk.count += 1;
+    }
+
+    /**
+     * Moves the upper half of a full, write-locked chunk into a new chunk linked after it.
+     * The new chunk is reachable through chunk.next before it is added to the index.
+     */
+    private Chunk split(Chunk chunk) {
+        int half = chunk.count / 2;
+        Chunk right = new Chunk(chunk.keys[half], capacity);
+        right.count = chunk.count - half;
+        System.arraycopy(chunk.keys, half, right.keys, 0, right.count);
+        right.next = chunk.next;
+        chunk.count = half;
+        chunk.next = right;
+        return right;
+    }
+
+    @Override
+    public boolean remove(Object value) {
+        if (!(value instanceof Integer)) {
+            return false;
+        }
+        int key = (Integer) value;
+        long[] stamp = new long[1];
+        Chunk chunk = lockOwner(key, stamp);
+        boolean sparse;
+
+        try {
+            int position = lowerCount(chunk.keys, chunk.count, key);
+            if (position == chunk.count || chunk.keys[position] != key) {
+                return false;
+            }
+            System.arraycopy(chunk.keys, position + 1, chunk.keys, position,
+                    chunk.count - position - 1);
+            chunk.count -= 1;
+            size.decrementAndGet();
+            sparse = chunk.count < capacity / 4;
+        }
+        finally {
+            chunk.lock.unlockWrite(stamp[0]);
+        }
+
+        if (sparse && !tryMerge(chunk) && chunk != head) {
+            Chunk predecessor = predecessorOf(chunk);
+            if (predecessor != null) {
+                tryMerge(predecessor);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the live chunk linked directly before chunk, or null if there is none.
+     */
+    private Chunk predecessorOf(Chunk chunk) {
+        Chunk predecessor = floorChunk(chunk.lowFence - 1);
+        while (predecessor != null && predecessor.next != chunk) {
+            Chunk next = predecessor.next;
+            if (next == null || next.lowFence > chunk.lowFence) {
+                return null;
+            }
+            predecessor = next;
+        }
+        return predecessor;
+    }
+
+    /**
+     * Merges left.next into left when together they fill at most half a chunk.
+     * Locks left then its successor, the same left-to-right order every writer uses.
+     * @return true if a merge happened
+     */
+    private boolean tryMerge(Chunk left) {
+        Chunk removed = null;
+        long leftStamp = left.lock.writeLock();
+        try {
+            Chunk right = left.next;
+            if (left.deleted || right == null) {
+                return false;
+            }
+            long rightStamp = right.lock.writeLock();
+            try {
+                if (left.count + right.count > capacity / 2) {
+                    return false;
+                }
+                System.arraycopy(right.keys, 0, left.keys, left.count, right.count);
+                left.count += right.count;
+                left.next = right.next;
+                right.deleted = true;
+                removed = right;
+            }
+            finally {
+                right.lock.unlockWrite(rightStamp);
+            }
+        }
+        finally {
+            left.lock.unlockWrite(leftStamp);
+            if (removed != null) {
+                index.remove(removed.lowFence, removed);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Copies the keys in [fromInclusive, toExclusive) in ascending order.
+     * Whole chunks are copied at a time, each consistent with itself.
+     * @param fromInclusive The lowest key to include
+     * @param toExclusive The first key past the range
+     * @return the keys in range
+     */
+    public int[] range(int fromInclusive, int toExclusive) {
+        int[] result = new int[16];
+        int length = 0;
+        long last = (long) fromInclusive - 1;
+        Chunk chunk = floorChunk(fromInclusive);
+
+        while (chunk != null && chunk.lowFence < toExclusive) {
+            int[] block = snapshot(chunk);
+            for (int key : block) {
+                if (key > last && key < toExclusive) {
+                    if (length == result.length) {
+                        result = Arrays.copyOf(result, length * 2);
+                    }
+                    result[length++] = key;
+                    last = key;
+                }
+            }
+            chunk = chunk.next;
+        }
+        return Arrays.copyOf(result, length);
+    }
+
+    /**
+     * Copies a chunk's keys, optimistically first and under a read lock if that fails.
+     */
+    private static int[] snapshot(Chunk chunk) {
+        long stamp = chunk.lock.tryOptimisticRead();
+        int[] block = Arrays.copyOf(chunk.keys, Math.min(chunk.count, chunk.keys.length));
+        if (!chunk.lock.validate(stamp)) {
+            stamp = chunk.lock.readLock();
+            try {
+                block = Arrays.copyOf(chunk.keys, chunk.count);
+            }
+            finally {
+                chunk.lock.unlockRead(stamp);
+            }
+        }
+        return block;
+    }
+
+    @Override
+    public int size() {
+        return size.get();
+    }
+
+    /**
+     * Counts the chunks on level 0, including empty ones.
+     * @return the number of chunks
+     */
+    public int chunkCount() {
+        int chunks = 0;
+        for (Chunk chunk = head; chunk != null; chunk = chunk.next) {
+            chunks++;
+        }
+        return chunks;
+    }
+
+    @Override
+    public Iterator<Integer> iterator() {
+        return new Iterator<Integer>() {
+            private Chunk chunk = head;
+            private int[] block = snapshot(head);
+            private int position = 0;
+            private long last = (long) Integer.MIN_VALUE - 1;
+
+            /**
+             * Skips to the next key above the last one returned, loading chunks as needed.
+             * Keys at or below last can reappear when a chunk split after its snapshot.
+             */
+            private boolean advance() {
+                while (true) {
+                    while (position < block.length) {
+                        if (block[position] > last) {
+                            return true;
+                        }
+                        position++;
+                    }
+                    chunk = chunk.next;
+                    if (chunk == null) {
+                        return false;
+                    }
+                    block = snapshot(chunk);
+                    position = 0;
+                }
+            }
+
+            @Override
+            public boolean hasNext() {
+                return advance();
+            }
+
+            @Override
+            public Integer next() {
+                if (!advance()) {
+                    throw new NoSuchElementException();
+                }
+                int key = block[position++];
+                last = key;
+                return key;
+            }
+        };
+    }
+}
@@ -0,0 +1,189 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for FineGrainedSkipList.applyBatch.
+ */
+public class AtomicBatchTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static final int BUCKETS = 4;
+    private static final int IDS = 200;
+
+    @Test
+    public void appliesOrChangesNothing() {
+        FineGrainedSkipList list = new FineGrainedSkipList(8);
+        list.add(10);
+        list.add(20);
+
+        assertTrue(list.applyBatch(new int[] {15, 16, 5}, new int[] {10}));
+        assertEquals(Arrays.asList(5, 15, 16, 20), new ArrayList<>(list));
+
+        assertFalse(list.applyBatch(new int[] {1, 2}, new int[] {20, 30}));
+        assertFalse(list.applyBatch(new int[] {1, 15}, new int[] {20}));
+        assertFalse(list.applyBatch(new int[] {1}, new int[] {Integer.MAX_VALUE}));
+        assertEquals(Arrays.asList(5, 15, 16, 20), new ArrayList<>(list));
+        assertEquals(4, list.size());
+
+        assertTrue(list.applyBatch(new int[0], new int[] {5, 15, 16, 20}));
+        assertTrue(list.isEmpty());
+        assertTrue(list.applyBatch(new int[0], new int[0]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRepeatedKey() {
+        new FineGrainedSkipList(8).applyBatch(new int[] {3}, new int[] {3});
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        FineGrainedSkipList[] lists = {
+            new FineGrainedSkipList(12),
+            new FineGrainedSkipList(12, BackoffPolicy.DEFAULT, 16, true,
+                    new NegativeLookupFilter(64, Runnable::run), true),
+        };
+        for (FineGrainedSkipList list : lists) {
+            TreeSet<Integer> benchmark = new TreeSet<>();
+            Random random = new Random(48);
+            for (int i = 0; i < 5000; i++) {
+                TreeSet<Integer> batch = new TreeSet<>();
+                int start = random.nextInt(300);
+                int size = random.nextInt(8);
+                while (batch.size() < size) {
+                    batch.add(start + random.nextInt(12));
+                }
+
+                List<Integer> inserts = new ArrayList<>();
+                List<Integer> removes = new ArrayList<>();
+                boolean applies = true;
+                for (int key : batch) {
+                    boolean insert = random.nextInt(4) != 0 ? !benchmark.contains(key)
+                            : random.nextBoolean();
+                    (insert ? inserts : removes).add(key);
+                    applies &= insert != benchmark.contains(key);
+                }
+
+                boolean applied = list.applyBatch(
+                        inserts.stream().mapToInt(Integer::intValue).toArray(),
+                        removes.stream().mapToInt(Integer::intValue).toArray());
+                assertEquals(applies, applied);
+                if (applied) {
+                    benchmark.addAll(inserts);
+                    benchmark.removeAll(removes);
+                }
+                if (i % 500 == 0) {
+                    assertEquals(new ArrayList<>(benchmark), new ArrayList<>(list));
+                }
+            }
+
+            assertEquals(new ArrayList<>(benchmark), new ArrayList<>(list));
+            assertEquals(benchmark.size(), list.size());
+            for (int key = 0; key < 320; key++) {
+                assertEquals(benchmark.contains(key), list.contains(key));
+            }
+            List<Integer> descending = new ArrayList<>();
+            for (PrimitiveIterator.OfInt keys = list.descendingIterator(); keys.hasNext(); ) {
+                descending.add(keys.nextInt());
+            }
+            assertEquals(new ArrayList<>(benchmark.descendingSet()), descending);
+        }
+    }
+
+    private static int key(int bucket, int id) {
+        return bucket * IDS + id;
+    }
+
+    @Test
+    public void movesBetweenBucketsAtomically() throws InterruptedException {
+        FineGrainedSkipList list = new FineGrainedSkipList(12);
+        for (int id = 0; id < IDS; id++) {
+            list.add(key(id % BUCKETS, id));
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 20000; i++) {
+                    int id = random.nextInt(IDS);
+                    int from = random.nextInt(BUCKETS);
+                    int to = (from + 1 + random.nextInt(BUCKETS - 1)) % BUCKETS;
+                    list.applyBatch(new int[] {key(to, id)}, new int[] {key(from, id)});
+                }
+            }));
+        }
+        threads.add(new Thread(() -> {
+            for (int i = 0; i < 20000; i++) {
+                list.add(key(BUCKETS, i % IDS));
+                list.remove(key(BUCKETS, (i + 7) % IDS));
+            }
+        }));
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int id = 0; id < IDS; id++) {
+            int copies = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                copies += list.contains(key(bucket, id)) ? 1 : 0;
+            }
+            assertEquals("id " + id, 1, copies);
+        }
+    }
+
+    @Test
+    public void batchBenchmark() {
+        int batches = 1 << 12;
+        int batchSize = 64;
+        FineGrainedSkipList single = new FineGrainedSkipList(18);
+        FineGrainedSkipList batched = new FineGrainedSkipList(18);
+        Random random = new Random(8);
+        List<Integer> order = new ArrayList<>();
+        for (int b = 0; b < batches; b++) {
+            order.add(b);
+        }
+        Collections.shuffle(order, random);
+        int[][] keys = new int[batches][batchSize];
+        for (int b = 0; b < batches; b++) {
+            for (int i = 0; i < batchSize; i++) {
+                keys[b][i] = (order.get(b) << 16) + (i << 10) + random.nextInt(1 << 10);
+            }
+        }
+
+        long time = System.nanoTime();
+        for (int[] batch : keys) {
+            for (int key : batch) {
+                single.add(key);
+            }
+        }
+        final long singleTime = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int[] batch : keys) {
+            assertTrue(batched.applyBatch(batch, new int[0]));
+        }
+        long batchTime = System.nanoTime() - time;
+
+        long total = (long) batches * batchSize;
+        System.out.println("\n\nStarting Atomic Batch Benchmark, batch size: " + batchSize);
+        System.out.println("Single-key adds\t" + singleTime / total + " ns/key");
+        System.out.println("Batched adds\t" + batchTime / total + " ns/key");
+        assertEquals(single.size(), batched.size());
+    }
+}
@@ -0,0 +1,150 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for BoundedSkipList and FineGrainedSkipList.pollLast.
+ */
+public class BoundedSkipListTest {
+    @Rule public Timeout timeout = new Timeout(30, TimeUnit.SECONDS);
+
+    @Test
+    public void pollLast() {
+        FineGrainedSkipList list = new FineGrainedSkipList(8);
+        list.add(4);
+        list.add(-2);
+        assertEquals(Integer.valueOf(4), list.pollLast());
+        assertEquals(Integer.valueOf(-2), list.pollLast());
+        assertNull(list.pollLast());
+    }
+
+    @Test
+    public void keepsLargest() {
+        BoundedSkipList top = new BoundedSkipList(8, 3);
+        for (int i : new int[] {5, 1, 9, 7}) {
+            top.add(i);
+        }
+        assertEquals(Arrays.asList(5, 7, 9), new ArrayList<>(top));
+        assertEquals(5, top.boundary);
+        assertFalse(top.add(2));
+        assertFalse(top.add(5));
+        assertTrue(top.add(8));
+        assertEquals(Arrays.asList(7, 8, 9), new ArrayList<>(top));
+    }
+
+    @Test
+    public void keepsSmallest() {
+        BoundedSkipList bottom = new BoundedSkipList(8, 2, BoundedSkipList.Eviction.LARGEST);
+        for (int i : new int[] {5, 1, 9, 7}) {
+            bottom.add(i);
+        }
+        assertEquals(Arrays.asList(1, 5), new ArrayList<>(bottom));
+        assertFalse(bottom.add(6));
+        assertTrue(bottom.add(Integer.MIN_VALUE));
+        assertEquals(Arrays.asList(Integer.MIN_VALUE, 1), new ArrayList<>(bottom));
+    }
+
+    @Test
+    public void removeMakesRoom() {
+        BoundedSkipList top = new BoundedSkipList(8, 2);
+        top.add(10);
+        top.add(20);
+        top.add(30);
+        assertFalse(top.add(5));
+        assertTrue(top.remove(30));
+        assertTrue(top.add(5));
+        assertEquals(Arrays.asList(5, 20), new ArrayList<>(top));
+    }
+
+    @Test
+    public void concurrentAddsKeepTopK() throws InterruptedException {
+        int capacity = 100;
+        BoundedSkipList top = new BoundedSkipList(12, capacity);
+        List<Integer> scores = new ArrayList<>();
+        for (int i = 0; i < 40000; i++) {
+            scores.add(i);
+        }
+        Collections.shuffle(scores);
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            List<Integer> slice = scores.subList(t * 10000, (t + 1) * 10000);
+            threads.add(new Thread(() -> slice.forEach(top::add)));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(capacity, top.size());
+        int expected = 40000 - capacity;
+        for (int score : top) {
+            assertEquals(expected++, score);
+        }
+    }
+
+    @Test
+    public void concurrentRemovesNeverUnderfill() throws InterruptedException {
+        int capacity = 64;
+        BoundedSkipList top = new BoundedSkipList(12, capacity);
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicBoolean failed = new AtomicBoolean();
+
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    top.add(random.nextInt(1 << 20));
+                }
+            }));
+        }
+        Thread remover = new Thread(() -> {
+            while (!done.get()) {
+                Iterator<Integer> keys = top.iterator();
+                if (keys.hasNext()) {
+                    int key = keys.next();
+                    if (top.remove(key)) {
+                        top.add(key);
+                    }
+                }
+            }
+        });
+        Thread monitor = new Thread(() -> {
+            while (!done.get()) {
+                if (top.size() > capacity) {
+                    failed.set(true);
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        remover.start();
+        monitor.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        remover.join();
+        monitor.join();
+
+        assertFalse(failed.get());
+        assertEquals(capacity, top.size());
+        assertEquals(capacity, new ArrayList<>(top).size());
+    }
+}
@@ -0,0 +1,238 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for ChangeStream and the changes FineGrainedSkipList publishes to it.
+ */
+public class ChangeStreamTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static FineGrainedSkipList streamed(ChangeStream changes) {
+        return new FineGrainedSkipList(12, BackoffPolicy.DEFAULT, 0, false, null, false,
+                changes);
+    }
+
+    private static List<String> drain(ChangeStream.Subscription subscription) {
+        List<String> events = new ArrayList<>();
+        subscription.poll((sequence, key, inserted) ->
+                events.add(sequence + (inserted ? "+" : "-") + key), Integer.MAX_VALUE);
+        return events;
+    }
+
+    @Test
+    public void silentWithoutSubscribers() {
+        ChangeStream changes = new ChangeStream(16);
+        FineGrainedSkipList list = streamed(changes);
+        list.add(1);
+        list.remove(1);
+        assertEquals(0, changes.nextSequence());
+    }
+
+    @Test
+    public void publishesEveryCommittedChange() {
+        ChangeStream changes = new ChangeStream(64);
+        FineGrainedSkipList list = streamed(changes);
+        list.add(7);
+        final ChangeStream.Subscription subscription = changes.subscribe();
+        list.add(3);
+        list.add(3);
+        list.add(5);
+        list.add(9);
+        list.remove(3);
+        list.remove(4);
+        list.removeRange(5, 8);
+        list.pollFirst();
+
+        assertEquals(Arrays.asList("1+3", "2+5", "3+9", "4-3", "5-5", "6-7", "7-9"),
+                drain(subscription));
+        assertEquals(8, subscription.position());
+        assertTrue(drain(subscription).isEmpty());
+
+        subscription.close();
+        list.add(1);
+        assertEquals(8, changes.nextSequence());
+    }
+
+    @Test
+    public void detectsOverrun() {
+        ChangeStream changes = new ChangeStream(3);
+        FineGrainedSkipList list = streamed(changes);
+        ChangeStream.Subscription subscription = changes.subscribe();
+        for (int key = 0; key < 10; key++) {
+            list.add(key);
+        }
+        assertEquals(7, changes.oldestSequence());
+        try {
+            drain(subscription);
+            fail("Expected an overrun");
+        }
+        catch (ChangeStream.OverrunException e) {
+            assertEquals(1, e.sequence());
+        }
+        assertEquals(1, subscription.position());
+
+        try {
+            changes.subscribe(6);
+            fail("Expected an overrun");
+        }
+        catch (ChangeStream.OverrunException e) {
+            assertEquals(6, e.sequence());
+        }
+        assertEquals(1, changes.subscribers());
+        assertEquals(4, drain(changes.subscribe(7)).size());
+    }
+
+    @Test
+    public void resumesFromSavedPosition() {
+        ChangeStream changes = new ChangeStream(64);
+        FineGrainedSkipList list = streamed(changes);
+        final ChangeStream.Subscription keeper = changes.subscribe();
+        ChangeStream.Subscription first = changes.subscribe();
+        list.add(1);
+        list.add(2);
+        assertEquals(1, first.poll((sequence, key, inserted) -> { }, 1));
+        long saved = first.position();
+        first.close();
+
+        list.add(3);
+        ChangeStream.Subscription resumed = changes.subscribe(saved);
+        assertEquals(Arrays.asList("2+2", "3+3"), drain(resumed));
+
+        resumed.close();
+        keeper.close();
+        list.add(4);
+        try {
+            changes.subscribe(saved);
+            fail("Changes made while nobody was subscribed must not be skipped");
+        }
+        catch (ChangeStream.OverrunException e) {
+            assertEquals(saved, e.sequence());
+        }
+        assertEquals(0, changes.subscribers());
+    }
+
+    @Test
+    public void mirrorConvergesUnderChurn() throws InterruptedException {
+        ChangeStream changes = new ChangeStream(1 << 20);
+        FineGrainedSkipList list = streamed(changes);
+        for (int key = 0; key < 1000; key += 3) {
+            list.add(key);
+        }
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 30000; i++) {
+                    int key = random.nextInt(1000);
+                    switch (random.nextInt(8)) {
+                        case 0:
+                            list.removeRange(key, key + 5);
+                            break;
+                        case 1:
+                            list.pollFirst();
+                            break;
+                        case 2:
+                        case 3:
+                        case 4:
+                            list.remove(key);
+                            break;
+                        default:
+                            list.add(key);
+                            break;
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+
+        ChangeStream.Subscription subscription = changes.subscribe();
+        Set<Integer> mirror = new HashSet<>(list);
+        Map<Integer, Boolean> lastChange = new HashMap<>();
+        AtomicBoolean misordered = new AtomicBoolean();
+        ChangeStream.Listener apply = (sequence, key, inserted) -> {
+            Boolean previous = lastChange.put(key, inserted);
+            if (previous != null && previous == inserted) {
+                misordered.set(true);
+            }
+            if (inserted) {
+                mirror.add(key);
+            }
+            else {
+                mirror.remove(key);
+            }
+        };
+
+        try {
+            while (writers.stream().anyMatch(Thread::isAlive)) {
+                subscription.poll(apply, 1024);
+            }
+        }
+        finally {
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        while (subscription.poll(apply, 1024) > 0) {
+            continue;
+        }
+
+        assertFalse(misordered.get());
+        assertEquals(new HashSet<>(list), mirror);
+        assertEquals(changes.nextSequence(), subscription.position());
+    }
+
+    @Test
+    public void idleStreamBenchmark() {
+        int operations = 1 << 20;
+        FineGrainedSkipList plain = new FineGrainedSkipList(16);
+        FineGrainedSkipList idle = streamed(new ChangeStream(1 << 10));
+        ChangeStream live = new ChangeStream(1 << 22);
+        FineGrainedSkipList subscribed = streamed(live);
+        final ChangeStream.Subscription subscription = live.subscribe();
+
+        long plainTime = churn(plain, operations);
+        long idleTime = churn(idle, operations);
+        long subscribedTime = churn(subscribed, operations);
+
+        System.out.println("\n\nStarting Change Stream Benchmark, operations: " + operations);
+        System.out.println("No stream\t" + plainTime / operations + " ns/op");
+        System.out.println("Idle stream\t" + idleTime / operations + " ns/op");
+        System.out.println("Subscribed stream\t" + subscribedTime / operations + " ns/op");
+        assertEquals(live.nextSequence() - 1, drain(subscription).size());
+    }
+
+    private static long churn(FineGrainedSkipList list, int operations) {
+        Random random = new Random(47);
+        long start = System.nanoTime();
+        for (int i = 0; i < operations; i++) {
+            int key = random.nextInt(1 << 16);
+            if (random.nextBoolean()) {
+                list.add(key);
+            }
+            else {
+                list.remove(key);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+}
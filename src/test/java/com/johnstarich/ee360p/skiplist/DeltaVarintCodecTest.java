@@ -0,0 +1,209 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the delta-varint writeTo and readFrom of the skip lists.
+ */
+public class DeltaVarintCodecTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static byte[] write(FineGrainedSkipList list) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        list.writeTo(out);
+        return out.toByteArray();
+    }
+
+    private static FineGrainedSkipList read(byte[] bytes) throws IOException {
+        return FineGrainedSkipList.readFrom(new ByteArrayInputStream(bytes), 16);
+    }
+
+    @Test
+    public void roundTripsRandomSets() throws IOException {
+        Random random = new Random(41);
+        for (int trial = 0; trial < 50; trial++) {
+            FineGrainedSkipList list = new FineGrainedSkipList(16);
+            TreeSet<Integer> benchmark = new TreeSet<>();
+            for (int i = random.nextInt(2000); i > 0; i--) {
+                int key = trial % 2 == 0 ? random.nextInt() : random.nextInt(5000);
+                if (key != Integer.MAX_VALUE) {
+                    list.add(key);
+                    benchmark.add(key);
+                }
+            }
+            FineGrainedSkipList copy = read(write(list));
+            assertEquals(new ArrayList<>(benchmark), new ArrayList<>(copy));
+            assertEquals(benchmark.size(), copy.size());
+
+            ByteBuffer buffer = ByteBuffer.allocate(5 * benchmark.size() + 16);
+            list.writeTo(buffer);
+            buffer.flip();
+            FineGrainedSkipList fromBuffer = FineGrainedSkipList.readFrom(buffer, 16);
+            assertEquals(new ArrayList<>(benchmark), new ArrayList<>(fromBuffer));
+            assertFalse(buffer.hasRemaining());
+        }
+    }
+
+    @Test
+    public void emptyAndExtremes() throws IOException {
+        FineGrainedSkipList empty = new FineGrainedSkipList(4);
+        assertEquals(1, write(empty).length);
+        assertTrue(read(write(empty)).isEmpty());
+
+        FineGrainedSkipList extremes = new FineGrainedSkipList(4);
+        extremes.add(Integer.MIN_VALUE);
+        extremes.add(-1);
+        extremes.add(Integer.MAX_VALUE - 1);
+        assertEquals(Arrays.asList(Integer.MIN_VALUE, -1, Integer.MAX_VALUE - 1),
+                new ArrayList<>(read(write(extremes))));
+
+        FineGrainedLongSkipList longs = new FineGrainedLongSkipList(4);
+        longs.add(Long.MIN_VALUE);
+        longs.add(0L);
+        longs.add(Long.MAX_VALUE);
+        ByteBuffer buffer = ByteBuffer.allocate(64);
+        longs.writeTo(buffer);
+        buffer.flip();
+        assertEquals(Arrays.asList(Long.MIN_VALUE, 0L, Long.MAX_VALUE),
+                new ArrayList<>(FineGrainedLongSkipList.readFrom(buffer, 4)));
+    }
+
+    @Test
+    public void denseSetsTakeAboutOneBytePerKey() throws IOException {
+        FineGrainedSkipList list = new FineGrainedSkipList(20);
+        FineGrainedSkipList.Appender appender = list.new Appender();
+        for (int key = 1000000; key < 1100000; key += 3) {
+            appender.append(key);
+        }
+        byte[] bytes = write(list);
+        assertTrue(bytes.length < list.size() + 8);
+        assertEquals(new ArrayList<>(list), new ArrayList<>(read(bytes)));
+    }
+
+    @Test
+    public void intAndLongListsShareTheFormat() throws IOException {
+        FineGrainedSkipList ints = new FineGrainedSkipList(8);
+        for (int key = -500; key < 500; key += 7) {
+            ints.add(key);
+        }
+        FineGrainedLongSkipList longs =
+                FineGrainedLongSkipList.readFrom(new ByteArrayInputStream(write(ints)), 8);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        longs.writeTo(out);
+        assertEquals(new ArrayList<>(ints), new ArrayList<>(read(out.toByteArray())));
+    }
+
+    @Test
+    public void lockFreeListSharesTheFormat() throws IOException {
+        Random random = new Random(44);
+        SkipList list = new SkipList(16);
+        FineGrainedSkipList benchmark = new FineGrainedSkipList(16);
+        for (int i = 0; i < 600; i++) {
+            int key = random.nextInt(1000) - 500;
+            list.add(key);
+            benchmark.add(key);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        list.writeTo(out);
+        byte[] bytes = out.toByteArray();
+        assertArrayEquals(write(benchmark), bytes);
+
+        SkipList copy = SkipList.readFrom(new ByteArrayInputStream(bytes), 16);
+        assertEquals(benchmark.size(), copy.size());
+        ByteBuffer buffer = ByteBuffer.allocate(bytes.length);
+        copy.writeTo(buffer);
+        assertArrayEquals(bytes, buffer.array());
+
+        // The copy is linked as inserts would have left it, so it takes further writes
+        buffer.flip();
+        SkipList fromBuffer = SkipList.readFrom(buffer, 16);
+        int smallest = benchmark.iterator().next();
+        assertTrue(fromBuffer.add(1000));
+        assertTrue(fromBuffer.remove(smallest));
+        benchmark.add(1000);
+        benchmark.remove(smallest);
+        out.reset();
+        fromBuffer.writeTo(out);
+        assertArrayEquals(write(benchmark), out.toByteArray());
+        assertEquals(benchmark.size(), fromBuffer.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsLongKeysInIntList() throws IOException {
+        FineGrainedLongSkipList longs = new FineGrainedLongSkipList(4);
+        longs.add(1L << 40);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        longs.writeTo(out);
+        read(out.toByteArray());
+    }
+
+    @Test(expected = EOFException.class)
+    public void rejectsTruncatedStreams() throws IOException {
+        FineGrainedSkipList list = new FineGrainedSkipList(4);
+        list.add(1);
+        list.add(300);
+        byte[] bytes = write(list);
+        read(Arrays.copyOf(bytes, bytes.length - 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsOverlongVarints() throws IOException {
+        byte[] bytes = new byte[12];
+        Arrays.fill(bytes, (byte) 0xFF);
+        bytes[0] = 1;
+        read(bytes);
+    }
+
+    @Test(expected = BufferOverflowException.class)
+    public void reportsFullBuffers() {
+        FineGrainedSkipList list = new FineGrainedSkipList(4);
+        list.add(1 << 30);
+        list.writeTo(ByteBuffer.allocate(3));
+    }
+
+    @Test
+    public void bulkBuildBenchmark() throws IOException {
+        int keys = 1 << 20;
+        FineGrainedSkipList list = new FineGrainedSkipList(20);
+        FineGrainedSkipList.Appender appender = list.new Appender();
+        Random random = new Random(4);
+        int key = 0;
+        for (int i = 0; i < keys; i++) {
+            key += 1 + random.nextInt(100);
+            appender.append(key);
+        }
+
+        long time = System.nanoTime();
+        byte[] bytes = write(list);
+        final long writeTime = System.nanoTime() - time;
+        time = System.nanoTime();
+        FineGrainedSkipList copy = read(bytes);
+        long readTime = System.nanoTime() - time;
+
+        System.out.println("\n\nStarting Delta-Varint Codec Benchmark, keys: " + keys);
+        System.out.printf("Encoded %.2f bytes/key, write %d ns/key, read %d ns/key%n",
+                (double) bytes.length / keys, writeTime / keys, readTime / keys);
+        assertEquals(keys, copy.size());
+        assertTrue(bytes.length < keys * 2 + 8);
+    }
+}
@@ -0,0 +1,200 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for FineGrainedSkipList back links and descending iteration.
+ */
+public class DescendingIteratorTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static FineGrainedSkipList linked(int maxLevel, int poolSize) {
+        return new FineGrainedSkipList(maxLevel, BackoffPolicy.DEFAULT, poolSize, false, null,
+                true);
+    }
+
+    private static List<Integer> drain(PrimitiveIterator.OfInt keys) {
+        List<Integer> values = new ArrayList<>();
+        while (keys.hasNext()) {
+            values.add(keys.nextInt());
+        }
+        return values;
+    }
+
+    /**
+     * Checks every live node's back link points at its level-0 predecessor.
+     */
+    private static void assertBackLinks(FineGrainedSkipList list) {
+        FineGrainedSkipList.Node previous = list.header;
+        for (FineGrainedSkipList.Node node = list.header.forward[0]; node != list.header;
+                node = node.forward[0]) {
+            assertEquals(previous, node.backward);
+            previous = node;
+        }
+        assertEquals(previous, list.header.backward);
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        FineGrainedSkipList[] lists = {
+            new FineGrainedSkipList(12), linked(12, 0), linked(12, 16),
+        };
+        for (FineGrainedSkipList list : lists) {
+            TreeSet<Integer> benchmark = new TreeSet<>();
+            Random random = new Random(53);
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(2000);
+                switch (random.nextInt(6)) {
+                    case 0:
+                        assertEquals(benchmark.pollFirst(), list.pollFirst());
+                        break;
+                    case 1:
+                        assertEquals(benchmark.pollLast(), list.pollLast());
+                        break;
+                    case 2:
+                        list.removeRange(key, key + 10);
+                        benchmark.subSet(key, key + 10).clear();
+                        break;
+                    case 3:
+                        assertEquals(benchmark.remove(key), list.remove(key));
+                        break;
+                    default:
+                        assertEquals(benchmark.add(key), list.add(key));
+                        break;
+                }
+                if (i % 1000 == 0) {
+                    assertEquals(new ArrayList<>(benchmark.descendingSet()),
+                            drain(list.descendingIterator()));
+                    assertEquals(new ArrayList<>(benchmark.headSet(key, false).descendingSet()),
+                            drain(list.descendingIterator(key)));
+                }
+            }
+            if (list.backLinks) {
+                assertBackLinks(list);
+            }
+        }
+    }
+
+    @Test
+    public void appenderKeepsBackLinks() {
+        FineGrainedSkipList list = linked(8, 0);
+        FineGrainedSkipList.Appender appender = list.new Appender();
+        for (int key = Integer.MIN_VALUE; key < Integer.MIN_VALUE + 100; key += 2) {
+            appender.append(key);
+        }
+        assertBackLinks(list);
+        assertEquals(Integer.MIN_VALUE + 98, list.descendingIterator().nextInt());
+    }
+
+    @Test
+    public void lastBefore() {
+        FineGrainedSkipList list = linked(8, 0);
+        for (int key = 0; key < 100; key += 10) {
+            list.add(key);
+        }
+        assertArrayEquals(new int[] {40, 30, 20}, list.lastBefore(45, 3));
+        assertArrayEquals(new int[] {40, 30, 20}, list.lastBefore(50, 3));
+        assertArrayEquals(new int[] {10, 0}, list.lastBefore(20, 5));
+        assertArrayEquals(new int[0], list.lastBefore(0, 5));
+        assertArrayEquals(new int[] {90}, list.lastBefore(Integer.MAX_VALUE, 1));
+    }
+
+    @Test(expected = NoSuchElementException.class)
+    public void exhaustedIterator() {
+        PrimitiveIterator.OfInt keys = linked(4, 0).descendingIterator();
+        assertFalse(keys.hasNext());
+        keys.nextInt();
+    }
+
+    @Test
+    public void descendsWhileWritersChurn() throws InterruptedException {
+        FineGrainedSkipList list = linked(12, 32);
+        for (int key = 0; key < 4000; key += 2) {
+            list.add(key);
+        }
+        AtomicBoolean done = new AtomicBoolean();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Random random = new Random(t);
+            writers.add(new Thread(() -> {
+                while (!done.get()) {
+                    int odd = random.nextInt(2000) * 2 + 1;
+                    if (random.nextBoolean()) {
+                        list.add(odd);
+                    }
+                    else {
+                        list.remove(odd);
+                    }
+                }
+            }));
+        }
+        writers.forEach(Thread::start);
+
+        try {
+            for (int scan = 0; scan < 200; scan++) {
+                int previous = Integer.MAX_VALUE;
+                int evens = 0;
+                for (PrimitiveIterator.OfInt keys = list.descendingIterator(); keys.hasNext(); ) {
+                    int key = keys.nextInt();
+                    assertTrue(key < previous);
+                    previous = key;
+                    evens += key % 2 == 0 ? 1 : 0;
+                }
+                assertEquals(2000, evens);
+            }
+        }
+        finally {
+            done.set(true);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+        assertBackLinks(list);
+    }
+
+    @Test
+    public void descendingScanBenchmark() {
+        int keys = 1 << 18;
+        FineGrainedSkipList searched = new FineGrainedSkipList(18);
+        FineGrainedSkipList linked = linked(18, 0);
+        Random random = new Random(8);
+        for (int i = 0; i < keys; i++) {
+            int key = random.nextInt();
+            searched.add(key);
+            linked.add(key);
+        }
+
+        long time = System.nanoTime();
+        long sum = 0;
+        for (PrimitiveIterator.OfInt values = searched.descendingIterator(); values.hasNext(); ) {
+            sum += values.nextInt();
+        }
+        final long searchedTime = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (PrimitiveIterator.OfInt values = linked.descendingIterator(); values.hasNext(); ) {
+            sum -= values.nextInt();
+        }
+        long linkedTime = System.nanoTime() - time;
+
+        System.out.println("\n\nStarting Descending Scan Benchmark, keys: " + keys);
+        System.out.println("Searching descent\t" + searchedTime / keys + " ns/element");
+        System.out.println("Back-linked descent\t" + linkedTime / keys + " ns/element");
+        assertEquals(0, sum);
+    }
+}
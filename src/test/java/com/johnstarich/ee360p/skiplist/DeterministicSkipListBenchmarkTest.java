@@ -0,0 +1,114 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Compares the search paths of the randomised and deterministic lists under insertion
+ * orders that defeat naive balancing: ascending, descending, alternating ends and
+ * repeated sawtooth runs. Reports the median, p99 and worst nodes visited per search.
+ * The key count comes from the skiplist.bench.keys property.
+ */
+public class DeterministicSkipListBenchmarkTest {
+    @Rule
+    public Timeout timeout = new Timeout(300, TimeUnit.SECONDS);
+
+    private static final int KEYS = Integer.getInteger("skiplist.bench.keys", 1 << 18);
+    private static final int LOOKUPS = 1 << 18;
+
+    /**
+     * Counts the nodes a FineGrainedSkipList descent visits, as find does.
+     */
+    private static int searchCost(FineGrainedSkipList list, int searchKey) {
+        int cost = 0;
+        FineGrainedSkipList.Node predecessor = list.header;
+        for (int level = list.maxLevel - 1; level >= 0; level -= 1) {
+            FineGrainedSkipList.Node current = predecessor.forward[level];
+            cost++;
+            while (current.key < searchKey) {
+                predecessor = current;
+                current = predecessor.forward[level];
+                cost++;
+            }
+        }
+        return cost;
+    }
+
+    private static int[] order(String name) {
+        int[] keys = new int[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            switch (name) {
+                case "ascending":
+                    keys[i] = i;
+                    break;
+                case "descending":
+                    keys[i] = KEYS - 1 - i;
+                    break;
+                case "alternating":
+                    keys[i] = i % 2 == 0 ? i / 2 : KEYS - 1 - i / 2;
+                    break;
+                default:
+                    int run = 64;
+                    keys[i] = (i % run) * (KEYS / run) + i / run;
+                    break;
+            }
+        }
+        return keys;
+    }
+
+    private static String percentiles(int[] costs) {
+        Arrays.sort(costs);
+        return String.format("p50 %3d  p99 %3d  max %3d", costs[costs.length / 2],
+                costs[costs.length * 99 / 100], costs[costs.length - 1]);
+    }
+
+    @Test
+    public void deterministicSkipListBenchmarkTest() {
+        int maxLevel = 32 - Integer.numberOfLeadingZeros(KEYS);
+        Random random = new Random(5);
+        int[] lookups = new int[LOOKUPS];
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups[i] = random.nextInt(KEYS);
+        }
+
+        System.out.println("\n\nStarting Adversarial Order Benchmark, keys: " + KEYS);
+        for (String name : new String[] {"ascending", "descending", "alternating", "sawtooth"}) {
+            int[] keys = order(name);
+            FineGrainedSkipList randomised = new FineGrainedSkipList(maxLevel);
+            DeterministicSkipList deterministic = new DeterministicSkipList(maxLevel + 2);
+
+            long time = System.nanoTime();
+            for (int key : keys) {
+                randomised.add(key);
+            }
+            final long randomisedInsert = System.nanoTime() - time;
+            time = System.nanoTime();
+            for (int key : keys) {
+                deterministic.add(key);
+            }
+            long deterministicInsert = System.nanoTime() - time;
+
+            int[] randomisedCosts = new int[LOOKUPS];
+            int[] deterministicCosts = new int[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                randomisedCosts[i] = searchCost(randomised, lookups[i]);
+                deterministicCosts[i] = deterministic.searchCost(lookups[i]);
+            }
+            int bound = (DeterministicSkipList.MAX_GAP + 1) * deterministic.height();
+
+            System.out.printf("%-12s Fine-Grained    %s  insert %d ns/key%n", name,
+                    percentiles(randomisedCosts), randomisedInsert / KEYS);
+            System.out.printf("%-12s Deterministic   %s  insert %d ns/key  bound %d%n", name,
+                    percentiles(deterministicCosts), deterministicInsert / KEYS, bound);
+
+            assertTrue(deterministicCosts[LOOKUPS - 1] <= bound);
+        }
+    }
+}
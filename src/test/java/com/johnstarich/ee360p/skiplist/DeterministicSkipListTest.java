@@ -0,0 +1,183 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for DeterministicSkipList and its gap invariant.
+ */
+public class DeterministicSkipListTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    /**
+     * Checks every tower is linked on all its levels and every gap holds at most three
+     * towers, returning the largest gap.
+     */
+    private static int assertGaps(DeterministicSkipList list) {
+        int largest = 0;
+        for (int level = 1; level < list.height; level += 1) {
+            for (DeterministicSkipList.Node node = list.head; node != list.tail; ) {
+                DeterministicSkipList.Node next = node.forward[level];
+                int gap = 0;
+                for (DeterministicSkipList.Node below = node.forward[level - 1]; below != next;
+                        below = below.forward[level - 1]) {
+                    assertEquals(level - 1, below.level);
+                    gap += 1;
+                }
+                assertTrue("gap of " + gap + " on level " + level,
+                        gap <= DeterministicSkipList.MAX_GAP);
+                largest = Math.max(largest, gap);
+                node = next;
+            }
+        }
+        assertTrue(list.height == list.maxLevel || list.head.forward[list.height] == list.tail);
+        return largest;
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        DeterministicSkipList list = new DeterministicSkipList(20);
+        TreeSet<Integer> benchmark = new TreeSet<>();
+        Random random = new Random(11);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(2000) - 1000;
+            if (random.nextInt(3) > 0) {
+                assertEquals(benchmark.add(key), list.add(key));
+            }
+            else {
+                assertEquals(benchmark.remove(key), list.remove(key));
+            }
+            if (i % 1000 == 0) {
+                assertGaps(list);
+            }
+            assertEquals(benchmark.contains(key), list.contains(key));
+        }
+        assertEquals(benchmark.size(), list.size());
+        assertEquals(new ArrayList<>(benchmark), new ArrayList<>(list));
+        assertGaps(list);
+    }
+
+    @Test
+    public void adversarialOrdersStayBalanced() {
+        int keys = 1 << 14;
+        int[][] orders = {new int[keys], new int[keys], new int[keys]};
+        for (int i = 0; i < keys; i++) {
+            orders[0][i] = i;
+            orders[1][i] = keys - i;
+            orders[2][i] = i % 2 == 0 ? i / 2 : keys - i / 2;
+        }
+        int bound = 2 + 32 - Integer.numberOfLeadingZeros(keys);
+
+        for (int[] order : orders) {
+            DeterministicSkipList list = new DeterministicSkipList(24);
+            for (int key : order) {
+                list.add(key);
+            }
+            assertGaps(list);
+            assertTrue("height " + list.height(), list.height() <= bound);
+            for (int key = 0; key <= keys; key++) {
+                assertTrue(list.searchCost(key) <= (DeterministicSkipList.MAX_GAP + 1)
+                        * list.height());
+            }
+
+            for (int i = 0; i < order.length; i += 2) {
+                assertTrue(list.remove(order[i]));
+            }
+            assertGaps(list);
+            assertEquals(keys / 2, list.size());
+            assertTrue(list.height() <= bound);
+        }
+    }
+
+    @Test
+    public void shrinksWhenEmptied() {
+        DeterministicSkipList list = new DeterministicSkipList(16);
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+        assertTrue(list.height() > 3);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(list.remove(i));
+        }
+        assertTrue(list.isEmpty());
+        assertEquals(1, list.height());
+        assertFalse(list.iterator().hasNext());
+    }
+
+    @Test
+    public void extremeKeys() {
+        DeterministicSkipList list = new DeterministicSkipList(8);
+        assertTrue(list.add(Integer.MAX_VALUE));
+        assertTrue(list.add(Integer.MIN_VALUE));
+        assertFalse(list.add(Integer.MAX_VALUE));
+        assertTrue(list.contains(Integer.MAX_VALUE));
+        assertTrue(list.contains(Integer.MIN_VALUE));
+
+        Iterator<Integer> iterator = list.iterator();
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), iterator.next());
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE), iterator.next());
+        assertFalse(iterator.hasNext());
+    }
+
+    @Test
+    public void iteratorResumesAfterWrites() {
+        DeterministicSkipList list = new DeterministicSkipList(12);
+        for (int i = 0; i < 100; i += 2) {
+            list.add(i);
+        }
+        Iterator<Integer> iterator = list.iterator();
+        assertEquals(Integer.valueOf(0), iterator.next());
+        assertEquals(Integer.valueOf(2), iterator.next());
+        list.remove(4);
+        list.add(3);
+        list.add(5);
+        assertEquals(Integer.valueOf(3), iterator.next());
+        assertEquals(Integer.valueOf(5), iterator.next());
+        assertEquals(Integer.valueOf(6), iterator.next());
+    }
+
+    @Test
+    public void optimisticReadersDuringWrites() throws InterruptedException {
+        DeterministicSkipList list = new DeterministicSkipList(16);
+        for (int i = 0; i < 4000; i += 2) {
+            list.add(i);
+        }
+        AtomicBoolean failed = new AtomicBoolean();
+        AtomicBoolean done = new AtomicBoolean();
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                for (int i = 0; i < 4000; i += 2) {
+                    if (!list.contains(i)) {
+                        failed.set(true);
+                    }
+                }
+            }
+        });
+        reader.start();
+
+        Random random = new Random(3);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(2000) * 2 + 1;
+            if (!list.add(key)) {
+                list.remove(key);
+            }
+        }
+        done.set(true);
+        reader.join();
+
+        assertFalse(failed.get());
+        assertGaps(list);
+    }
+}
@@ -0,0 +1,127 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for ExpiringSkipList.
+ */
+public class ExpiringSkipListTest {
+    @Rule public Timeout timeout = new Timeout(15, TimeUnit.SECONDS);
+
+    private final AtomicLong now = new AtomicLong(1_000L);
+    private final ExpiringSkipList list =
+            new ExpiringSkipList(8, 100, TimeUnit.NANOSECONDS, now::get);
+
+    @Test
+    public void expiredKeysAreAbsent() {
+        assertTrue(list.add(1));
+        assertTrue(list.add(2, 300, TimeUnit.NANOSECONDS));
+        assertFalse(list.add(1));
+        now.addAndGet(100);
+
+        assertFalse(list.contains(1));
+        assertTrue(list.contains(2));
+        assertEquals(1, list.size());
+        assertEquals(Arrays.asList(2), new ArrayList<>(list));
+        assertTrue(list.add(1));
+        assertFalse(list.contains("1"));
+
+        now.addAndGet(300);
+        assertTrue(list.isEmpty());
+    }
+
+    @Test
+    public void renewingExtendsDeadline() {
+        list.add(1);
+        now.addAndGet(60);
+        list.add(1);
+        now.addAndGet(60);
+        assertTrue(list.contains(1));
+        assertEquals(0, list.sweep(10));
+        assertEquals(1, list.timeIndex.size());
+    }
+
+    @Test
+    public void sweepRemovesExpiredInBatches() {
+        for (int i = 0; i < 10; i++) {
+            list.add(i);
+            now.incrementAndGet();
+        }
+        list.add(100, 1, TimeUnit.SECONDS);
+        now.addAndGet(100);
+
+        assertEquals(4, list.sweep(4));
+        assertEquals(7, list.deadlines.size());
+        assertEquals(6, list.sweep(100));
+        assertEquals(1, list.deadlines.size());
+        assertEquals(1, list.timeIndex.size());
+        assertTrue(list.contains(100));
+    }
+
+    @Test
+    public void unboundedTtlDoesNotBlockSweeps() {
+        AtomicLong wrapping = new AtomicLong(Long.MAX_VALUE - 50);
+        ExpiringSkipList list = new ExpiringSkipList(8, 100, TimeUnit.NANOSECONDS,
+                wrapping::get);
+        list.add(0, Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        list.add(1, Long.MAX_VALUE, TimeUnit.DAYS);
+        for (int i = 2; i < 6; i++) {
+            list.add(i);
+        }
+        wrapping.addAndGet(100);
+
+        assertEquals(4, list.sweep(10));
+        assertEquals(Arrays.asList(0, 1), new ArrayList<>(list));
+        assertTrue(list.contains(0));
+        assertTrue(list.contains(1));
+
+        list.add(7);
+        wrapping.addAndGet(100);
+        assertEquals(1, list.sweep(10));
+        assertEquals(2, list.timeIndex.size());
+    }
+
+    @Test
+    public void removeClearsTimeIndex() {
+        list.add(5);
+        assertTrue(list.remove(5));
+        assertFalse(list.remove(5));
+        assertEquals(0, list.timeIndex.size());
+    }
+
+    @Test
+    public void backgroundSweeper() throws InterruptedException {
+        ExpiringSkipList sessions = new ExpiringSkipList(8, 10, TimeUnit.MILLISECONDS);
+        for (int i = 0; i < 1000; i++) {
+            sessions.add(i);
+        }
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            ScheduledFuture<?> sweeper =
+                    sessions.scheduleSweeper(executor, 5, TimeUnit.MILLISECONDS, 100);
+            while (sessions.deadlines.size() > 0) {
+                Thread.sleep(5);
+            }
+            sweeper.cancel(false);
+        }
+        finally {
+            executor.shutdown();
+        }
+        assertEquals(0, sessions.timeIndex.size());
+        assertEquals(0, sessions.size());
+    }
+}
@@ -0,0 +1,133 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for FineGrainedLongSkipList.
+ */
+public class FineGrainedLongSkipListTest {
+    @Rule public Timeout timeout = new Timeout(15, TimeUnit.SECONDS);
+
+    @Test
+    public void extremeKeys() {
+        FineGrainedLongSkipList s = new FineGrainedLongSkipList(8);
+        assertTrue(s.add(Long.MAX_VALUE));
+        assertTrue(s.add(Long.MIN_VALUE));
+        assertTrue(s.add(0L));
+        assertFalse(s.add(Long.MAX_VALUE));
+        assertEquals(3, s.size());
+
+        assertTrue(s.contains(Long.MAX_VALUE));
+        assertTrue(s.contains(Long.MIN_VALUE));
+        assertFalse(s.contains(1L));
+
+        PrimitiveIterator.OfLong iter = s.longIterator();
+        assertEquals(Long.MIN_VALUE, iter.nextLong());
+        assertEquals(0L, iter.nextLong());
+        assertEquals(Long.MAX_VALUE, iter.nextLong());
+        assertFalse(iter.hasNext());
+
+        assertTrue(s.remove(Long.MAX_VALUE));
+        assertFalse(s.remove(Long.MAX_VALUE));
+        assertFalse(s.contains(Long.MAX_VALUE));
+        assertEquals(2, s.size());
+    }
+
+    @Test
+    public void boxedApi() {
+        FineGrainedLongSkipList s = new FineGrainedLongSkipList(8);
+        assertTrue(s.add(Long.valueOf(5)));
+        assertTrue(s.contains(Long.valueOf(5)));
+        assertFalse(s.contains(Integer.valueOf(5)));
+        assertFalse(s.remove("5"));
+        assertEquals("[5]", s.toString());
+    }
+
+    @Test
+    public void matchesJavaSet() {
+        FineGrainedLongSkipList s = new FineGrainedLongSkipList(16);
+        ConcurrentSkipListSet<Long> benchmark = new ConcurrentSkipListSet<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 10000; i++) {
+            long key = random.nextLong() >> 50;
+            if (random.nextBoolean()) {
+                assertEquals(benchmark.add(key), s.add(key));
+            }
+            else {
+                assertEquals(benchmark.remove(key), s.remove(key));
+            }
+        }
+        assertEquals(benchmark.size(), s.size());
+        assertEquals(new ArrayList<>(benchmark), new ArrayList<>(s));
+    }
+
+    @Test
+    public void parallelAdd() throws InterruptedException {
+        FineGrainedLongSkipList s = new FineGrainedLongSkipList(16);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final long offset = t;
+            threads.add(new Thread(() -> {
+                for (long i = 0; i < 1000; i++) {
+                    s.add(i * 8 + offset);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(8000, s.size());
+        PrimitiveIterator.OfLong iter = s.longIterator();
+        for (long i = 0; i < 8000; i++) {
+            assertEquals(i, iter.nextLong());
+        }
+    }
+
+    @Test
+    public void churnNeverLinksDuplicates() throws InterruptedException {
+        FineGrainedLongSkipList s = new FineGrainedLongSkipList(16);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    long key = random.nextInt(64);
+                    if (random.nextBoolean()) {
+                        s.add(key);
+                    }
+                    else {
+                        s.remove(key);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int count = 0;
+        long previous = -1;
+        for (PrimitiveIterator.OfLong iter = s.longIterator(); iter.hasNext(); count++) {
+            long key = iter.nextLong();
+            assertTrue(key > previous);
+            previous = key;
+        }
+        assertEquals(count, s.size());
+    }
+}
@@ -0,0 +1,183 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for FineGrainedSkipListMap and PrefixComparator.
+ */
+public class FineGrainedSkipListMapTest {
+    @Rule public Timeout timeout = new Timeout(15, TimeUnit.SECONDS);
+
+    private final Random random = new Random(7);
+
+    private byte[] randomBytes() {
+        byte[] bytes = new byte[random.nextInt(12)];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (random.nextInt(3) * 127);
+        }
+        return bytes;
+    }
+
+    private String randomString() {
+        StringBuilder s = new StringBuilder();
+        for (int length = random.nextInt(7); length > 0; length--) {
+            s.append((char) ('a' + random.nextInt(3)));
+        }
+        return s.toString();
+    }
+
+    private <K> void assertPrefixPreservesOrder(PrefixComparator<K> comparator, K a, K b) {
+        int prefixOrder = Long.compareUnsigned(comparator.prefix(a), comparator.prefix(b));
+        if (prefixOrder != 0) {
+            assertEquals(Integer.signum(prefixOrder), Integer.signum(comparator.compare(a, b)));
+        }
+    }
+
+    @Test
+    public void prefixesPreserveOrder() {
+        for (int i = 0; i < 10000; i++) {
+            assertPrefixPreservesOrder(PrefixComparator.BYTES, randomBytes(), randomBytes());
+            assertPrefixPreservesOrder(PrefixComparator.STRINGS, randomString(), randomString());
+            assertPrefixPreservesOrder(PrefixComparator.INTEGERS,
+                    random.nextInt(), random.nextInt());
+            assertPrefixPreservesOrder(PrefixComparator.LONGS,
+                    random.nextLong(), random.nextLong());
+        }
+    }
+
+    @Test
+    public void unsignedBytes() {
+        byte[] low = {0x01};
+        byte[] high = {(byte) 0xF0};
+        assertTrue(PrefixComparator.BYTES.compare(low, high) < 0);
+        assertTrue(PrefixComparator.BYTES.compare(new byte[] {1, 2}, new byte[] {1, 2, 0}) < 0);
+        assertEquals(0, PrefixComparator.BYTES.compare(new byte[] {1, 2}, new byte[] {1, 2}));
+    }
+
+    @Test
+    public void byteArrayKeys() {
+        FineGrainedSkipListMap<byte[], Integer> map =
+                new FineGrainedSkipListMap<>(8, PrefixComparator.BYTES);
+        assertNull(map.put(new byte[] {(byte) 0x80}, 1));
+        assertNull(map.put(new byte[] {0x01, 0x02}, 2));
+        assertNull(map.put(new byte[] {0x01}, 3));
+        assertEquals(Integer.valueOf(3), map.put(new byte[] {0x01}, 4));
+
+        assertEquals(3, map.size());
+        assertEquals(Integer.valueOf(4), map.get(new byte[] {0x01}));
+        assertTrue(map.containsKey(new byte[] {0x01, 0x02}));
+        assertFalse(map.containsKey(new byte[] {0x02}));
+
+        List<byte[]> keys = new ArrayList<>(map.keySet());
+        assertArrayEquals(new byte[] {0x01}, keys.get(0));
+        assertArrayEquals(new byte[] {0x01, 0x02}, keys.get(1));
+        assertArrayEquals(new byte[] {(byte) 0x80}, keys.get(2));
+    }
+
+    @Test
+    public void concurrentMapOperations() {
+        FineGrainedSkipListMap<String, String> map =
+                new FineGrainedSkipListMap<>(8, PrefixComparator.STRINGS);
+        assertNull(map.putIfAbsent("key", "a"));
+        assertEquals("a", map.putIfAbsent("key", "b"));
+        assertFalse(map.replace("key", "b", "c"));
+        assertTrue(map.replace("key", "a", "c"));
+        assertEquals("c", map.replace("key", "d"));
+        assertFalse(map.remove("key", "c"));
+        assertTrue(map.remove("key", "d"));
+        assertNull(map.get("key"));
+        assertNull(map.replace("key", "e"));
+        assertEquals(0, map.size());
+    }
+
+    @Test
+    public void matchesTreeMap() {
+        FineGrainedSkipListMap<String, Integer> map =
+                new FineGrainedSkipListMap<>(12, Comparator.<String>naturalOrder());
+        TreeMap<String, Integer> benchmark = new TreeMap<>();
+        for (int i = 0; i < 20000; i++) {
+            String key = randomString();
+            if (random.nextInt(3) > 0) {
+                assertEquals(benchmark.put(key, i), map.put(key, i));
+            }
+            else {
+                assertEquals(benchmark.remove(key), map.remove(key));
+            }
+        }
+        assertEquals(benchmark.size(), map.size());
+        assertEquals(new ArrayList<>(benchmark.entrySet()), new ArrayList<>(map.entrySet()));
+    }
+
+    @Test
+    public void parallelPut() throws InterruptedException {
+        FineGrainedSkipListMap<String, Integer> map =
+                new FineGrainedSkipListMap<>(16, PrefixComparator.STRINGS);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 1000; i++) {
+                    map.merge(String.format("%05d", i), 1, Integer::sum);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(1000, map.size());
+        for (Map.Entry<String, Integer> entry : map.entrySet()) {
+            assertEquals(Integer.valueOf(8), entry.getValue());
+        }
+    }
+
+    @Test
+    public void churnNeverLinksDuplicates() throws InterruptedException {
+        FineGrainedSkipListMap<Integer, Integer> map =
+                new FineGrainedSkipListMap<>(16, PrefixComparator.INTEGERS);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random keys = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    int key = keys.nextInt(64);
+                    if (keys.nextBoolean()) {
+                        map.put(key, i);
+                    }
+                    else {
+                        map.remove(key);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        int count = 0;
+        int previous = -1;
+        for (int key : map.keySet()) {
+            assertTrue(key > previous);
+            previous = key;
+            count++;
+        }
+        assertEquals(count, map.size());
+    }
+}
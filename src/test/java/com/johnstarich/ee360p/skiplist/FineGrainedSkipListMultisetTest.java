@@ -0,0 +1,217 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for FineGrainedSkipListMultiset.
+ */
+public class FineGrainedSkipListMultisetTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    @Test
+    public void countsAndRemovesAtZero() {
+        FineGrainedSkipListMultiset s = new FineGrainedSkipListMultiset(8);
+        assertEquals(0, s.add(5, -1));
+        assertEquals(0, s.size());
+        assertEquals(2, s.add(5, 2));
+        assertEquals(5, s.add(5, 3));
+        assertEquals(5, s.add(5, 0));
+        assertEquals(1, s.size());
+        assertEquals(1, s.add(5, -4));
+        assertTrue(s.contains(5));
+        assertEquals(0, s.add(5, -10));
+        assertFalse(s.contains(5));
+        assertEquals(0, s.count(5));
+        assertEquals(0, s.size());
+        assertEquals(1, s.add(5, 1));
+    }
+
+    @Test
+    public void extremeKeys() {
+        FineGrainedSkipListMultiset s = new FineGrainedSkipListMultiset(8);
+        s.add(Integer.MAX_VALUE, 3);
+        s.add(Integer.MIN_VALUE, 1);
+        s.add(0, 2);
+        assertEquals(3, s.count(Integer.MAX_VALUE));
+        assertEquals(1, s.count(Integer.MIN_VALUE));
+
+        PrimitiveIterator.OfInt keys = s.keyIterator();
+        assertEquals(Integer.MIN_VALUE, keys.nextInt());
+        assertEquals(0, keys.nextInt());
+        assertEquals(Integer.MAX_VALUE, keys.nextInt());
+        assertFalse(keys.hasNext());
+    }
+
+    @Test(expected = ArithmeticException.class)
+    public void countOverflow() {
+        FineGrainedSkipListMultiset s = new FineGrainedSkipListMultiset(8);
+        s.add(1, Integer.MAX_VALUE);
+        try {
+            s.add(1, 1);
+        }
+        finally {
+            assertEquals(Integer.MAX_VALUE, s.count(1));
+        }
+    }
+
+    @Test
+    public void matchesTreeMap() {
+        FineGrainedSkipListMultiset s = new FineGrainedSkipListMultiset(12);
+        TreeMap<Integer, Integer> benchmark = new TreeMap<>();
+        Random random = new Random(46);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(500);
+            int delta = random.nextInt(9) - 4;
+            int expected = Math.max(0, benchmark.getOrDefault(key, 0) + delta);
+            if (expected == 0) {
+                benchmark.remove(key);
+            }
+            else {
+                benchmark.put(key, expected);
+            }
+            assertEquals(expected, s.add(key, delta));
+            assertEquals(expected, s.count(key));
+        }
+
+        assertEquals(benchmark.size(), s.size());
+        PrimitiveIterator.OfInt keys = s.keyIterator();
+        for (Map.Entry<Integer, Integer> entry : benchmark.entrySet()) {
+            int key = keys.nextInt();
+            assertEquals((int) entry.getKey(), key);
+            assertEquals((int) entry.getValue(), s.count(key));
+        }
+        assertFalse(keys.hasNext());
+    }
+
+    @Test
+    public void concurrentIncrementsAreNotLost() throws InterruptedException {
+        FineGrainedSkipListMultiset s = new FineGrainedSkipListMultiset(8);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 40000; i++) {
+                    s.add(i % 64, 1);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(64, s.size());
+        for (int key = 0; key < 64; key++) {
+            assertEquals(8 * 40000 / 64, s.count(key));
+        }
+    }
+
+    @Test
+    public void concurrentChurnThroughZero() throws InterruptedException {
+        FineGrainedSkipListMultiset s = new FineGrainedSkipListMultiset(8);
+        s.add(-1, 1);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 6; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    int key = random.nextInt(8);
+                    int delta = random.nextInt(3) + 1;
+                    if (s.add(key, delta) < delta) {
+                        failed.set(true);
+                    }
+                    s.add(key, -delta);
+                    if (s.count(-1) != 1) {
+                        failed.set(true);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed.get());
+        assertEquals(1, s.size());
+        for (int key = 0; key < 8; key++) {
+            assertEquals(0, s.count(key));
+        }
+    }
+
+    @Test
+    public void counterBenchmark() throws InterruptedException {
+        int threadCount = 4;
+        int operations = 400000;
+        int keys = 1 << 12;
+
+        FineGrainedSkipList list = new FineGrainedSkipList(16);
+        ConcurrentHashMap<Integer, AtomicInteger> counters = new ConcurrentHashMap<>();
+        FineGrainedSkipListMultiset multiset = new FineGrainedSkipListMultiset(16);
+        for (int key = 0; key < keys; key++) {
+            list.add(key);
+            counters.put(key, new AtomicInteger(1));
+            multiset.add(key, 1);
+        }
+
+        final long separate = timeThreads(threadCount, random -> {
+            for (int i = 0; i < operations; i++) {
+                int key = random.nextInt(keys);
+                list.add(key);
+                counters.computeIfAbsent(key, k -> new AtomicInteger()).incrementAndGet();
+            }
+        });
+        long combined = timeThreads(threadCount, random -> {
+            for (int i = 0; i < operations; i++) {
+                multiset.add(random.nextInt(keys), 1);
+            }
+        });
+
+        long total = (long) threadCount * operations;
+        System.out.println("\n\nStarting Multiset Counter Benchmark, threads: " + threadCount);
+        System.out.println("Set plus counter map\t" + separate / total + " ns/increment");
+        System.out.println("Counted multiset\t" + combined / total + " ns/increment");
+
+        long sum = 0;
+        for (PrimitiveIterator.OfInt iter = multiset.keyIterator(); iter.hasNext(); ) {
+            sum += multiset.count(iter.nextInt());
+        }
+        assertEquals(keys + total, sum);
+    }
+
+    private interface Workload {
+        void run(Random random);
+    }
+
+    private static long timeThreads(int threadCount, Workload workload)
+            throws InterruptedException {
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < threadCount; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> workload.run(random)));
+        }
+        long start = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        return System.nanoTime() - start;
+    }
+}
@@ -0,0 +1,180 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for the FineGrainedSkipList hash index and the higher and ceiling lookups.
+ */
+public class HashIndexTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static FineGrainedSkipList indexed(int maxLevel, int poolSize) {
+        return new FineGrainedSkipList(maxLevel, BackoffPolicy.DEFAULT, poolSize, true);
+    }
+
+    private static void assertMatches(TreeSet<Integer> benchmark, FineGrainedSkipList list,
+            int key) {
+        assertEquals(benchmark.contains(key), list.contains(key));
+        assertEquals(benchmark.higher(key), list.higher(key));
+        assertEquals(benchmark.ceiling(key), list.ceiling(key));
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        FineGrainedSkipList[] lists = {
+            new FineGrainedSkipList(12), indexed(12, 0), indexed(12, 16),
+        };
+        for (FineGrainedSkipList list : lists) {
+            TreeSet<Integer> benchmark = new TreeSet<>();
+            Random random = new Random(17);
+            for (int i = 0; i < 20000; i++) {
+                int key = random.nextInt(1000);
+                switch (random.nextInt(8)) {
+                    case 0:
+                        assertEquals(benchmark.pollFirst(), list.pollFirst());
+                        break;
+                    case 1:
+                        assertEquals(benchmark.subSet(key, key + 20).size(),
+                                list.removeRange(key, key + 20));
+                        benchmark.subSet(key, key + 20).clear();
+                        break;
+                    case 2:
+                    case 3:
+                        assertEquals(benchmark.remove(key), list.remove(key));
+                        break;
+                    default:
+                        assertEquals(benchmark.add(key), list.add(key));
+                        break;
+                }
+                assertMatches(benchmark, list, key);
+                assertMatches(benchmark, list, random.nextInt(1000));
+            }
+            assertEquals(new ArrayList<>(benchmark), new ArrayList<>(list));
+            if (list.index != null) {
+                assertEquals(list.size(), list.index.size());
+            }
+        }
+    }
+
+    @Test
+    public void emptyAndExtremes() {
+        FineGrainedSkipList list = indexed(8, 0);
+        assertNull(list.higher(0));
+        assertNull(list.ceiling(Integer.MIN_VALUE));
+        assertFalse(list.contains("not an integer"));
+
+        list.add(Integer.MIN_VALUE);
+        list.add(Integer.MAX_VALUE - 1);
+        assertEquals(Integer.valueOf(Integer.MAX_VALUE - 1), list.higher(Integer.MIN_VALUE));
+        assertNull(list.higher(Integer.MAX_VALUE - 1));
+        assertNull(list.higher(Integer.MAX_VALUE));
+        assertEquals(Integer.valueOf(Integer.MIN_VALUE), list.ceiling(Integer.MIN_VALUE));
+    }
+
+    @Test
+    public void appenderIndexesKeys() {
+        FineGrainedSkipList list = indexed(8, 0);
+        FineGrainedSkipList.Appender appender = list.new Appender();
+        for (int key = 0; key < 100; key += 3) {
+            appender.append(key);
+        }
+        assertTrue(list.contains(33));
+        assertFalse(list.contains(34));
+        assertEquals(Integer.valueOf(36), list.higher(33));
+        assertEquals(list.size(), list.index.size());
+    }
+
+    @Test
+    public void indexStaysInSyncUnderChurn() throws InterruptedException {
+        FineGrainedSkipList list = indexed(12, 32);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    int key = random.nextInt(512);
+                    if (random.nextBoolean()) {
+                        list.add(key);
+                    }
+                    else {
+                        list.remove(key);
+                    }
+                    Integer successor = list.higher(key);
+                    if (successor != null && successor <= key) {
+                        failed.set(true);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertFalse(failed.get());
+
+        TreeSet<Integer> linked = new TreeSet<>();
+        for (FineGrainedSkipList.Node node = list.header.forward[0]; node != list.header;
+                node = node.forward[0]) {
+            assertTrue(node.fullyLinked && !node.markedForRemoval);
+            linked.add(node.key);
+        }
+        assertEquals(linked.size(), list.index.size());
+        for (int key = 0; key < 512; key++) {
+            FineGrainedSkipList.Node node = list.index.get(key);
+            assertEquals(linked.contains(key), node != null);
+            if (node != null) {
+                assertEquals(key, node.key);
+            }
+        }
+    }
+
+    @Test
+    public void pointLookupBenchmark() {
+        int keys = 1 << 18;
+        FineGrainedSkipList searched = new FineGrainedSkipList(18);
+        FineGrainedSkipList hashed = indexed(18, 0);
+        Random random = new Random(1);
+        for (int i = 0; i < keys; i++) {
+            int key = random.nextInt(keys * 2);
+            searched.add(key);
+            hashed.add(key);
+        }
+
+        int[] lookups = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            lookups[i] = random.nextInt(keys * 2);
+        }
+        int found = 0;
+        long time = System.nanoTime();
+        for (int key : lookups) {
+            found += searched.contains(key) ? 1 : 0;
+        }
+        final long searchedTime = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int key : lookups) {
+            found -= hashed.contains(key) ? 1 : 0;
+        }
+        long hashedTime = System.nanoTime() - time;
+
+        System.out.println("\n\nStarting Hash Index Benchmark, keys: " + keys);
+        System.out.println("Fine-Grained contains\t" + searchedTime / keys + " ns/lookup");
+        System.out.println("Hash-indexed contains\t" + hashedTime / keys + " ns/lookup");
+        assertEquals(0, found);
+    }
+}
@@ -0,0 +1,134 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for LevelRebalancer and FineGrainedSkipList.tryRelevel.
+ */
+public class LevelRebalancerTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static final int KEYS = 1 << 16;
+
+    /**
+     * Leaves only the nodes with towers of at least three levels, as a delete wave might.
+     */
+    private FineGrainedSkipList skewedList() {
+        FineGrainedSkipList list = new FineGrainedSkipList(20);
+        for (int i = 0; i < KEYS; i++) {
+            list.add(i);
+        }
+        List<Integer> shortTowers = new ArrayList<>();
+        for (FineGrainedSkipList.Node node = list.header.forward[0]; node != list.header;
+                node = node.forward[0]) {
+            if (node.level < 3) {
+                shortTowers.add(node.key);
+            }
+        }
+        shortTowers.forEach(list::remove);
+        return list;
+    }
+
+    private void assertGeometric(FineGrainedSkipList list) {
+        int[] histogram = list.levelHistogram();
+        int atOrAbove = 0;
+        for (int level = histogram.length - 1; level >= 1; level--) {
+            atOrAbove += histogram[level];
+            int expected = list.size() >> level;
+            if (expected >= 64) {
+                assertTrue("level " + level + " has " + atOrAbove + " towers, expected "
+                        + expected, Math.abs(atOrAbove - expected) <= expected / 2);
+            }
+        }
+    }
+
+    @Test
+    public void relevelKeepsContents() {
+        FineGrainedSkipList list = new FineGrainedSkipList(8);
+        for (int i = 0; i < 100; i++) {
+            list.add(i);
+        }
+        list.enter();
+        try {
+            FineGrainedSkipList.Node node = list.header.forward[0].forward[0];
+            final int original = node.level;
+            assertTrue(list.tryRelevel(node, 7));
+            assertEquals(7, node.level);
+            assertTrue(list.tryRelevel(node, 0));
+            assertTrue(list.tryRelevel(node, original));
+        }
+        finally {
+            list.exit();
+        }
+        for (int i = 0; i < 100; i++) {
+            assertTrue(list.remove(i));
+        }
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public void passRestoresDistribution() {
+        FineGrainedSkipList list = skewedList();
+        final int size = list.size();
+        assertEquals(0, list.levelHistogram()[0]);
+
+        LevelRebalancer rebalancer = new LevelRebalancer(list, 1.0);
+        while (!rebalancer.step(LevelRebalancer.STEP)) {
+            continue;
+        }
+        assertTrue(rebalancer.moved() > 0);
+        assertGeometric(list);
+        assertEquals(size, list.size());
+
+        int previous = -1;
+        for (int key : list) {
+            assertTrue(key > previous);
+            assertTrue(list.contains(key));
+            previous = key;
+        }
+    }
+
+    @Test
+    public void rebalancesAlongsideWriters() throws InterruptedException {
+        FineGrainedSkipList list = skewedList();
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            writers.add(new Thread(() -> {
+                for (int i = KEYS + offset; i < KEYS * 2; i += 4) {
+                    list.add(i);
+                }
+                for (int i = KEYS + offset; i < KEYS * 2; i += 8) {
+                    list.remove(i);
+                }
+            }));
+        }
+
+        try (LevelRebalancer rebalancer =
+                     new LevelRebalancer(list, 0.5, 1, TimeUnit.MILLISECONDS)) {
+            rebalancer.start();
+            writers.forEach(Thread::start);
+            for (Thread writer : writers) {
+                writer.join();
+            }
+        }
+
+        int expected = 0;
+        for (int key : list) {
+            assertTrue(list.contains(key));
+            assertTrue(list.remove(key));
+            expected++;
+        }
+        assertTrue(expected > KEYS / 2);
+        assertEquals(0, list.size());
+    }
+}
@@ -0,0 +1,304 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for LsmSkipList and the sorted runs it flushes to.
+ */
+public class LsmSkipListTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private static List<Integer> scan(LsmSkipList list, int from, int to) {
+        List<Integer> keys = new ArrayList<>();
+        list.scan(from, to, keys::add);
+        return keys;
+    }
+
+    private static List<String> runFiles(Path directory) throws IOException {
+        return Files.list(directory).map(file -> file.getFileName().toString()).sorted()
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    public void flushesAndCompacts() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (LsmSkipList list = new LsmSkipList(directory, 8, 10, 3, Runnable::run)) {
+            for (int key = 0; key < 30; key++) {
+                list.add(key);
+            }
+            assertEquals(3, list.runCount());
+            assertEquals(0, list.memtableEntries());
+
+            for (int key = 0; key < 10; key++) {
+                list.remove(key * 2);
+            }
+            assertEquals(1, list.runCount());
+            assertEquals(1, runFiles(directory).size());
+            assertFalse(list.contains(0));
+            assertTrue(list.contains(1));
+            assertTrue(list.contains(29));
+            assertFalse(list.contains(30));
+
+            list.add(0);
+            list.remove(1);
+            assertEquals(1, list.runCount());
+            assertEquals(2, list.memtableEntries());
+            assertTrue(list.contains(0));
+            assertFalse(list.contains(1));
+            assertEquals(Arrays.asList(0, 3, 5, 7, 9, 11, 13, 15, 17, 19, 20, 21),
+                    scan(list, -5, 22));
+        }
+    }
+
+    @Test
+    public void compactsSimilarSizedRunsOnly() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        try (LsmSkipList list = new LsmSkipList(directory, 8, 10, 3, Runnable::run)) {
+            for (int key = 0; key < 40; key++) {
+                list.add(key);
+            }
+            assertEquals(Arrays.asList("run-0-3.run"), runFiles(directory));
+
+            for (int key = 40; key < 70; key++) {
+                list.add(key);
+            }
+            assertEquals(Arrays.asList("run-0-3.run", "run-4-6.run"), runFiles(directory));
+
+            for (int key = 0; key < 10; key++) {
+                list.remove(key);
+            }
+            for (int key = 70; key < 80; key++) {
+                list.add(key);
+            }
+            // The tombstones were merged without the oldest run, so they still hide its keys
+            assertEquals(Arrays.asList("run-0-3.run", "run-4-6.run", "run-7-8.run"),
+                    runFiles(directory));
+            assertFalse(list.contains(0));
+            assertTrue(list.contains(10));
+            assertEquals(70, scan(list, Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+
+            for (int key = 80; key < 90; key++) {
+                list.add(key);
+            }
+            assertEquals(Arrays.asList("run-0-9.run"), runFiles(directory));
+            assertFalse(list.contains(0));
+            assertEquals(80, scan(list, Integer.MIN_VALUE, Integer.MAX_VALUE).size());
+        }
+    }
+
+    @Test
+    public void picksTiers() {
+        assertArrayEquals(new int[] {0, 3}, LsmSkipList.pickTier(new long[] {10, 10, 10, 10}));
+        assertArrayEquals(new int[] {0, 2},
+                LsmSkipList.pickTier(new long[] {10, 10, 10, 40}));
+        assertArrayEquals(new int[] {1, 2},
+                LsmSkipList.pickTier(new long[] {10, 100, 120, 1000}));
+        assertArrayEquals(new int[] {0, 1}, LsmSkipList.pickTier(new long[] {1, 3, 9, 27}));
+        assertArrayEquals(new int[] {0, 3}, LsmSkipList.pickTier(new long[] {50, 3, 9, 27}));
+    }
+
+    @Test
+    public void matchesTreeSet() throws IOException {
+        TreeSet<Integer> benchmark = new TreeSet<>();
+        Random random = new Random(49);
+        try (LsmSkipList list = new LsmSkipList(folder.getRoot().toPath(), 12, 300, 4,
+                Runnable::run)) {
+            for (int i = 0; i < 40000; i++) {
+                int key = random.nextInt(5000) - 2500;
+                if (random.nextInt(3) == 0) {
+                    list.remove(key);
+                    benchmark.remove(key);
+                }
+                else {
+                    list.add(key);
+                    benchmark.add(key);
+                }
+                if (i % 4000 == 0) {
+                    assertEquals(new ArrayList<>(benchmark), scan(list, Integer.MIN_VALUE,
+                            Integer.MAX_VALUE));
+                }
+            }
+
+            assertTrue(list.runCount() <= 4);
+            for (int key = -2600; key < 2600; key++) {
+                assertEquals(benchmark.contains(key), list.contains(key));
+            }
+            for (int from = -2600; from < 2600; from += 97) {
+                assertEquals(new ArrayList<>(benchmark.subSet(from, from + 400)),
+                        scan(list, from, from + 400));
+            }
+        }
+    }
+
+    @Test
+    public void keepsExtremeKeys() throws IOException {
+        try (LsmSkipList list = new LsmSkipList(folder.getRoot().toPath(), 8, 2, 2,
+                Runnable::run)) {
+            list.add(Integer.MIN_VALUE);
+            list.add(Integer.MAX_VALUE);
+            list.add(0);
+            list.add(-1);
+            assertTrue(list.contains(Integer.MIN_VALUE));
+            assertTrue(list.contains(Integer.MAX_VALUE));
+            assertEquals(Arrays.asList(Integer.MIN_VALUE, -1, 0),
+                    scan(list, Integer.MIN_VALUE, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void reopensFromDisk() throws IOException {
+        Path directory = folder.getRoot().toPath();
+        TreeSet<Integer> benchmark = new TreeSet<>();
+        try (LsmSkipList list = new LsmSkipList(directory, 64, Runnable::run)) {
+            for (int key = 0; key < 1000; key += 3) {
+                list.add(key);
+                benchmark.add(key);
+            }
+            list.remove(300);
+            benchmark.remove(300);
+        }
+
+        try (LsmSkipList list = new LsmSkipList(directory, 64, Runnable::run)) {
+            assertEquals(new ArrayList<>(benchmark), scan(list, 0, 1000));
+            list.add(301);
+            benchmark.add(301);
+        }
+        try (LsmSkipList list = new LsmSkipList(directory, 64, Runnable::run)) {
+            assertEquals(new ArrayList<>(benchmark), scan(list, 0, 1000));
+            assertFalse(list.contains(300));
+        }
+    }
+
+    @Test
+    public void deletesRunsReplacedBeforeACrash() throws IOException {
+        Path directory = folder.newFolder("runs").toPath();
+        Path saved = folder.newFolder("saved").toPath();
+        try (LsmSkipList list = new LsmSkipList(directory, 8, 4, 2, Runnable::run)) {
+            for (int key = 0; key < 8; key++) {
+                list.add(key);
+            }
+            for (String name : runFiles(directory)) {
+                if (name.startsWith("run-")) {
+                    Files.copy(directory.resolve(name), saved.resolve(name));
+                }
+            }
+            for (int key = 0; key < 4; key++) {
+                list.remove(key);
+            }
+        }
+        assertEquals(1, runFiles(directory).stream().filter(n -> n.startsWith("run-")).count());
+
+        for (String name : runFiles(saved)) {
+            Files.copy(saved.resolve(name), directory.resolve(name),
+                    StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.write(directory.resolve("run-9-9.run.tmp"), new byte[] {1, 2, 3});
+        try (LsmSkipList list = new LsmSkipList(directory, 8, 4, 2, Runnable::run)) {
+            assertEquals(Arrays.asList(4, 5, 6, 7), scan(list, 0, 10));
+            assertEquals(1, list.runCount());
+        }
+        assertEquals(1, runFiles(directory).stream().filter(n -> n.startsWith("run-")).count());
+    }
+
+    @Test
+    public void concurrentWritersWithBackgroundMaintenance()
+            throws IOException, InterruptedException {
+        ExecutorService background = Executors.newSingleThreadExecutor();
+        Path directory = folder.getRoot().toPath();
+        int threadCount = 4;
+        int keysPerThread = 20000;
+        AtomicBoolean failed = new AtomicBoolean();
+
+        try (LsmSkipList list = new LsmSkipList(directory, 12, 1000, 3, background)) {
+            for (int key = 0; key < 100; key++) {
+                list.add(-1 - key);
+            }
+            List<Thread> threads = new ArrayList<>();
+            for (int t = 0; t < threadCount; t++) {
+                final int offset = t;
+                threads.add(new Thread(() -> {
+                    for (int i = 0; i < keysPerThread; i++) {
+                        int key = i * threadCount + offset;
+                        list.add(key);
+                        if (i % 3 == 0) {
+                            list.remove(key);
+                        }
+                        if (!list.contains(-1 - i % 100)) {
+                            failed.set(true);
+                        }
+                    }
+                }));
+            }
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 200; i++) {
+                    List<Integer> keys = scan(list, -100, 0);
+                    if (keys.size() != 100) {
+                        failed.set(true);
+                    }
+                }
+            }));
+            threads.forEach(Thread::start);
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            background.shutdown();
+            assertTrue(background.awaitTermination(30, TimeUnit.SECONDS));
+
+            assertFalse(failed.get());
+            for (int key = 0; key < threadCount * keysPerThread; key++) {
+                assertEquals("key " + key, (key / threadCount) % 3 != 0, list.contains(key));
+            }
+        }
+    }
+
+    @Test
+    public void lookupBenchmark() throws IOException {
+        int keys = 1 << 18;
+        try (LsmSkipList list = new LsmSkipList(folder.getRoot().toPath(), 16, 1 << 14, 4,
+                Runnable::run)) {
+            long time = System.nanoTime();
+            for (int key = 0; key < keys; key++) {
+                list.add(key * 2);
+            }
+            final long writeTime = System.nanoTime() - time;
+
+            Random random = new Random(49);
+            int hits = 0;
+            time = System.nanoTime();
+            for (int i = 0; i < keys; i++) {
+                hits += list.contains(random.nextInt(keys * 2)) ? 1 : 0;
+            }
+            long readTime = System.nanoTime() - time;
+
+            System.out.println("\n\nStarting LSM Skip List Benchmark, keys: " + keys
+                    + ", runs: " + list.runCount());
+            System.out.println("Writes\t" + writeTime / keys + " ns/key");
+            System.out.println("Lookups\t" + readTime / keys + " ns/lookup");
+            assertTrue(hits > keys / 3);
+        }
+    }
+}
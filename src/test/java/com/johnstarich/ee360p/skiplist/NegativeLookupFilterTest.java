@@ -0,0 +1,225 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for NegativeLookupFilter in front of FineGrainedSkipList and FineGrainedLongSkipList.
+ */
+public class NegativeLookupFilterTest {
+    @Rule public Timeout timeout = new Timeout(120, TimeUnit.SECONDS);
+
+    private static FineGrainedSkipList filtered(NegativeLookupFilter filter) {
+        return new FineGrainedSkipList(16, BackoffPolicy.DEFAULT, 0, false, filter);
+    }
+
+    @Test
+    public void tableCountsAndUncounts() {
+        NegativeLookupFilter.Table table = new NegativeLookupFilter.Table(1000, true);
+        for (long key = 0; key < 1000; key++) {
+            table.add(key);
+        }
+        for (long key = 0; key < 1000; key++) {
+            assertTrue(table.mightContain(key));
+        }
+        for (long key = 0; key < 1000; key += 2) {
+            table.remove(key);
+        }
+        int falsePositives = 0;
+        for (long key = 0; key < 1000; key++) {
+            if (key % 2 == 1) {
+                assertTrue(table.mightContain(key));
+            }
+            else if (table.mightContain(key)) {
+                falsePositives++;
+            }
+        }
+        assertTrue("false positives: " + falsePositives, falsePositives < 50);
+    }
+
+    @Test
+    public void saturatedCountersStick() {
+        NegativeLookupFilter.Table table = new NegativeLookupFilter.Table(1, true);
+        for (int i = 0; i < 20; i++) {
+            table.add(7);
+        }
+        for (int i = 0; i < 20; i++) {
+            table.remove(7);
+        }
+        assertTrue(table.mightContain(7));
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        NegativeLookupFilter filter = new NegativeLookupFilter(64, Runnable::run);
+        FineGrainedSkipList list = filtered(filter);
+        TreeSet<Integer> benchmark = new TreeSet<>();
+        Random random = new Random(23);
+        for (int i = 0; i < 100000; i++) {
+            int key = random.nextInt(20000);
+            int operation = random.nextInt(10);
+            if (operation < 3) {
+                assertEquals(benchmark.add(key), list.add(key));
+            }
+            else if (operation < 4) {
+                assertEquals(benchmark.remove(key), list.remove(key));
+            }
+            else if (operation < 5) {
+                assertEquals(benchmark.pollFirst(), list.pollFirst());
+            }
+            else {
+                assertEquals(benchmark.contains(key), list.contains(key));
+            }
+        }
+        list.removeRange(5000, 10000);
+        benchmark.subSet(5000, 10000).clear();
+        for (int key = 0; key < 20000; key++) {
+            assertEquals(benchmark.contains(key), list.contains(key));
+        }
+
+        assertTrue(filter.rebuilds() > 0);
+        assertTrue(filter.negatives() > 0);
+        assertTrue(filter.negatives() + filter.falsePositives() <= filter.lookups());
+        assertTrue(filter.falsePositiveRate() < 0.1);
+    }
+
+    @Test
+    public void rebuildsWhenFalsePositivesDrift() {
+        NegativeLookupFilter filter = new NegativeLookupFilter(1 << 16, Runnable::run);
+        FineGrainedSkipList list = filtered(filter);
+        for (int key = 0; key < 1 << 16; key++) {
+            list.add(key);
+        }
+        for (int key = 0; key < 1 << 16; key++) {
+            list.remove(key);
+        }
+        // Removals while the filter was complete uncounted every key, so nothing drifted
+        for (int key = 0; key < 1 << 16; key++) {
+            assertFalse(list.contains(key));
+        }
+        assertEquals(0, filter.rebuilds());
+        assertTrue(filter.hitRate() > 0.95);
+    }
+
+    @Test
+    public void noFalseNegativesDuringBackgroundRebuilds() throws InterruptedException {
+        ExecutorService rebuilder = Executors.newSingleThreadExecutor();
+        NegativeLookupFilter filter = new NegativeLookupFilter(16, rebuilder);
+        FineGrainedSkipList list = filtered(filter);
+        for (int key = 0; key < 20000; key += 2) {
+            list.add(key);
+        }
+
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 100000; i++) {
+                    int odd = random.nextInt(10000) * 2 + 1;
+                    if (random.nextBoolean()) {
+                        list.add(odd);
+                    }
+                    else {
+                        list.remove(odd);
+                    }
+                    if (i % 16 == 0) {
+                        filter.requestRebuild();
+                    }
+                    if (!list.contains(random.nextInt(10000) * 2)) {
+                        failed.set(true);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        rebuilder.shutdown();
+        assertTrue(rebuilder.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertFalse(failed.get());
+        assertTrue(filter.rebuilds() > 0);
+        for (Integer key : new ArrayList<>(list)) {
+            assertTrue(list.contains(key));
+        }
+    }
+
+    @Test
+    public void longListUsesFilter() {
+        NegativeLookupFilter filter = new NegativeLookupFilter(1000, Runnable::run);
+        FineGrainedLongSkipList list =
+                new FineGrainedLongSkipList(12, BackoffPolicy.DEFAULT, filter);
+        for (long key = Long.MIN_VALUE; key < Long.MIN_VALUE + 1000; key++) {
+            list.add(key);
+        }
+        assertTrue(list.contains(Long.MIN_VALUE));
+        assertTrue(list.remove(Long.MIN_VALUE));
+        assertFalse(list.contains(Long.MIN_VALUE));
+        for (long key = 0; key < 1000; key++) {
+            assertFalse(list.contains(key));
+        }
+        assertTrue(filter.negatives() > 900);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void filterBelongsToOneList() {
+        NegativeLookupFilter filter = new NegativeLookupFilter(10, Runnable::run);
+        filtered(filter);
+        filtered(filter);
+    }
+
+    @Test
+    public void absentLookupBenchmark() {
+        int keys = 1 << 18;
+        NegativeLookupFilter filter = new NegativeLookupFilter(keys, Runnable::run);
+        FineGrainedSkipList plain = new FineGrainedSkipList(18);
+        FineGrainedSkipList guarded = filtered(filter);
+        Random random = new Random(9);
+        int[] inserted = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            inserted[i] = random.nextInt(keys * 4) * 2;
+            plain.add(inserted[i]);
+            guarded.add(inserted[i]);
+        }
+
+        int[] lookups = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            int present = inserted[random.nextInt(keys)];
+            lookups[i] = random.nextInt(10) < 7 ? present + 1 : present;
+        }
+        int found = 0;
+        long time = System.nanoTime();
+        for (int key : lookups) {
+            found += plain.contains(key) ? 1 : 0;
+        }
+        final long plainTime = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int key : lookups) {
+            found -= guarded.contains(key) ? 1 : 0;
+        }
+        long guardedTime = System.nanoTime() - time;
+
+        System.out.println("\n\nStarting Negative Lookup Filter Benchmark, keys: " + keys);
+        System.out.println("Fine-Grained contains\t" + plainTime / keys + " ns/lookup");
+        System.out.println("Filtered contains\t" + guardedTime / keys + " ns/lookup");
+        System.out.printf("Filter hit rate %.3f, false positive rate %.4f%n",
+                filter.hitRate(), filter.falsePositiveRate());
+        assertEquals(0, found);
+    }
+}
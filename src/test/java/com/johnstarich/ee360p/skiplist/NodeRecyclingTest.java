@@ -0,0 +1,209 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for FineGrainedSkipList node recycling and EpochReclaimer.
+ */
+public class NodeRecyclingTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static final int CHURN = 200000;
+
+    @Test
+    public void reclaimerWaitsForTraversals() {
+        EpochReclaimer<Object> reclaimer = new EpochReclaimer<>(1024);
+        Object retired = new Object();
+        reclaimer.enter();
+        reclaimer.retire(retired);
+        for (int i = 0; i < 1000; i++) {
+            reclaimer.retire(new Object());
+        }
+        reclaimer.exit();
+        assertEquals(null, reclaimer.reuse());
+
+        for (int i = 0; i < 1000; i++) {
+            reclaimer.enter();
+            reclaimer.retire(new Object());
+            reclaimer.exit();
+        }
+        assertTrue(reclaimer.reuse() == retired);
+    }
+
+    @Test
+    public void recycledNodesKeepSetConsistent() throws InterruptedException {
+        FineGrainedSkipList list = new FineGrainedSkipList(12, BackoffPolicy.DEFAULT, 256);
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                for (int round = 0; round < 20; round++) {
+                    for (int i = offset; i < 4000; i += 4) {
+                        if (!list.add(i)) {
+                            failed.set(true);
+                        }
+                    }
+                    for (int i = offset; i < 4000; i += 4) {
+                        if (!list.remove(i)) {
+                            failed.set(true);
+                        }
+                    }
+                }
+            }));
+        }
+        Thread reader = new Thread(() -> {
+            while (!done.get()) {
+                int previous = Integer.MIN_VALUE;
+                for (int value : list) {
+                    if (value <= previous) {
+                        failed.set(true);
+                    }
+                    previous = value;
+                }
+            }
+        });
+        threads.forEach(Thread::start);
+        reader.start();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        done.set(true);
+        reader.join();
+
+        assertFalse(failed.get());
+        assertEquals(0, list.size());
+        assertFalse(list.iterator().hasNext());
+    }
+
+    @Test
+    public void iteratorSurvivesRecycling() {
+        FineGrainedSkipList list = new FineGrainedSkipList(8, BackoffPolicy.DEFAULT, 256);
+        for (int i = 0; i < 10; i++) {
+            list.add(i);
+        }
+        Iterator<Integer> iterator = list.iterator();
+        assertEquals(Integer.valueOf(0), iterator.next());
+
+        for (int round = 0; round < 100; round++) {
+            for (int i = 1; i < 5; i++) {
+                list.remove(i);
+            }
+            for (int i = 1000; i < 1004; i++) {
+                list.add(i);
+                list.remove(i);
+            }
+        }
+
+        List<Integer> rest = new ArrayList<>();
+        iterator.forEachRemaining(rest::add);
+        assertEquals(java.util.Arrays.asList(5, 6, 7, 8, 9), rest);
+    }
+
+    @Test
+    public void iteratorsStayOrderedWhileRecycling() throws InterruptedException {
+        FineGrainedSkipList list = new FineGrainedSkipList(10, BackoffPolicy.DEFAULT, 16,
+                false, null, true);
+        for (int i = 0; i < 1000; i += 10) {
+            list.add(i);
+        }
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Random random = new Random(t);
+            threads.add(new Thread(() -> {
+                while (!done.get()) {
+                    int key = random.nextInt(1000);
+                    if (key % 10 != 0) {
+                        list.add(key);
+                        list.remove(key);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(3);
+        while (System.nanoTime() < end) {
+            int stable = 0;
+            int previous = Integer.MIN_VALUE;
+            for (PrimitiveIterator.OfInt keys = list.intIterator(); keys.hasNext(); ) {
+                int key = keys.nextInt();
+                if (key <= previous) {
+                    failed.set(true);
+                }
+                stable += key % 10 == 0 ? 1 : 0;
+                previous = key;
+                if ((key & 15) == 0) {
+                    Thread.yield();
+                }
+            }
+            previous = Integer.MAX_VALUE;
+            for (PrimitiveIterator.OfInt keys = list.descendingIterator(); keys.hasNext(); ) {
+                int key = keys.nextInt();
+                if (key >= previous) {
+                    failed.set(true);
+                }
+                stable += key % 10 == 0 ? 1 : 0;
+                previous = key;
+            }
+            if (stable != 200) {
+                failed.set(true);
+            }
+        }
+        done.set(true);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(failed.get());
+    }
+
+    private long churnBytes(FineGrainedSkipList list, ThreadMXBean threads) {
+        long id = Thread.currentThread().getId();
+        com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) threads;
+        for (int i = 0; i < CHURN; i++) {
+            list.add(i & 127);
+            list.remove(i & 127);
+        }
+        long before = bean.getThreadAllocatedBytes(id);
+        for (int i = 0; i < CHURN; i++) {
+            list.add(i & 127);
+            list.remove(i & 127);
+        }
+        return (bean.getThreadAllocatedBytes(id) - before) / CHURN;
+    }
+
+    @Test
+    public void churnAllocatesFewerBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(threads instanceof com.sun.management.ThreadMXBean);
+
+        long allocating = churnBytes(new FineGrainedSkipList(16), threads);
+        long recycling = churnBytes(new FineGrainedSkipList(16, BackoffPolicy.DEFAULT, 1024),
+                threads);
+
+        System.out.println("\n\nStarting Node Recycling Benchmark, churn: " + CHURN);
+        System.out.println("Allocating\t" + allocating + " bytes/insert");
+        System.out.println("Recycling\t" + recycling + " bytes/insert");
+        assertTrue(recycling < allocating);
+    }
+}
@@ -0,0 +1,107 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.AbstractSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Throughput of the skip lists when threads outnumber cores, per backoff policy.
+ */
+public class OversubscriptionBenchmarkTest {
+    @Rule
+    public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final long DURATION_MILLIS = 200;
+    private static final int KEY_RANGE = 1 << 10;
+
+    private Map<String, BackoffPolicy> policies() {
+        Map<String, BackoffPolicy> policies = new LinkedHashMap<>();
+        policies.put("Spin", BackoffPolicy.spin());
+        policies.put("Yield", BackoffPolicy.yielding());
+        policies.put("Exponential", BackoffPolicy.exponential(1_000L, 1_000_000L));
+        policies.put("Default", BackoffPolicy.DEFAULT);
+        return policies;
+    }
+
+    /**
+     * Runs a mixed 20% add, 20% remove, 60% contains workload for a fixed time.
+     * @return operations per second
+     */
+    private long throughput(AbstractSet<Integer> set, int threads) throws InterruptedException {
+        for (int i = 0; i < KEY_RANGE; i += 2) {
+            set.add(i);
+        }
+
+        AtomicBoolean stop = new AtomicBoolean(false);
+        AtomicLong operations = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long count = 0;
+                try {
+                    start.await();
+                    while (!stop.get()) {
+                        int key = random.nextInt(KEY_RANGE);
+                        int op = random.nextInt(10);
+                        if (op < 2) {
+                            set.add(key);
+                        }
+                        else if (op < 4) {
+                            set.remove(key);
+                        }
+                        else {
+                            set.contains(key);
+                        }
+                        count++;
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                operations.addAndGet(count);
+                done.countDown();
+            }).start();
+        }
+
+        start.countDown();
+        Thread.sleep(DURATION_MILLIS);
+        stop.set(true);
+        done.await();
+        return operations.get() * 1000 / DURATION_MILLIS;
+    }
+
+    private void benchRunner(String name, Function<BackoffPolicy, AbstractSet<Integer>> factory)
+            throws InterruptedException {
+        System.out.println("\n\nStarting " + name + " Oversubscription Benchmark, cores: " + CORES);
+        for (int factor : new int[] {1, 2, 4}) {
+            int threads = CORES * factor;
+            for (Map.Entry<String, BackoffPolicy> entry : policies().entrySet()) {
+                long opsPerSecond = throughput(factory.apply(entry.getValue()), threads);
+                System.out.println(name + " " + entry.getKey() + "\t" + factor + "x\t"
+                        + threads + " threads\t" + opsPerSecond + " ops/s");
+                assertTrue(opsPerSecond > 0);
+            }
+        }
+    }
+
+    @Test
+    public void fineGrainedOversubscriptionBenchmarkTest() throws Exception {
+        benchRunner("Fine-Grained", policy -> new FineGrainedSkipList(10, policy));
+    }
+}
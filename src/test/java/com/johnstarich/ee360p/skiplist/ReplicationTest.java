@@ -0,0 +1,211 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * Test for ReplicationPrimary, ReplicationFollower and the transports between them.
+ */
+public class ReplicationTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private static FineGrainedSkipList streamed(int capacity) {
+        return new FineGrainedSkipList(12, BackoffPolicy.DEFAULT, 0, false, null, false,
+                new ChangeStream(capacity));
+    }
+
+    private static List<Integer> keys(FineGrainedSkipList list) {
+        return new ArrayList<>(list);
+    }
+
+    private static List<Integer> keys(ReplicationFollower follower) {
+        List<Integer> keys = new ArrayList<>();
+        follower.forEach(keys::add);
+        return keys;
+    }
+
+    private static void drain(ReplicationFollower follower)
+            throws IOException, InterruptedException {
+        while (follower.receive(0, TimeUnit.MILLISECONDS)) {
+            continue;
+        }
+    }
+
+    @Test
+    public void followerConvergesUnderChurn() throws IOException, InterruptedException {
+        FineGrainedSkipList list = streamed(1 << 20);
+        for (int key = 0; key < 2000; key += 2) {
+            list.add(key);
+        }
+        ReplicationTransport transport = ReplicationTransport.inMemory(1 << 10);
+        ReplicationFollower follower = new ReplicationFollower(transport, 12);
+        assertFalse(follower.bootstrapped());
+
+        List<Thread> writers = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            Random random = new Random(t);
+            writers.add(new Thread(() -> {
+                for (int i = 0; i < 40000; i++) {
+                    int key = random.nextInt(2000);
+                    if (random.nextBoolean()) {
+                        list.add(key);
+                    }
+                    else {
+                        list.remove(key);
+                    }
+                }
+            }));
+        }
+
+        try (ReplicationPrimary primary = new ReplicationPrimary(list, transport, 256)) {
+            writers.forEach(Thread::start);
+            while (writers.stream().anyMatch(Thread::isAlive)) {
+                primary.ship();
+                drain(follower);
+            }
+            for (Thread writer : writers) {
+                writer.join();
+            }
+            while (primary.ship() > 0) {
+                drain(follower);
+            }
+            drain(follower);
+            assertEquals(1, primary.snapshots());
+        }
+
+        assertTrue(follower.bootstrapped());
+        assertEquals(keys(list), keys(follower));
+        assertEquals(list.size(), follower.size());
+        assertEquals(0, follower.sequencesBehind());
+        assertEquals(list.changes.nextSequence(), follower.position());
+    }
+
+    @Test
+    public void rebootstrapsAfterOverrun() throws IOException, InterruptedException {
+        FineGrainedSkipList list = streamed(8);
+        list.add(1);
+        ReplicationTransport transport = ReplicationTransport.inMemory(16);
+        ReplicationFollower follower = new ReplicationFollower(transport, 12);
+
+        try (ReplicationPrimary primary = new ReplicationPrimary(list, transport, 4)) {
+            assertEquals(0, primary.ship());
+            drain(follower);
+            assertEquals(keys(list), keys(follower));
+
+            for (int key = 10; key < 60; key++) {
+                list.add(key);
+            }
+            list.remove(1);
+            assertEquals(0, primary.ship());
+            assertEquals(2, primary.snapshots());
+            drain(follower);
+            assertEquals(keys(list), keys(follower));
+
+            list.add(2);
+            assertEquals(1, primary.ship());
+            drain(follower);
+            assertTrue(follower.contains(2));
+            assertFalse(follower.contains(1));
+        }
+    }
+
+    @Test
+    public void reportsLag() throws IOException, InterruptedException {
+        FineGrainedSkipList list = streamed(64);
+        ReplicationTransport transport = ReplicationTransport.inMemory(16);
+        ReplicationFollower follower = new ReplicationFollower(transport, 12);
+        assertEquals(-1, follower.millisBehind());
+
+        try (ReplicationPrimary primary = new ReplicationPrimary(list, transport, 2)) {
+            primary.ship();
+            drain(follower);
+            assertEquals(0, follower.sequencesBehind());
+
+            for (int key = 0; key < 5; key++) {
+                list.add(key);
+            }
+            assertEquals(2, primary.ship());
+            drain(follower);
+            assertEquals(3, follower.sequencesBehind());
+            assertTrue(follower.millisBehind() >= 0);
+
+            while (primary.ship() > 0) {
+                drain(follower);
+            }
+            drain(follower);
+            assertEquals(0, follower.sequencesBehind());
+            assertEquals(5, follower.size());
+        }
+    }
+
+    @Test
+    public void rejectsMissingFrames() throws IOException, InterruptedException {
+        FineGrainedSkipList list = streamed(64);
+        ReplicationTransport transport = ReplicationTransport.inMemory(16);
+        ReplicationFollower follower = new ReplicationFollower(transport, 12);
+
+        try (ReplicationPrimary primary = new ReplicationPrimary(list, transport, 8)) {
+            primary.ship();
+            drain(follower);
+            list.add(1);
+            primary.ship();
+            assertTrue(transport.receive(0, TimeUnit.MILLISECONDS) != null);
+            list.add(2);
+            primary.ship();
+            try {
+                follower.receive(0, TimeUnit.MILLISECONDS);
+                fail("Expected a gap to be detected");
+            }
+            catch (IllegalStateException e) {
+                assertFalse(follower.contains(2));
+            }
+        }
+    }
+
+    @Test
+    public void replicatesOverSocket() throws Exception {
+        FineGrainedSkipList list = streamed(1 << 12);
+        for (int key = -500; key < 500; key += 5) {
+            list.add(key);
+        }
+
+        try (ServerSocket server = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+                SocketTransport followerEnd = new SocketTransport(
+                        new Socket(InetAddress.getLoopbackAddress(), server.getLocalPort()));
+                SocketTransport primaryEnd = new SocketTransport(server.accept());
+                ReplicationPrimary primary = new ReplicationPrimary(list, primaryEnd, 64)) {
+            ReplicationFollower follower = new ReplicationFollower(followerEnd, 12);
+            assertFalse(follower.receive(10, TimeUnit.MILLISECONDS));
+
+            primary.ship();
+            assertTrue(follower.receive(5, TimeUnit.SECONDS));
+            assertEquals(keys(list), keys(follower));
+
+            for (int key = 0; key < 300; key++) {
+                list.add(key);
+                list.remove(key - 3);
+            }
+            while (primary.ship() > 0) {
+                assertTrue(follower.receive(5, TimeUnit.SECONDS));
+            }
+            assertTrue(follower.receive(5, TimeUnit.SECONDS));
+            assertEquals(keys(list), keys(follower));
+            assertEquals(0, follower.sequencesBehind());
+        }
+    }
+}
@@ -143,4 +143,89 @@ public class SkipListEdgeTest {
 			assertEquals(i, iter.next().intValue());
 		}
 	}
+
+	@Test
+	public void removeRange() {
+		FineGrainedSkipList s = new FineGrainedSkipList(5);
+		for (int i = 0; i < 100; i += 1) {
+			s.add(i);
+		}
+		assertEquals(0, s.removeRange(50, 50));
+		assertEquals(0, s.removeRange(200, 300));
+		assertEquals(10, s.removeRange(-5, 10));
+		assertEquals(20, s.removeRange(40, 60));
+		assertEquals(70, s.size());
+		assertFalse(s.contains(45));
+		assertTrue(s.contains(60));
+		assertTrue(s.add(45));
+
+		Iterator<Integer> iter = s.iterator();
+		for (int i = 10; i < 100; i += 1) {
+			if (i < 40 || i == 45 || i >= 60) {
+				assertEquals(i, iter.next().intValue());
+			}
+		}
+		assertFalse(iter.hasNext());
+		assertEquals(71, s.removeRange(Integer.MIN_VALUE, Integer.MAX_VALUE));
+		assertEquals(0, s.size());
+		assertFalse(s.iterator().hasNext());
+	}
+
+	@Test
+	public void removeLargeRange() {
+		FineGrainedSkipList s = new FineGrainedSkipList(20);
+		FineGrainedSkipList.Appender appender = s.new Appender();
+		for (int i = 0; i < 2_000_000; i += 1) {
+			appender.append(i);
+		}
+
+		long time = System.nanoTime();
+		assertEquals(1_000_000, s.removeRange(500_000, 1_500_000));
+		long elapsed = System.nanoTime() - time;
+		System.out.println("removeRange of 1M keys: " + elapsed / 1_000_000 + " ms");
+
+		assertEquals(1_000_000, s.size());
+		assertTrue(s.contains(499_999));
+		assertFalse(s.contains(500_000));
+		assertFalse(s.contains(1_499_999));
+		assertTrue(s.contains(1_500_000));
+	}
+
+	@Test
+	public void removeRangeConcurrently() throws InterruptedException {
+		FineGrainedSkipList s = new FineGrainedSkipList(12);
+		Thread[] writers = new Thread[4];
+		for (int t = 0; t < writers.length; t += 1) {
+			final int offset = t;
+			writers[t] = new Thread(() -> {
+				for (int i = offset; i < 20000; i += writers.length) {
+					s.add(i);
+					s.remove(i - 100);
+				}
+			});
+		}
+		Thread ranger = new Thread(() -> {
+			for (int i = 0; i < 20000; i += 500) {
+				s.removeRange(i, i + 250);
+			}
+		});
+		for (Thread writer : writers) {
+			writer.start();
+		}
+		ranger.start();
+		for (Thread writer : writers) {
+			writer.join();
+		}
+		ranger.join();
+
+		int count = 0;
+		int previous = Integer.MIN_VALUE;
+		for (int value : s) {
+			assertTrue(value > previous);
+			assertTrue(s.contains(value));
+			previous = value;
+			count += 1;
+		}
+		assertEquals(count, s.size());
+	}
 }
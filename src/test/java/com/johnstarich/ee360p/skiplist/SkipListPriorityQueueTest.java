@@ -0,0 +1,108 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for SkipListPriorityQueue and FineGrainedSkipList.pollFirst.
+ */
+public class SkipListPriorityQueueTest {
+    @Rule public Timeout timeout = new Timeout(120, TimeUnit.SECONDS);
+
+    private static final int THREADS = 8;
+    private static final int VALUES = 20000;
+
+    @Test
+    public void pollFirstIsStrict() {
+        FineGrainedSkipList list = new FineGrainedSkipList(8);
+        for (int i : new int[] {5, -3, 9, 0}) {
+            list.add(i);
+        }
+        assertEquals(Integer.valueOf(-3), list.pollFirst());
+        assertEquals(Integer.valueOf(0), list.pollFirst());
+        assertEquals(Integer.valueOf(5), list.pollFirst());
+        assertEquals(Integer.valueOf(9), list.pollFirst());
+        assertNull(list.pollFirst());
+        assertEquals(0, list.size());
+    }
+
+    @Test
+    public void queueOperations() {
+        SkipListPriorityQueue queue = new SkipListPriorityQueue(8, 1);
+        assertNull(queue.peek());
+        assertTrue(queue.offer(3));
+        assertTrue(queue.offer(1));
+        assertEquals(Integer.valueOf(1), queue.peek());
+        assertEquals(Integer.valueOf(1), queue.pollApproxFirst());
+        assertEquals(Integer.valueOf(3), queue.poll());
+        assertNull(queue.pollApproxFirst());
+    }
+
+    @Test
+    public void approxPollStaysNearFront() {
+        SkipListPriorityQueue queue = new SkipListPriorityQueue(16, 16);
+        for (int i = 0; i < 10000; i++) {
+            queue.add(i);
+        }
+        int bound = queue.sprayJump * (queue.sprayHeight + 2) << (queue.sprayHeight + 1);
+        for (int i = 0; i < 1000; i++) {
+            int value = queue.pollApproxFirst();
+            assertTrue(value + " is past rank " + bound, value <= i + bound);
+        }
+    }
+
+    /**
+     * Drains the queue from several threads and checks every value came out exactly once.
+     */
+    private long drain(SkipListPriorityQueue queue, Supplier<Integer> poll)
+            throws InterruptedException {
+        for (int i = 0; i < VALUES; i++) {
+            queue.add(i);
+        }
+        AtomicIntegerArray seen = new AtomicIntegerArray(VALUES);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            threads.add(new Thread(() -> {
+                for (Integer value = poll.get(); value != null; value = poll.get()) {
+                    seen.incrementAndGet(value);
+                }
+            }));
+        }
+
+        long time = System.nanoTime();
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        long elapsed = System.nanoTime() - time;
+
+        for (int i = 0; i < VALUES; i++) {
+            assertEquals(1, seen.get(i));
+        }
+        assertEquals(0, queue.size());
+        return elapsed;
+    }
+
+    @Test
+    public void concurrentDrain() throws InterruptedException {
+        SkipListPriorityQueue strict = new SkipListPriorityQueue(18, THREADS);
+        long strictTime = drain(strict, strict::poll);
+        SkipListPriorityQueue relaxed = new SkipListPriorityQueue(18, THREADS);
+        long relaxedTime = drain(relaxed, relaxed::pollApproxFirst);
+
+        System.out.println("\n\nStarting Priority Queue Benchmark, threads: " + THREADS);
+        System.out.println("pollFirst\t\t" + strictTime / VALUES + " ns/op");
+        System.out.println("pollApproxFirst\t" + relaxedTime / VALUES + " ns/op");
+    }
+}
@@ -0,0 +1,153 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Test for SkipListSets.
+ */
+public class SkipListSetsTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    private final Random random = new Random(3);
+
+    private TreeSet<Integer> randomKeys(int count, int bound) {
+        TreeSet<Integer> keys = new TreeSet<>();
+        while (keys.size() < count) {
+            keys.add(random.nextInt(bound) - bound / 2);
+        }
+        return keys;
+    }
+
+    private FineGrainedSkipList listOf(TreeSet<Integer> keys) {
+        FineGrainedSkipList list = new FineGrainedSkipList(20);
+        keys.forEach(list::add);
+        return list;
+    }
+
+    private int[] arrayOf(TreeSet<Integer> keys) {
+        return keys.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    private void assertOperations(TreeSet<Integer> a, TreeSet<Integer> b) {
+        TreeSet<Integer> union = new TreeSet<>(a);
+        union.addAll(b);
+        TreeSet<Integer> intersection = new TreeSet<>(a);
+        intersection.retainAll(b);
+        TreeSet<Integer> difference = new TreeSet<>(a);
+        difference.removeAll(b);
+
+        FineGrainedSkipList listA = listOf(a);
+        FineGrainedSkipList listB = listOf(b);
+
+        assertEquals(new ArrayList<>(union), new ArrayList<>(SkipListSets.union(listA, listB)));
+        assertEquals(new ArrayList<>(union),
+                new ArrayList<>(SkipListSets.union(listA, arrayOf(b))));
+        assertEquals(new ArrayList<>(intersection),
+                new ArrayList<>(SkipListSets.intersect(listA, listB)));
+        assertEquals(new ArrayList<>(intersection),
+                new ArrayList<>(SkipListSets.intersect(listA, arrayOf(b))));
+        assertEquals(new ArrayList<>(difference),
+                new ArrayList<>(SkipListSets.difference(listA, listB)));
+        assertEquals(new ArrayList<>(difference),
+                new ArrayList<>(SkipListSets.difference(listA, arrayOf(b))));
+        assertEquals(intersection.size(), SkipListSets.intersectionSize(listA, listB));
+        assertEquals(intersection.size(), SkipListSets.intersectionSize(listA, arrayOf(b)));
+        assertEquals(union.size(), SkipListSets.union(listA, listB).size());
+    }
+
+    @Test
+    public void emptyOperands() {
+        assertOperations(new TreeSet<>(), new TreeSet<>());
+        assertOperations(randomKeys(100, 1000), new TreeSet<>());
+        assertOperations(new TreeSet<>(), randomKeys(100, 1000));
+    }
+
+    @Test
+    public void overlappingSets() {
+        assertOperations(randomKeys(2000, 5000), randomKeys(3000, 5000));
+    }
+
+    @Test
+    public void disjointRuns() {
+        TreeSet<Integer> low = new TreeSet<>();
+        TreeSet<Integer> high = new TreeSet<>();
+        for (int i = 0; i < 5000; i++) {
+            low.add(i);
+            high.add(i + 4990);
+        }
+        high.add(Integer.MIN_VALUE);
+        assertOperations(low, high);
+        assertOperations(high, low);
+    }
+
+    @Test
+    public void parallelRanges() {
+        int size = SkipListSets.PARALLEL_THRESHOLD * 2;
+        assertOperations(randomKeys(size, size * 3), randomKeys(size, size * 3));
+    }
+
+    @Test
+    public void recyclingListUnderChurn() throws InterruptedException {
+        int size = SkipListSets.PARALLEL_THRESHOLD + 10000;
+        FineGrainedSkipList list = new FineGrainedSkipList(20, BackoffPolicy.DEFAULT, 64);
+        int[] evens = new int[size];
+        for (int i = 0; i < size; i++) {
+            evens[i] = 2 * i;
+            list.add(2 * i);
+        }
+
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        List<Thread> churners = new ArrayList<>();
+        for (int t = 0; t < 2; t++) {
+            Random churn = new Random(t);
+            churners.add(new Thread(() -> {
+                while (!done.get()) {
+                    int key = 2 * churn.nextInt(size) + 1;
+                    list.add(key);
+                    list.remove(key);
+                }
+            }));
+        }
+        churners.forEach(Thread::start);
+        try {
+            for (int round = 0; round < 10; round++) {
+                FineGrainedSkipList union = SkipListSets.union(list, evens);
+                long previous = Long.MIN_VALUE;
+                int matched = 0;
+                for (int key : union) {
+                    if (key <= previous) {
+                        throw new AssertionError("Union does not ascend at " + key);
+                    }
+                    previous = key;
+                    matched += key % 2 == 0 ? 1 : 0;
+                }
+                assertEquals(size, matched);
+                assertEquals(size, SkipListSets.intersect(list, evens).size());
+            }
+        }
+        catch (RuntimeException | AssertionError e) {
+            failure.set(e);
+        }
+        finally {
+            done.set(true);
+            for (Thread churner : churners) {
+                churner.join();
+            }
+        }
+        assertNull(failure.get());
+    }
+}
@@ -0,0 +1,144 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for SnapshotSkipList and its Eytzinger search.
+ */
+public class SnapshotSkipListTest {
+    @Rule public Timeout timeout = new Timeout(60, TimeUnit.SECONDS);
+
+    @Test
+    public void eytzingerSearch() {
+        for (int length = 0; length < 100; length++) {
+            int[] sorted = new int[length];
+            for (int i = 0; i < length; i++) {
+                sorted[i] = i * 3;
+            }
+            int[] tree = SnapshotSkipList.eytzinger(sorted, length);
+            for (int key = -2; key < length * 3 + 2; key++) {
+                assertEquals(key >= 0 && key % 3 == 0 && key < length * 3,
+                        SnapshotSkipList.search(tree, key));
+            }
+        }
+        int[] extremes = {Integer.MIN_VALUE, 0, Integer.MAX_VALUE};
+        int[] tree = SnapshotSkipList.eytzinger(extremes, 3);
+        assertTrue(SnapshotSkipList.search(tree, Integer.MIN_VALUE));
+        assertTrue(SnapshotSkipList.search(tree, Integer.MAX_VALUE));
+        assertFalse(SnapshotSkipList.search(tree, 1));
+    }
+
+    @Test
+    public void matchesTreeSetAcrossPublishes() {
+        SnapshotSkipList set = new SnapshotSkipList(14);
+        TreeSet<Integer> benchmark = new TreeSet<>();
+        Random random = new Random(31);
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(5000);
+            if (random.nextInt(3) > 0) {
+                assertEquals(benchmark.add(key), set.add(key));
+            }
+            else {
+                assertEquals(benchmark.remove(key), set.remove(key));
+            }
+            if (i % 5000 == 0) {
+                set.publish();
+                assertEquals(0, set.deltaSize());
+            }
+            int probe = random.nextInt(5000);
+            assertEquals(benchmark.contains(probe), set.contains(probe));
+        }
+        set.publish();
+        for (int key = 0; key < 5000; key++) {
+            assertEquals(benchmark.contains(key), set.contains(key));
+        }
+        assertEquals(benchmark.size(), set.size());
+        assertEquals(new ArrayList<>(benchmark), new ArrayList<>(set));
+    }
+
+    @Test
+    public void readsStayExactWhilePublishing() throws InterruptedException {
+        SnapshotSkipList set = new SnapshotSkipList(14);
+        for (int key = 0; key < 10000; key += 2) {
+            set.add(key);
+        }
+        ScheduledExecutorService publisher = Executors.newSingleThreadScheduledExecutor();
+        set.schedulePublisher(publisher, 1, TimeUnit.MILLISECONDS);
+
+        AtomicBoolean failed = new AtomicBoolean();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 3; t++) {
+            Random random = new Random(t);
+            int owned = t;
+            threads.add(new Thread(() -> {
+                for (int i = 0; i < 50000; i++) {
+                    // Each thread toggles its own odd keys, so it knows their state
+                    int key = (random.nextInt(1000) * 3 + owned) * 2 + 1;
+                    boolean present = set.contains(key);
+                    if (present ? !set.remove(key) : !set.add(key)) {
+                        failed.set(true);
+                    }
+                    if (set.contains(key) == present || !set.contains(random.nextInt(5000) * 2)) {
+                        failed.set(true);
+                    }
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        publisher.shutdownNow();
+        assertTrue(publisher.awaitTermination(10, TimeUnit.SECONDS));
+
+        assertFalse(failed.get());
+        assertTrue(set.snapshotAge(TimeUnit.SECONDS) < 10);
+    }
+
+    @Test
+    public void snapshotLookupBenchmark() {
+        int keys = 1 << 18;
+        SnapshotSkipList set = new SnapshotSkipList(18);
+        Random random = new Random(2);
+        for (int i = 0; i < keys; i++) {
+            set.add(random.nextInt(keys * 2));
+        }
+        set.publish();
+
+        int[] lookups = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            lookups[i] = random.nextInt(keys * 2);
+        }
+        int found = 0;
+        long time = System.nanoTime();
+        for (int key : lookups) {
+            found += set.list.contains(key) ? 1 : 0;
+        }
+        final long listTime = System.nanoTime() - time;
+        time = System.nanoTime();
+        for (int key : lookups) {
+            found -= set.contains(key) ? 1 : 0;
+        }
+        long snapshotTime = System.nanoTime() - time;
+
+        System.out.println("\n\nStarting Eytzinger Snapshot Benchmark, keys: " + keys);
+        System.out.println("Fine-Grained contains\t" + listTime / keys + " ns/lookup");
+        System.out.println("Snapshot contains\t" + snapshotTime / keys + " ns/lookup");
+        assertEquals(0, found);
+    }
+}
@@ -0,0 +1,124 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Test for UnrolledSkipList.
+ */
+public class UnrolledSkipListTest {
+    @Rule public Timeout timeout = new Timeout(30, TimeUnit.SECONDS);
+
+    @Test
+    public void lowerCount() {
+        int[] keys = {Integer.MIN_VALUE, -5, 0, 7, Integer.MAX_VALUE};
+        assertEquals(0, UnrolledSkipList.lowerCount(keys, keys.length, Integer.MIN_VALUE));
+        assertEquals(2, UnrolledSkipList.lowerCount(keys, keys.length, 0));
+        assertEquals(4, UnrolledSkipList.lowerCount(keys, keys.length, 8));
+        assertEquals(4, UnrolledSkipList.lowerCount(keys, keys.length, Integer.MAX_VALUE));
+        assertEquals(2, UnrolledSkipList.lowerCount(keys, 2, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void extremeKeys() {
+        UnrolledSkipList list = new UnrolledSkipList(8, 4, BackoffPolicy.DEFAULT);
+        assertTrue(list.add(Integer.MAX_VALUE));
+        assertTrue(list.add(Integer.MIN_VALUE));
+        assertFalse(list.add(Integer.MIN_VALUE));
+        assertTrue(list.contains(Integer.MIN_VALUE));
+        assertTrue(list.contains(Integer.MAX_VALUE));
+        assertFalse(list.contains(0));
+        assertTrue(list.remove(Integer.MIN_VALUE));
+        assertFalse(list.contains(Integer.MIN_VALUE));
+        assertEquals(1, list.size());
+    }
+
+    @Test
+    public void splitsAndMerges() {
+        UnrolledSkipList list = new UnrolledSkipList(8, 8, BackoffPolicy.DEFAULT);
+        for (int i = 0; i < 1000; i++) {
+            list.add(i);
+        }
+        assertTrue(list.chunkCount() >= 1000 / 8);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(list.contains(i));
+        }
+        for (int i = 0; i < 990; i++) {
+            assertTrue(list.remove(i));
+        }
+        assertTrue(list.chunkCount() < 10);
+        assertEquals(10, list.size());
+        assertArrayEquals(new int[] {990, 991, 992}, list.range(985, 993));
+    }
+
+    @Test
+    public void matchesTreeSet() {
+        Random random = new Random(11);
+        UnrolledSkipList list = new UnrolledSkipList(10, 16, BackoffPolicy.DEFAULT);
+        TreeSet<Integer> benchmark = new TreeSet<>();
+        for (int i = 0; i < 50000; i++) {
+            int key = random.nextInt(4000) - 2000;
+            switch (random.nextInt(3)) {
+                case 0:
+                    assertEquals(benchmark.add(key), list.add(key));
+                    break;
+                case 1:
+                    assertEquals(benchmark.remove(key), list.remove(key));
+                    break;
+                default:
+                    assertEquals(benchmark.contains(key), list.contains(key));
+                    break;
+            }
+        }
+        assertEquals(benchmark.size(), list.size());
+        assertEquals(new ArrayList<>(benchmark), new ArrayList<>(list));
+
+        int[] expected = benchmark.subSet(-500, 500).stream().mapToInt(Integer::intValue).toArray();
+        assertArrayEquals(expected, list.range(-500, 500));
+    }
+
+    @Test
+    public void parallelAddRemove() throws InterruptedException {
+        UnrolledSkipList list = new UnrolledSkipList(12, 8, BackoffPolicy.DEFAULT);
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            final int offset = t;
+            threads.add(new Thread(() -> {
+                for (int i = offset; i < 40000; i += 8) {
+                    list.add(i);
+                }
+                for (int i = offset; i < 40000; i += 16) {
+                    list.remove(i);
+                }
+            }));
+        }
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(20000, list.size());
+        int expected = 0;
+        for (int key : list) {
+            while (expected % 16 < 8) {
+                expected++;
+            }
+            assertEquals(expected++, key);
+        }
+        for (int i = 0; i < 40000; i++) {
+            assertEquals(i % 16 >= 8, list.contains(i));
+        }
+    }
+}
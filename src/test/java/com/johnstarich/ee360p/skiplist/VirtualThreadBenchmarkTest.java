@@ -0,0 +1,131 @@
+package com.johnstarich.ee360p.skiplist;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.Timeout;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Runs many concurrent callers against a parking skip list on virtual and platform threads.
+ * Concurrency levels come from the skiplist.bench.concurrency property, e.g. "10000,100000".
+ */
+public class VirtualThreadBenchmarkTest {
+    @Rule
+    public Timeout timeout = new Timeout(120, TimeUnit.SECONDS);
+
+    private static final int CORES = Runtime.getRuntime().availableProcessors();
+    private static final int OPERATIONS_PER_CALLER = 16;
+    private static final int KEY_RANGE = 1 << 16;
+
+    private static int[] concurrencyLevels(String defaults) {
+        String[] levels = System.getProperty("skiplist.bench.concurrency", defaults).split(",");
+        int[] result = new int[levels.length];
+        for (int i = 0; i < levels.length; i++) {
+            result[i] = Integer.parseInt(levels[i].trim());
+        }
+        return result;
+    }
+
+    /**
+     * Looks up Thread.ofVirtual().factory(), which only exists on Java 21+. The method is
+     * found on the public Thread.Builder interface, since the builder's own class is not.
+     */
+    private static ThreadFactory virtualThreadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory")
+                    .invoke(builder);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    private static long processCpuNanos() {
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if (bean instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        return -1;
+    }
+
+    private void benchRunner(String name, ThreadFactory factory, int callers) throws Exception {
+        FineGrainedSkipList list = new FineGrainedSkipList(16, BackoffPolicy.PARKING);
+        for (int i = 0; i < KEY_RANGE; i += 2) {
+            list.add(i);
+        }
+
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(callers);
+        for (int i = 0; i < callers; i++) {
+            factory.newThread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    start.await();
+                    for (int op = 0; op < OPERATIONS_PER_CALLER; op++) {
+                        int key = random.nextInt(KEY_RANGE);
+                        switch (random.nextInt(4)) {
+                            case 0:
+                                list.add(key);
+                                break;
+                            case 1:
+                                list.remove(key);
+                                break;
+                            default:
+                                list.contains(key);
+                                break;
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+
+        long cpuBefore = processCpuNanos();
+        long time = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - time;
+        long cpu = processCpuNanos() - cpuBefore;
+
+        long opsPerSecond = (long) callers * OPERATIONS_PER_CALLER * 1_000_000_000L / elapsed;
+        String utilisation = cpuBefore < 0
+                ? "n/a"
+                : String.format("%.1f%%", 100.0 * cpu / ((double) elapsed * CORES));
+        System.out.println(name + "\t" + callers + " callers\t" + opsPerSecond + " ops/s\t"
+                + "cpu utilisation " + utilisation);
+        assertEquals(0, done.getCount());
+    }
+
+    @Test
+    public void platformThreadBenchmarkTest() throws Exception {
+        System.out.println("\n\nStarting Platform Thread Benchmark, cores: " + CORES);
+        for (int callers : concurrencyLevels("10000")) {
+            benchRunner("Platform", Thread::new, callers);
+        }
+    }
+
+    @Test
+    public void virtualThreadBenchmarkTest() throws Exception {
+        ThreadFactory factory = virtualThreadFactory();
+        Assume.assumeNotNull(factory);
+        System.out.println("\n\nStarting Virtual Thread Benchmark, cores: " + CORES);
+        for (int callers : concurrencyLevels("10000,100000")) {
+            benchRunner("Virtual", factory, callers);
+        }
+    }
+}